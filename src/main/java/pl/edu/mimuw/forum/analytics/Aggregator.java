@@ -0,0 +1,74 @@
+package pl.edu.mimuw.forum.analytics;
+
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+
+/**
+ * Redukcja wezlow drzewa forum wykonywana rownolegle przez {@link TreeReduction}. Wynik czesciowy
+ * to zmienny pojemnik (jak w {@link java.util.stream.Collector}): kazde zadanie zbiera wezly swojego
+ * fragmentu drzewa do wlasnego wyniku, a wyniki fragmentow laczone sa metoda {@link #merge}
+ * w kolejnosci dokumentu. Laczenie musi byc laczne, ale nie musi byc przemienne.
+ *
+ * @param <N> typ wezla
+ * @param <A> typ wyniku
+ */
+public interface Aggregator<N, A> {
+
+	/**
+	 * Dodaje pojedynczy wezel do wyniku.
+	 */
+	@FunctionalInterface
+	interface Accumulator<N, A> {
+		/**
+		 * @param depth glebokosc wezla (korzen redukowanego drzewa ma glebokosc 0)
+		 */
+		void add(A result, N node, int depth);
+	}
+
+	/**
+	 * Nowy pusty wynik (element neutralny {@link #merge}).
+	 */
+	A create();
+
+	/**
+	 * Dodaje wezel {@code node} na glebokosci {@code depth} do wyniku {@code result}.
+	 */
+	void add(A result, N node, int depth);
+
+	/**
+	 * Laczy wyniki dwoch sasiednich fragmentow drzewa ({@code left} poprzedza {@code right}
+	 * w kolejnosci dokumentu). Moze zmienic i zwrocic {@code left}.
+	 */
+	A merge(A left, A right);
+
+	/**
+	 * Czy wynik jest ostateczny - dalsze wezly i fragmenty drzewa (w kolejnosci dokumentu) nie moga
+	 * go zmienic (np. znaleziono juz dosc wezlow). Redukcja pomija wtedy reszte swojego fragmentu.
+	 * Sprawdzane co pewien czas, wiec wynik moze jeszcze objac kilkaset kolejnych wezlow.
+	 */
+	default boolean isComplete(A result) {
+		return false;
+	}
+
+	/**
+	 * Agregator z podanych funkcji.
+	 */
+	static <N, A> Aggregator<N, A> of(Supplier<A> create, Accumulator<N, A> add, BinaryOperator<A> merge) {
+		return new Aggregator<N, A>() {
+			@Override
+			public A create() {
+				return create.get();
+			}
+
+			@Override
+			public void add(A result, N node, int depth) {
+				add.add(result, node, depth);
+			}
+
+			@Override
+			public A merge(A left, A right) {
+				return merge.apply(left, right);
+			}
+		};
+	}
+}
@@ -0,0 +1,109 @@
+package pl.edu.mimuw.forum.analytics;
+
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import pl.edu.mimuw.forum.data.Node;
+import pl.edu.mimuw.forum.data.Survey;
+import pl.edu.mimuw.forum.io.NodeAccessor;
+
+/**
+ * Podsumowanie drzewa forum: liczba postow, histogramy glebokosci i rozgalezien (liczby dzieci),
+ * liczby wezlow wedlug typu i suma glosow w ankietach. Liczone w jednym przejsciu drzewa
+ * (zob. {@link #of}).
+ */
+public final class ForumReport {
+
+	private final Histogram depths = new Histogram();
+	private final Histogram branching = new Histogram();
+	private final Map<Class<? extends Node>, long[]> types = new IdentityHashMap<>();
+	private long likes;
+	private long dislikes;
+
+	/**
+	 * Podsumowanie drzewa {@code root} (liczone rownolegle, zob. {@link TreeReduction}).
+	 */
+	public static <N> ForumReport of(N root, NodeAccessor<N> nodes) {
+		return TreeReduction.reduce(root, nodes, aggregator(nodes));
+	}
+
+	/**
+	 * Agregator podsumowan (np. do laczenia podsumowan kilku drzew).
+	 */
+	public static <N> Aggregator<N, ForumReport> aggregator(NodeAccessor<N> nodes) {
+		return Aggregator.of(ForumReport::new, (report, node, depth) -> report.add(nodes, node, depth),
+				ForumReport::merge);
+	}
+
+	private <N> void add(NodeAccessor<N> nodes, N node, int depth) {
+		Class<? extends Node> type = nodes.type(node);
+		depths.add(depth);
+		branching.add(nodes.children(node).size());
+		types.computeIfAbsent(type, key -> new long[1])[0]++;
+		if (Survey.class.isAssignableFrom(type)) {
+			likes += nodes.likes(node);
+			dislikes += nodes.dislikes(node);
+		}
+	}
+
+	private ForumReport merge(ForumReport other) {
+		depths.merge(other.depths);
+		branching.merge(other.branching);
+		other.types.forEach((type, count) -> types.computeIfAbsent(type, key -> new long[1])[0] += count[0]);
+		likes += other.likes;
+		dislikes += other.dislikes;
+		return this;
+	}
+
+	public long getPosts() {
+		return depths.total();
+	}
+
+	/**
+	 * Najwieksza glebokosc wezla (korzen ma glebokosc 0).
+	 */
+	public int getMaxDepth() {
+		return depths.max();
+	}
+
+	/**
+	 * Liczby wezlow na kolejnych glebokosciach.
+	 */
+	public Histogram getDepths() {
+		return depths;
+	}
+
+	/**
+	 * Liczby wezlow wedlug liczby dzieci.
+	 */
+	public Histogram getBranching() {
+		return branching;
+	}
+
+	/**
+	 * Liczby wezlow wedlug klasy.
+	 */
+	public Map<Class<? extends Node>, Long> getTypeCounts() {
+		Map<Class<? extends Node>, Long> counts = new LinkedHashMap<>();
+		types.forEach((type, count) -> counts.put(type, count[0]));
+		return counts;
+	}
+
+	public long getLikes() {
+		return likes;
+	}
+
+	public long getDislikes() {
+		return dislikes;
+	}
+
+	@Override
+	public String toString() {
+		Map<String, Long> typeNames = new LinkedHashMap<>();
+		types.forEach((type, count) -> typeNames.put(type.getSimpleName(), count[0]));
+		return "ForumReport(posts=" + getPosts() + ", maxDepth=" + getMaxDepth() + ", types=" + typeNames
+				+ ", likes=" + likes + ", dislikes=" + dislikes + ", depths=" + depths + ", branching=" + branching
+				+ ')';
+	}
+}
@@ -0,0 +1,99 @@
+package pl.edu.mimuw.forum.analytics;
+
+import java.util.Arrays;
+import java.util.function.ToIntFunction;
+
+/**
+ * Histogram nieujemnych liczb calkowitych (np. glebokosci wezlow lub liczby ich dzieci) - liczba
+ * wystapien kazdej wartosci. Obiekty sa zmienne (wyniki czesciowe {@link Aggregator}).
+ */
+public final class Histogram {
+
+	private long[] counts = new long[8];
+
+	/**
+	 * Najwieksza dodana wartosc powiekszona o 1.
+	 */
+	private int length;
+
+	/**
+	 * Histogram glebokosci wezlow drzewa ({@link #total()} to liczba wezlow, {@link #max()} -
+	 * najwieksza glebokosc).
+	 */
+	public static <N> Aggregator<N, Histogram> depths() {
+		return Aggregator.of(Histogram::new, (histogram, node, depth) -> histogram.add(depth), Histogram::merge);
+	}
+
+	/**
+	 * Histogram wartosci {@code value} dla wezlow drzewa (np. liczby dzieci - histogram rozgalezien).
+	 */
+	public static <N> Aggregator<N, Histogram> of(ToIntFunction<? super N> value) {
+		return Aggregator.of(Histogram::new, (histogram, node, depth) -> histogram.add(value.applyAsInt(node)),
+				Histogram::merge);
+	}
+
+	public void add(int value) {
+		add(value, 1);
+	}
+
+	public void add(int value, long count) {
+		if (value < 0) {
+			throw new IllegalArgumentException("Negative histogram value: " + value);
+		}
+		if (value >= counts.length) {
+			counts = Arrays.copyOf(counts, Math.max(value + 1, counts.length * 2));
+		}
+		counts[value] += count;
+		length = Math.max(length, value + 1);
+	}
+
+	/**
+	 * Dodaje liczby wystapien z histogramu {@code other}.
+	 *
+	 * @return ten histogram
+	 */
+	public Histogram merge(Histogram other) {
+		for (int value = 0; value < other.length; value++) {
+			if (other.counts[value] != 0) {
+				add(value, other.counts[value]);
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Liczba wystapien wartosci {@code value}.
+	 */
+	public long get(int value) {
+		return value < length ? counts[value] : 0;
+	}
+
+	/**
+	 * Najwieksza wartosc w histogramie ({@code -1} dla pustego).
+	 */
+	public int max() {
+		return length - 1;
+	}
+
+	/**
+	 * Suma liczb wystapien wszystkich wartosci.
+	 */
+	public long total() {
+		long total = 0;
+		for (int value = 0; value < length; value++) {
+			total += counts[value];
+		}
+		return total;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder("{");
+		for (int value = 0; value < length; value++) {
+			if (counts[value] != 0) {
+				text.append(text.length() > 1 ? ", " : "").append(value).append('=').append(counts[value]);
+			}
+		}
+		return text.append('}').toString();
+	}
+}
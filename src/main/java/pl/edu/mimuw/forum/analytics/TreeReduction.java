@@ -0,0 +1,181 @@
+package pl.edu.mimuw.forum.analytics;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import pl.edu.mimuw.forum.data.Node;
+import pl.edu.mimuw.forum.io.DataNodes;
+import pl.edu.mimuw.forum.io.NodeAccessor;
+
+/**
+ * Rownolegla redukcja drzewa forum (zob. {@link Aggregator}) w puli {@link ForkJoinPool}.
+ *
+ * Rozmiary poddrzew nie sa znane, wiec drzewo nie jest dzielone z gory. Kazde zadanie przechodzi
+ * swoj fragment bez rekurencji, trzymajac na stosie zakresy list dzieci do odwiedzenia. Co
+ * {@link #CHECK_INTERVAL} wezlow (odcinek wykonywany zawsze sekwencyjnie) zadanie sprawdza, czy
+ * w jego kolejce sa jeszcze zadania do podkradniecia. Gdy nie ma, oddaje nowemu zadaniu koniec
+ * swojej pracy (w kolejnosci dokumentu): najplytszy zakres ze stosu lub gorna polowe jedynego
+ * zakresu. Najplytsze zakresy to zwykle najwieksze poddrzewa. Szerokie wezly dziela sie wiec jak
+ * tablice, a glebokie watki jak listy kolejnych galezi. Wyniki laczone sa w kolejnosci dokumentu.
+ * Zadanie, ktorego wynik jest ostateczny (zob. {@link Aggregator#isComplete}), konczy prace
+ * i anuluje oddane zadania - obejmuja one dalsze fragmenty drzewa.
+ *
+ * W trakcie redukcji drzewa nie wolno zmieniac (np. redukowac mozna niezmienna wersje forum
+ * albo drzewo {@link Node}, ktore nie jest w tym czasie edytowane).
+ */
+public final class TreeReduction {
+
+	/**
+	 * Liczba wezlow odwiedzanych sekwencyjnie miedzy kolejnymi probami podzialu pracy.
+	 */
+	static final int CHECK_INTERVAL = 512;
+
+	/**
+	 * Liczba zadan w kolejce watku, ponizej ktorej zadanie oddaje czesc pracy.
+	 */
+	private static final int SURPLUS = 2;
+
+	private TreeReduction() {
+	}
+
+	/**
+	 * Redukuje drzewo {@link Node} o korzeniu {@code root} we wspolnej puli watkow.
+	 */
+	public static <A> A reduce(Node root, Aggregator<? super Node, A> aggregator) {
+		return reduce(root, DataNodes.INSTANCE, aggregator);
+	}
+
+	/**
+	 * Redukuje drzewo o korzeniu {@code root} we wspolnej puli watkow.
+	 */
+	public static <N, A> A reduce(N root, NodeAccessor<N> nodes, Aggregator<? super N, A> aggregator) {
+		return reduce(root, nodes, aggregator, ForkJoinPool.commonPool());
+	}
+
+	public static <N, A> A reduce(N root, NodeAccessor<N> nodes, Aggregator<? super N, A> aggregator,
+			ForkJoinPool pool) {
+		List<N> roots = new ArrayList<>(1);
+		roots.add(root);
+		Deque<Range<N>> work = new ArrayDeque<>();
+		work.push(new Range<>(roots, 0, 1, 0));
+		return pool.invoke(new Reduction<>(work, nodes, aggregator));
+	}
+
+	/**
+	 * Wezly {@code nodes[from..to)} o glebokosci {@code depth} (rodzenstwo) do odwiedzenia.
+	 */
+	private static final class Range<N> {
+		final List<? extends N> nodes;
+		int from;
+		final int to;
+		final int depth;
+
+		Range(List<? extends N> nodes, int from, int to, int depth) {
+			this.nodes = nodes;
+			this.from = from;
+			this.to = to;
+			this.depth = depth;
+		}
+	}
+
+	private static final class Reduction<N, A> extends RecursiveTask<A> {
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * Zakresy do odwiedzenia - na szczycie pierwszy w kolejnosci dokumentu.
+		 */
+		private final Deque<Range<N>> work;
+		private final NodeAccessor<N> nodes;
+		private final Aggregator<? super N, A> aggregator;
+
+		Reduction(Deque<Range<N>> work, NodeAccessor<N> nodes, Aggregator<? super N, A> aggregator) {
+			this.work = work;
+			this.nodes = nodes;
+			this.aggregator = aggregator;
+		}
+
+		@Override
+		protected A compute() {
+			A result = aggregator.create();
+			// Oddane zadania - kazde kolejne obejmuje fragment drzewa poprzedzajacy wczesniej oddane
+			List<Reduction<N, A>> forked = new ArrayList<>();
+
+			int untilCheck = CHECK_INTERVAL;
+			while (!work.isEmpty()) {
+				Range<N> range = work.peek();
+				if (range.from == range.to) {
+					work.pop();
+					continue;
+				}
+				N node = range.nodes.get(range.from++);
+				aggregator.add(result, node, range.depth);
+				List<? extends N> children = nodes.children(node);
+				if (!children.isEmpty()) {
+					work.push(new Range<>(children, 0, children.size(), range.depth + 1));
+				}
+
+				if (--untilCheck == 0) {
+					untilCheck = CHECK_INTERVAL;
+					if (isCancelled() || aggregator.isComplete(result)) {
+						cancel(forked, forked.size());
+						return result;
+					}
+					if (getSurplusQueuedTaskCount() < SURPLUS) {
+						Reduction<N, A> task = split();
+						if (task != null) {
+							task.fork();
+							forked.add(task);
+						}
+					}
+				}
+			}
+
+			for (int i = forked.size() - 1; i >= 0; i--) {
+				if (isCancelled() || aggregator.isComplete(result)) {
+					cancel(forked, i + 1);
+					break;
+				}
+				result = aggregator.merge(result, forked.get(i).join());
+			}
+			return result;
+		}
+
+		/**
+		 * Anuluje pierwsze {@code count} oddanych zadan. Zadania juz wykonywane koncza prace przy
+		 * najblizszym sprawdzeniu, anulujac swoje oddane zadania.
+		 */
+		private static void cancel(List<? extends Reduction<?, ?>> forked, int count) {
+			for (int i = 0; i < count; i++) {
+				forked.get(i).cancel(false);
+			}
+		}
+
+		/**
+		 * Nowe zadanie obejmujace koniec pozostalej pracy (w kolejnosci dokumentu) lub {@code null},
+		 * gdy zostal jeden wezel.
+		 */
+		private Reduction<N, A> split() {
+			while (work.size() > 1 && work.peekLast().from == work.peekLast().to) {
+				work.pollLast();
+			}
+			Deque<Range<N>> tail = new ArrayDeque<>();
+			Range<N> last = work.peekLast();
+			if (work.size() > 1) {
+				tail.push(work.pollLast());
+			} else if (last.to - last.from > 1) {
+				int middle = last.from + (last.to - last.from) / 2;
+				tail.push(new Range<>(last.nodes, middle, last.to, last.depth));
+				work.pollLast();
+				work.addLast(new Range<>(last.nodes, last.from, middle, last.depth));
+			} else {
+				return null;
+			}
+			return new Reduction<>(tail, nodes, aggregator);
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package pl.edu.mimuw.forum.data;
+
+import java.util.List;
+
+/**
+ * Autorzy postow forum wraz z liczba ich postow - do podpowiadania nazw autorow (zob.
+ * {@link #complete}). Jak {@link ContentIndex} obejmuje cale forum, niezaleznie od tego, dla
+ * ktorych wezlow utworzono modele widoku.
+ *
+ * Indeks nie obserwuje forum - zmiany musi zglaszac jego wlasciciel. Posty bez autora nie sa
+ * liczone.
+ */
+public class AuthorNames {
+
+	private final PrefixIndex names = new PrefixIndex();
+
+	/**
+	 * Autorzy postow wersji forum {@code root}.
+	 */
+	public static AuthorNames of(PersistentNode root) {
+		AuthorNames index = new AuthorNames();
+		index.addAll(root);
+		return index;
+	}
+
+	/**
+	 * Przenosi post do innego autora (np. po edycji pola autora).
+	 */
+	public void move(String oldAuthor, String newAuthor) {
+		change(oldAuthor, -1);
+		change(newAuthor, 1);
+	}
+
+	/**
+	 * Dodaje posty poddrzewa (np. dodanego do forum).
+	 */
+	public void addAll(PersistentNode subtree) {
+		subtree.forEachInSubtree(node -> change(node.getAuthor(), 1));
+	}
+
+	/**
+	 * Usuwa posty poddrzewa (np. usunietego z forum).
+	 */
+	public void removeAll(PersistentNode subtree) {
+		subtree.forEachInSubtree(node -> change(node.getAuthor(), -1));
+	}
+
+	/**
+	 * Najwyzej {@code count} autorow, ktorych nazwa zaczyna sie od {@code prefix}, od autorow
+	 * najwiekszej liczby postow.
+	 */
+	public List<String> complete(String prefix, int count) {
+		return names.complete(prefix, count);
+	}
+
+	/**
+	 * Liczba autorow.
+	 */
+	public int size() {
+		return names.size();
+	}
+
+	private void change(String author, int delta) {
+		if (author != null && !author.isEmpty()) {
+			names.add(author, delta);
+		}
+	}
+}
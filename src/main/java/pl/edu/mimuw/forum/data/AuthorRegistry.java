@@ -0,0 +1,77 @@
+package pl.edu.mimuw.forum.data;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Rejestr autorow jednego forum (lub jednego odczytu czy zapisu pliku). Kazdy autor otrzymuje przy
+ * pierwszym wystapieniu kolejny numer (numery sa geste - od 0), a jego nazwa przechowywana jest tylko
+ * raz, niezaleznie od liczby postow i od tego, ile kopii napisu utworzyl czytnik pliku
+ * (zob. {@link #intern(String)}). Rejestr nie usuwa autorow, ale znika razem z wlascicielem.
+ *
+ * Nie jest bezpieczny dla wielu watkow.
+ */
+public final class AuthorRegistry {
+
+	/**
+	 * Numer oznaczajacy brak autora ({@code null}).
+	 */
+	public static final int NONE = -1;
+
+	private final Map<String, Integer> ids = new HashMap<>();
+
+	private String[] names = new String[16];
+
+	/**
+	 * Numer autora - nowy autor jest rejestrowany.
+	 */
+	public int idOf(String author) {
+		if (author == null) {
+			return NONE;
+		}
+		Integer id = ids.get(author);
+		if (id != null) {
+			return id;
+		}
+		int count = ids.size();
+		if (count == names.length) {
+			names = Arrays.copyOf(names, count * 2);
+		}
+		names[count] = author;
+		ids.put(author, count);
+		return count;
+	}
+
+	/**
+	 * Numer autora lub {@link #NONE}, gdy autor nie zostal zarejestrowany (nie rejestruje autora).
+	 */
+	public int find(String author) {
+		if (author == null) {
+			return NONE;
+		}
+		Integer id = ids.get(author);
+		return id != null ? id : NONE;
+	}
+
+	/**
+	 * Nazwa autora o podanym numerze (ta sama instancja napisu dla wszystkich postow autora).
+	 */
+	public String nameOf(int id) {
+		return id == NONE ? null : names[id];
+	}
+
+	/**
+	 * Wspolna instancja napisu o tresci {@code author}.
+	 */
+	public String intern(String author) {
+		return nameOf(idOf(author));
+	}
+
+	/**
+	 * Liczba zarejestrowanych autorow (numery autorow sa mniejsze od niej).
+	 */
+	public int size() {
+		return ids.size();
+	}
+}
@@ -4,14 +4,14 @@ package pl.edu.mimuw.forum.data;
  * Created by Maciek on 14/09/2016.
  */
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.LinkedList;
 
 import pl.edu.mimuw.forum.exceptions.ApplicationException;
 
 public class Container {
 
-    private List<Node> children = new LinkedList<>();
+    private List<Node> children = new ArrayList<>(1);
 
     public Node getRoot() throws ApplicationException {
         if (children.size() != 1) {
@@ -0,0 +1,371 @@
+package pl.edu.mimuw.forum.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Indeks pelnotekstowy tresci postow forum - dla kazdego slowa lista identyfikatorow wezli,
+ * w ktorych tresci wystepuje (wraz z liczba wystapien). Jak {@link DueDateIndex} obejmuje cale
+ * forum, niezaleznie od tego, dla ktorych wezlow utworzono modele widoku.
+ *
+ * Zmiana tresci uaktualnia jedynie listy slow, ktorych liczba wystapien w poscie sie zmienila
+ * (zob. {@link #update}), wiec wpisywanie tekstu nie wymaga przebudowy indeksu. Slowa dostepne sa
+ * tez jako podpowiedzi (zob. {@link #complete}) - uaktualniane razem z listami postow.
+ *
+ * Slowa to ciagi liter i cyfr, porownywane bez uwzgledniania wielkosci liter. Indeks nie
+ * obserwuje forum - zmiany musi zglaszac jego wlasciciel.
+ */
+public class ContentIndex {
+
+	/**
+	 * Wynik wyszukiwania.
+	 */
+	public static final class Hit {
+		private final long id;
+		private final double score;
+
+		Hit(long id, double score) {
+			this.id = id;
+			this.score = score;
+		}
+
+		/**
+		 * Identyfikator wezla.
+		 */
+		public long getId() {
+			return id;
+		}
+
+		/**
+		 * Trafnosc wyniku (wieksza - lepiej dopasowany post).
+		 */
+		public double getScore() {
+			return score;
+		}
+	}
+
+	/**
+	 * Kolejnosc wynikow - od najlepiej dopasowanych, przy rownej trafnosci wedlug identyfikatora.
+	 */
+	private static final Comparator<Hit> RANKING = (a, b) -> a.score != b.score ? Double.compare(b.score, a.score)
+			: Long.compare(a.id, b.id);
+
+	/**
+	 * Lista postow zawierajacych slowo. Identyfikatory i liczby wystapien przechowywane sa
+	 * w tablicach (bez kolejnosci). Dluzsze listy maja dodatkowo tablice mieszajaca pozycji
+	 * (adresowanie otwarte jak w {@link LongMap}, ale bez opakowywania pozycji w obiekty), dzieki
+	 * ktorej dodanie i usuniecie postu kosztuje O(1) takze dla bardzo czestych slow.
+	 */
+	private static final class Postings {
+
+		/**
+		 * Dlugosc listy, do ktorej post wyszukiwany jest w niej liniowo.
+		 */
+		private static final int LINEAR_LIMIT = 16;
+
+		long[] ids = new long[2];
+		int[] counts = new int[2];
+		int size;
+
+		/**
+		 * Pozycje postow na liscie powiekszone o 1 (0 to pusta komorka) lub {@code null} dla
+		 * krotkich list.
+		 */
+		private int[] slots;
+
+		int indexOf(long id) {
+			if (slots == null) {
+				for (int i = 0; i < size; i++) {
+					if (ids[i] == id) {
+						return i;
+					}
+				}
+				return -1;
+			}
+			int mask = slots.length - 1;
+			for (int i = slot(id, mask); slots[i] != 0; i = (i + 1) & mask) {
+				if (ids[slots[i] - 1] == id) {
+					return slots[i] - 1;
+				}
+			}
+			return -1;
+		}
+
+		int count(long id) {
+			int i = indexOf(id);
+			return i < 0 ? 0 : counts[i];
+		}
+
+		/**
+		 * Zmienia liczbe wystapien slowa w poscie o {@code delta} (usuwa post, gdy spadnie do zera).
+		 */
+		void add(long id, int delta) {
+			int i = indexOf(id);
+			if (i >= 0) {
+				counts[i] += delta;
+				if (counts[i] <= 0) {
+					removeAt(i);
+				}
+				return;
+			}
+			if (delta <= 0) {
+				return;
+			}
+			if (size == ids.length) {
+				ids = Arrays.copyOf(ids, size * 2);
+				counts = Arrays.copyOf(counts, size * 2);
+			}
+			ids[size] = id;
+			counts[size] = delta;
+			size++;
+			if (slots != null && size <= slots.length / 2) {
+				insertSlot(size - 1);
+			} else if (size > LINEAR_LIMIT) {
+				rehash();
+			}
+		}
+
+		/**
+		 * Usuwa post z pozycji {@code i}, przenoszac na jego miejsce ostatni.
+		 */
+		private void removeAt(int i) {
+			size--;
+			if (slots != null) {
+				removeSlot(i);
+				if (i < size) {
+					slots[findSlot(size)] = i + 1;
+				}
+			}
+			ids[i] = ids[size];
+			counts[i] = counts[size];
+		}
+
+		private void insertSlot(int position) {
+			int mask = slots.length - 1;
+			int i = slot(ids[position], mask);
+			while (slots[i] != 0) {
+				i = (i + 1) & mask;
+			}
+			slots[i] = position + 1;
+		}
+
+		/**
+		 * Komorka zawierajaca pozycje {@code position}.
+		 */
+		private int findSlot(int position) {
+			int mask = slots.length - 1;
+			int i = slot(ids[position], mask);
+			while (slots[i] != position + 1) {
+				i = (i + 1) & mask;
+			}
+			return i;
+		}
+
+		/**
+		 * Oproznia komorke pozycji {@code position}, przesuwajac w jej miejsce dalsze komorki serii
+		 * (jak {@link LongMap#remove}).
+		 */
+		private void removeSlot(int position) {
+			int mask = slots.length - 1;
+			int hole = findSlot(position);
+			for (int i = (hole + 1) & mask; slots[i] != 0; i = (i + 1) & mask) {
+				int home = slot(ids[slots[i] - 1], mask);
+				if (((i - home) & mask) >= ((i - hole) & mask)) {
+					slots[hole] = slots[i];
+					hole = i;
+				}
+			}
+			slots[hole] = 0;
+		}
+
+		private void rehash() {
+			slots = new int[Integer.highestOneBit(size) * 4];
+			for (int i = 0; i < size; i++) {
+				insertSlot(i);
+			}
+		}
+
+		private static int slot(long id, int mask) {
+			long hash = id * 0x9E3779B97F4A7C15L;
+			return (int) (hash ^ hash >>> 32) & mask;
+		}
+	}
+
+	private final Map<String, Postings> postings = new HashMap<>();
+
+	/**
+	 * Slowa wraz z liczba postow, w ktorych wystepuja.
+	 */
+	private final PrefixIndex vocabulary = new PrefixIndex();
+
+	/**
+	 * Liczba zaindeksowanych postow (takze bez zadnego slowa) - do oceny, jak rzadkie jest slowo.
+	 */
+	private int posts;
+
+	/**
+	 * Indeks tresci wersji forum {@code root}.
+	 */
+	public static ContentIndex of(PersistentNode root) {
+		ContentIndex index = new ContentIndex();
+		index.addAll(root);
+		return index;
+	}
+
+	/**
+	 * Uaktualnia indeks po zmianie tresci postu {@code id} z {@code oldContent} na {@code newContent}.
+	 */
+	public void update(long id, String oldContent, String newContent) {
+		Map<String, Integer> delta = words(newContent);
+		for (Map.Entry<String, Integer> word : words(oldContent).entrySet()) {
+			delta.merge(word.getKey(), -word.getValue(), Integer::sum);
+		}
+		delta.forEach((word, change) -> {
+			if (change != 0) {
+				change(word, id, change);
+			}
+		});
+	}
+
+	/**
+	 * Dodaje posty poddrzewa (np. dodanego do forum).
+	 */
+	public void addAll(PersistentNode subtree) {
+		subtree.forEachInSubtree(node -> {
+			words(node.getContent()).forEach((word, count) -> change(word, node.getId(), count));
+			posts++;
+		});
+	}
+
+	/**
+	 * Usuwa posty poddrzewa (np. usunietego z forum).
+	 */
+	public void removeAll(PersistentNode subtree) {
+		subtree.forEachInSubtree(node -> {
+			words(node.getContent()).forEach((word, count) -> change(word, node.getId(), -count));
+			posts--;
+		});
+	}
+
+	/**
+	 * Najwyzej {@code count} postow zawierajacych wszystkie slowa zapytania {@code query}, od
+	 * najlepiej dopasowanych. Trafnosc to suma po slowach zapytania: {@code (1 + ln tf) * ln(1 + N / df)},
+	 * gdzie tf to liczba wystapien slowa w poscie, N - liczba postow, a df - liczba postow ze slowem
+	 * (rzadkie slowa waza wiecej). Kosztuje O(m log count), gdzie m to liczba postow
+	 * z najrzadszym slowem zapytania.
+	 */
+	public List<Hit> search(String query, int count) {
+		List<Postings> terms = new ArrayList<>();
+		for (String word : words(query).keySet()) {
+			Postings list = postings.get(word);
+			if (list == null) {
+				return Collections.emptyList();
+			}
+			terms.add(list);
+		}
+		if (terms.isEmpty() || count <= 0) {
+			return Collections.emptyList();
+		}
+		terms.sort(Comparator.comparingInt(list -> list.size));
+
+		double[] weights = new double[terms.size()];
+		for (int t = 0; t < weights.length; t++) {
+			weights[t] = Math.log1p((double) posts / terms.get(t).size);
+		}
+
+		// Najgorszy z dotychczas najlepszych wynikow na szczycie kolejki
+		PriorityQueue<Hit> best = new PriorityQueue<>(count + 1, RANKING.reversed());
+		Postings rarest = terms.get(0);
+		candidates: for (int i = 0; i < rarest.size; i++) {
+			long id = rarest.ids[i];
+			double score = (1 + Math.log(rarest.counts[i])) * weights[0];
+			for (int t = 1; t < weights.length; t++) {
+				int tf = terms.get(t).count(id);
+				if (tf == 0) {
+					continue candidates;
+				}
+				score += (1 + Math.log(tf)) * weights[t];
+			}
+			if (best.size() < count) {
+				best.add(new Hit(id, score));
+			} else if (score > best.peek().score || score == best.peek().score && id < best.peek().id) {
+				best.poll();
+				best.add(new Hit(id, score));
+			}
+		}
+
+		List<Hit> hits = new ArrayList<>(best);
+		hits.sort(RANKING);
+		return hits;
+	}
+
+	/**
+	 * Liczba postow zawierajacych slowo {@code word}.
+	 */
+	public int frequency(String word) {
+		Postings list = postings.get(word.toLowerCase(Locale.ROOT));
+		return list == null ? 0 : list.size;
+	}
+
+	/**
+	 * Najwyzej {@code count} slow zaczynajacych sie od {@code prefix} (bez uwzgledniania wielkosci
+	 * liter), od wystepujacych w najwiekszej liczbie postow.
+	 */
+	public List<String> complete(String prefix, int count) {
+		return vocabulary.complete(prefix.toLowerCase(Locale.ROOT), count);
+	}
+
+	public int size() {
+		return posts;
+	}
+
+	private void change(String word, long id, int delta) {
+		Postings list = postings.get(word);
+		if (list == null) {
+			if (delta <= 0) {
+				return;
+			}
+			list = new Postings();
+			postings.put(word, list);
+		}
+		int size = list.size;
+		list.add(id, delta);
+		if (list.size != size) {
+			vocabulary.add(word, list.size - size);
+		}
+		if (list.size == 0) {
+			postings.remove(word);
+		}
+	}
+
+	/**
+	 * Slowa tekstu (malymi literami) wraz z liczba wystapien.
+	 */
+	static Map<String, Integer> words(String text) {
+		Map<String, Integer> words = new HashMap<>();
+		if (text == null) {
+			return words;
+		}
+		int start = -1;
+		for (int i = 0; i <= text.length();) {
+			// znaki spoza BMP zajmuja dwie jednostki kodowe (pare surogatow)
+			int codePoint = i < text.length() ? text.codePointAt(i) : -1;
+			boolean inWord = codePoint >= 0 && Character.isLetterOrDigit(codePoint);
+			if (inWord && start < 0) {
+				start = i;
+			} else if (!inWord && start >= 0) {
+				words.merge(text.substring(start, i).toLowerCase(Locale.ROOT), 1, Integer::sum);
+				start = -1;
+			}
+			i += codePoint >= 0 ? Character.charCount(codePoint) : 1;
+		}
+		return words;
+	}
+}
@@ -0,0 +1,136 @@
+package pl.edu.mimuw.forum.data;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+/**
+ * Indeks zadan ({@link Task}) forum wedlug terminu. Terminy przechowywane sa jako milisekundy od
+ * poczatku epoki (a nie zmienne obiekty {@link Date}), a zadania - jako identyfikatory wezlow, wiec
+ * indeks obejmuje cale forum, niezaleznie od tego, dla ktorych wezlow utworzono modele widoku.
+ * Zadania o terminie z przedzialu i najblizsze zadania znajdowane sa w czasie O(log n + k).
+ *
+ * Indeks nie obserwuje forum - zmiany musi zglaszac jego wlasciciel. Zadania bez terminu nie sa
+ * indeksowane.
+ */
+public class DueDateIndex {
+
+	/**
+	 * Zadanie w indeksie.
+	 */
+	public static final class Entry {
+		private final long due;
+		private final long id;
+
+		Entry(long due, long id) {
+			this.due = due;
+			this.id = id;
+		}
+
+		/**
+		 * Termin w milisekundach od poczatku epoki.
+		 */
+		public long getDue() {
+			return due;
+		}
+
+		/**
+		 * Identyfikator wezla zadania.
+		 */
+		public long getId() {
+			return id;
+		}
+	}
+
+	private static final Comparator<Entry> ORDER = (a, b) -> a.due != b.due ? Long.compare(a.due, b.due)
+			: Long.compare(a.id, b.id);
+
+	private final NavigableSet<Entry> entries = new TreeSet<>(ORDER);
+
+	private final LongMap<Entry> byId = new LongMap<>();
+
+	/**
+	 * Indeks zadan wersji forum {@code root}.
+	 */
+	public static DueDateIndex of(PersistentNode root) {
+		DueDateIndex index = new DueDateIndex();
+		index.addAll(root);
+		return index;
+	}
+
+	/**
+	 * Ustawia termin zadania {@code id} ({@code null} usuwa zadanie z indeksu).
+	 */
+	public void put(long id, Date due) {
+		remove(id);
+		if (due != null) {
+			Entry entry = new Entry(due.getTime(), id);
+			entries.add(entry);
+			byId.put(id, entry);
+		}
+	}
+
+	public void remove(long id) {
+		Entry entry = byId.remove(id);
+		if (entry != null) {
+			entries.remove(entry);
+		}
+	}
+
+	/**
+	 * Dodaje zadania poddrzewa (np. dodanego do forum).
+	 */
+	public void addAll(PersistentNode subtree) {
+		forEachTask(subtree, node -> put(node.getId(), node.getDueDate()));
+	}
+
+	/**
+	 * Usuwa zadania poddrzewa (np. usunietego z forum).
+	 */
+	public void removeAll(PersistentNode subtree) {
+		forEachTask(subtree, node -> remove(node.getId()));
+	}
+
+	/**
+	 * Zadania o terminie z przedzialu [{@code from}, {@code to}) w kolejnosci terminow
+	 * (widok zmieniajacy sie wraz z indeksem).
+	 */
+	public Collection<Entry> between(long from, long to) {
+		if (from >= to) {
+			return Collections.emptySet();
+		}
+		return Collections.unmodifiableSet(entries.subSet(new Entry(from, Long.MIN_VALUE), true,
+				new Entry(to, Long.MIN_VALUE), false));
+	}
+
+	/**
+	 * Najwyzej {@code count} pierwszych zadan o terminie nie wczesniejszym niz {@code from}.
+	 */
+	public List<Entry> next(long from, int count) {
+		List<Entry> next = new ArrayList<>(Math.min(count, byId.size()));
+		Iterator<Entry> tasks = entries.tailSet(new Entry(from, Long.MIN_VALUE), true).iterator();
+		while (next.size() < count && tasks.hasNext()) {
+			next.add(tasks.next());
+		}
+		return next;
+	}
+
+	public int size() {
+		return byId.size();
+	}
+
+	private static void forEachTask(PersistentNode subtree, Consumer<PersistentNode> action) {
+		subtree.forEachInSubtree(node -> {
+			if (Task.class.isAssignableFrom(node.getType())) {
+				action.accept(node);
+			}
+		});
+	}
+}
@@ -0,0 +1,330 @@
+package pl.edu.mimuw.forum.data;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Kolumnowa reprezentacja drzew forum dla bardzo duzych forow. Zamiast obiektu {@link Node}
+ * (z lista dzieci i osobnymi napisami) kazdy wezel to numer, a jego pola przechowywane sa
+ * w tablicach typow prostych: znacznik typu, rozmiar poddrzewa oraz odwolania do puli tekstu
+ * i do wlasnego rejestru autorow ({@link AuthorRegistry}). Pola podklas (termin zadania, glosy,
+ * odpowiedz na sugestie) przechowywane sa w osobnych tablicach jedynie dla wezlow danego typu.
+ *
+ * Wezly numerowane sa w kolejnosci prefiksowej, wiec pierwsze dziecko wezla ma kolejny numer,
+ * a nastepne rodzenstwo - numer przesuniety o rozmiar poddrzewa. Tresci kodowane sa w puli jako UTF-8.
+ *
+ * Magazyn tworzony jest raz (zob. {@link #of(List)}) i nie zmienia sie, wiec mozna z niego
+ * korzystac z wielu watkow. Istniejacy kod operujacy na drzewie {@link Node} korzysta z
+ * {@link #getRoots()}: dzieci tak utworzonych wezlow dekodowane sa przy kazdym dostepie
+ * i nie sa zapamietywane (jak {@code MappedForumFile#getTransientRoot()}).
+ */
+public final class ForumStore {
+
+	/**
+	 * Brak wartosci (np. tekstu {@code null} lub pol podklasy).
+	 */
+	private static final int NONE = -1;
+
+	private static final List<Class<? extends Node>> TYPES = Arrays.asList(Node.class, Comment.class, Task.class,
+			Survey.class, Suggestion.class);
+	private static final byte COMMENT = 1;
+	private static final byte TASK = 2;
+	private static final byte SURVEY = 3;
+	private static final byte SUGGESTION = 4;
+
+	private static final long NO_DATE = Long.MIN_VALUE;
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private int size;
+	private long[] ids = new long[DEFAULT_CAPACITY];
+	private int[] subtreeSizes = new int[DEFAULT_CAPACITY];
+	private byte[] types = new byte[DEFAULT_CAPACITY];
+	private int[] contents = new int[DEFAULT_CAPACITY];
+	private int[] authors = new int[DEFAULT_CAPACITY];
+
+	/**
+	 * Numer wezla wsrod wezlow jego typu (indeks w tablicach pol podklasy) lub {@link #NONE}.
+	 */
+	private int[] slots = new int[DEFAULT_CAPACITY];
+
+	private int taskCount;
+	private long[] dueDates = new long[0];
+
+	private int surveyCount;
+	private int[] votes = new int[0]; // glosy za i przeciw kolejno dla kazdej ankiety
+
+	private int suggestionCount;
+	private int[] responses = new int[0];
+	private byte[] accepted = new byte[0];
+
+	private final TextPool text = new TextPool();
+
+	private final AuthorRegistry authorNames = new AuthorRegistry();
+
+	private ForumStore() {
+	}
+
+	/**
+	 * Magazyn z kopia poddrzew {@code subtrees} (np. kolejnych watkow wczytywanego forum).
+	 */
+	public static ForumStore of(List<? extends Node> subtrees) {
+		ForumStore store = new ForumStore();
+		subtrees.forEach(store::addSubtree);
+		store.trimToSize();
+		return store;
+	}
+
+	/**
+	 * Liczba wezlow magazynu.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Nowe wezly {@link Node} o polach korzeni skopiowanych poddrzew (w kolejnosci z {@link #of(List)}).
+	 * Zmiany pol tych wezlow nie sa przenoszone do magazynu, a ich listy dzieci sa niemodyfikowalne.
+	 */
+	public List<Node> getRoots() {
+		List<Node> roots = new ArrayList<>();
+		for (int id = 0; id < size; id += subtreeSizes[id]) {
+			roots.add(toNode(id));
+		}
+		return roots;
+	}
+
+	/**
+	 * Kopiuje poddrzewo w kolejnosci prefiksowej (iteracyjnie - glebokosc nie jest ograniczona
+	 * rozmiarem stosu).
+	 */
+	private void addSubtree(Node subtree) {
+		Deque<Integer> open = new ArrayDeque<>();
+		Deque<Iterator<? extends Node>> children = new ArrayDeque<>();
+		open.push(add(subtree));
+		children.push(subtree.getChildren().iterator());
+		while (!open.isEmpty()) {
+			if (children.peek().hasNext()) {
+				Node child = children.peek().next();
+				open.push(add(child));
+				children.push(child.getChildren().iterator());
+			} else {
+				int id = open.pop();
+				children.pop();
+				subtreeSizes[id] = size - id;
+			}
+		}
+	}
+
+	/**
+	 * Dodaje wezel o polach skopiowanych z {@code node} (bez jego dzieci).
+	 */
+	private int add(Node node) {
+		byte type = (byte) TYPES.indexOf(node.getClass());
+		if (type < 0) {
+			throw new IllegalArgumentException("Unsupported node type " + node.getClass().getName() + ".");
+		}
+		if (size == ids.length) {
+			resize(grow(size));
+		}
+		int id = size++;
+
+		types[id] = type;
+		ids[id] = node.getId();
+		contents[id] = text.add(node.getContent());
+		authors[id] = authorNames.idOf(node.getAuthor());
+		slots[id] = addFields(type, node);
+		return id;
+	}
+
+	/**
+	 * Tworzy wezel {@link Node} o polach wezla z magazynu.
+	 */
+	private Node toNode(int id) {
+		String content = text.get(contents[id]);
+		String author = authorNames.nameOf(authors[id]);
+		int slot = slots[id];
+		Node node;
+		switch (types[id]) {
+		case TASK:
+			long dueDate = dueDates[slot];
+			node = new Task(dueDate == NO_DATE ? null : new Date(dueDate), content, author);
+			break;
+		case SURVEY:
+			node = new Survey(content, author, votes[2 * slot], votes[2 * slot + 1]);
+			break;
+		case SUGGESTION:
+			Suggestion suggestion = new Suggestion(content, author, text.get(responses[slot]));
+			byte isAccepted = accepted[slot];
+			suggestion.setIsResponseAccepted(isAccepted < 0 ? null : isAccepted == 1);
+			node = suggestion;
+			break;
+		case COMMENT:
+			node = new Comment(content, author);
+			break;
+		default:
+			node = new Node(content, author);
+			break;
+		}
+		node.setId(ids[id]);
+		if (subtreeSizes[id] > 1) {
+			node.setChildren(new ChildList(id));
+		}
+		return node;
+	}
+
+	/**
+	 * Niemodyfikowalna lista dzieci wezla utworzonego przez {@link #toNode(int)} - dziecko dekodowane
+	 * jest przy kazdym dostepie.
+	 */
+	private class ChildList extends AbstractList<Node> {
+		private final int parentId;
+		private volatile int[] childIds;
+
+		ChildList(int parentId) {
+			this.parentId = parentId;
+		}
+
+		private int[] childIds() {
+			if (childIds == null) {
+				int end = parentId + subtreeSizes[parentId];
+				int count = 0;
+				for (int child = parentId + 1; child < end; child += subtreeSizes[child]) {
+					count++;
+				}
+				int[] children = new int[count];
+				for (int i = 0, child = parentId + 1; i < count; ++i, child += subtreeSizes[child]) {
+					children[i] = child;
+				}
+				childIds = children;
+			}
+			return childIds;
+		}
+
+		@Override
+		public Node get(int index) {
+			return toNode(childIds()[index]);
+		}
+
+		@Override
+		public int size() {
+			return childIds().length;
+		}
+	}
+
+	private int addFields(byte type, Node node) {
+		switch (type) {
+		case TASK:
+			if (taskCount == dueDates.length) {
+				dueDates = Arrays.copyOf(dueDates, grow(taskCount));
+			}
+			Date dueDate = ((Task) node).getDueDate();
+			dueDates[taskCount] = dueDate == null ? NO_DATE : dueDate.getTime();
+			return taskCount++;
+		case SURVEY:
+			if (2 * surveyCount == votes.length) {
+				votes = Arrays.copyOf(votes, 2 * grow(surveyCount));
+			}
+			votes[2 * surveyCount] = ((Survey) node).getLikes();
+			votes[2 * surveyCount + 1] = ((Survey) node).getDislikes();
+			return surveyCount++;
+		case SUGGESTION:
+			if (suggestionCount == responses.length) {
+				responses = Arrays.copyOf(responses, grow(suggestionCount));
+				accepted = Arrays.copyOf(accepted, responses.length);
+			}
+			Suggestion suggestion = (Suggestion) node;
+			responses[suggestionCount] = text.add(suggestion.getResponse());
+			Boolean isAccepted = suggestion.getIsResponseAccepted();
+			accepted[suggestionCount] = (byte) (isAccepted == null ? -1 : isAccepted ? 1 : 0);
+			return suggestionCount++;
+		default:
+			return NONE;
+		}
+	}
+
+	/**
+	 * Zmniejsza tablice do liczby wezlow (po skopiowaniu wszystkich poddrzew).
+	 */
+	private void trimToSize() {
+		resize(size);
+		dueDates = Arrays.copyOf(dueDates, taskCount);
+		votes = Arrays.copyOf(votes, 2 * surveyCount);
+		responses = Arrays.copyOf(responses, suggestionCount);
+		accepted = Arrays.copyOf(accepted, suggestionCount);
+		text.trimToSize();
+	}
+
+	private void resize(int capacity) {
+		ids = Arrays.copyOf(ids, capacity);
+		subtreeSizes = Arrays.copyOf(subtreeSizes, capacity);
+		types = Arrays.copyOf(types, capacity);
+		contents = Arrays.copyOf(contents, capacity);
+		authors = Arrays.copyOf(authors, capacity);
+		slots = Arrays.copyOf(slots, capacity);
+	}
+
+	private static int grow(int capacity) {
+		return Math.max(DEFAULT_CAPACITY, capacity + (capacity >> 1));
+	}
+
+	/**
+	 * Pula napisow zakodowanych w UTF-8 i poprzedzonych dlugoscia (zapisana na 1-5 bajtach).
+	 * Napis identyfikowany jest przesunieciem w puli, {@code null} - przez {@link ForumStore#NONE}.
+	 */
+	private static final class TextPool {
+		private byte[] bytes = new byte[1024];
+		private int length;
+
+		int add(String value) {
+			if (value == null) {
+				return NONE;
+			}
+			byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+			int required = length + encoded.length + 5;
+			if (required < 0) {
+				throw new IllegalStateException("The forum text exceeds 2 GB.");
+			}
+			if (required > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(required, bytes.length + (bytes.length >> 1)));
+			}
+			int offset = length;
+			for (int n = encoded.length; ; n >>>= 7) {
+				if (n < 0x80) {
+					bytes[length++] = (byte) n;
+					break;
+				}
+				bytes[length++] = (byte) (n & 0x7f | 0x80);
+			}
+			System.arraycopy(encoded, 0, bytes, length, encoded.length);
+			length += encoded.length;
+			return offset;
+		}
+
+		String get(int offset) {
+			if (offset == NONE) {
+				return null;
+			}
+			int n = 0;
+			for (int shift = 0; ; shift += 7) {
+				byte b = bytes[offset++];
+				n |= (b & 0x7f) << shift;
+				if (b >= 0) {
+					break;
+				}
+			}
+			return new String(bytes, offset, n, StandardCharsets.UTF_8);
+		}
+
+		void trimToSize() {
+			bytes = Arrays.copyOf(bytes, length);
+		}
+	}
+}
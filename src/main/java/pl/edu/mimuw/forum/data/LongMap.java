@@ -0,0 +1,161 @@
+package pl.edu.mimuw.forum.data;
+
+import java.util.Arrays;
+
+/**
+ * Tablica mieszajaca o kluczach typu {@code long} (bez opakowywania kluczy w {@link Long}), np. indeks
+ * wezlow wedlug identyfikatora. Adresowanie otwarte z sondowaniem liniowym - klucze i wartosci
+ * przechowywane sa w dwoch tablicach, bez obiektow dla poszczegolnych wpisow.
+ *
+ * Wartosci nie moga byc {@code null} (pusta komorka to komorka bez wartosci).
+ *
+ * @param <V> typ wartosci
+ */
+public class LongMap<V> {
+
+	private static final int MIN_CAPACITY = 16;
+
+	private long[] keys;
+	private Object[] values;
+	private int size;
+
+	/**
+	 * Liczba wpisow, po przekroczeniu ktorej tablica jest powiekszana (3/4 pojemnosci).
+	 */
+	private int threshold;
+
+	public LongMap() {
+		this(MIN_CAPACITY);
+	}
+
+	/**
+	 * @param expectedSize spodziewana liczba wpisow
+	 */
+	public LongMap(int expectedSize) {
+		allocate(capacityFor(expectedSize));
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+		int mask = keys.length - 1;
+		for (int i = slot(key, mask); values[i] != null; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				return (V) values[i];
+			}
+		}
+		return null;
+	}
+
+	public boolean containsKey(long key) {
+		return get(key) != null;
+	}
+
+	/**
+	 * @return poprzednia wartosc dla klucza lub {@code null}
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(long key, V value) {
+		if (value == null) {
+			throw new NullPointerException("LongMap does not store null values.");
+		}
+		int mask = keys.length - 1;
+		int i = slot(key, mask);
+		for (; values[i] != null; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				V previous = (V) values[i];
+				values[i] = value;
+				return previous;
+			}
+		}
+		keys[i] = key;
+		values[i] = value;
+		if (++size > threshold) {
+			rehash(keys.length * 2);
+		}
+		return null;
+	}
+
+	/**
+	 * @return usunieta wartosc lub {@code null}, gdy klucza nie bylo
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(long key) {
+		int mask = keys.length - 1;
+		int i = slot(key, mask);
+		for (; values[i] != null; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				V removed = (V) values[i];
+				shiftBack(i, mask);
+				size--;
+				return removed;
+			}
+		}
+		return null;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		Arrays.fill(values, null);
+		size = 0;
+	}
+
+	/**
+	 * Usuwa wpis z komorki {@code hole}, przesuwajac w jej miejsce dalsze wpisy tej samej serii
+	 * (dzieki temu wyszukiwanie nie potrzebuje znacznikow usunietych komorek).
+	 */
+	private void shiftBack(int hole, int mask) {
+		for (int i = (hole + 1) & mask; values[i] != null; i = (i + 1) & mask) {
+			int home = slot(keys[i], mask);
+			// wpis moze zajac dziure, jesli jego komorka docelowa nie lezy miedzy dziura a nim
+			if (((i - home) & mask) >= ((i - hole) & mask)) {
+				keys[hole] = keys[i];
+				values[hole] = values[i];
+				hole = i;
+			}
+		}
+		values[hole] = null;
+	}
+
+	private void rehash(int capacity) {
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		allocate(capacity);
+		int mask = capacity - 1;
+		for (int j = 0; j < oldValues.length; ++j) {
+			if (oldValues[j] != null) {
+				int i = slot(oldKeys[j], mask);
+				while (values[i] != null) {
+					i = (i + 1) & mask;
+				}
+				keys[i] = oldKeys[j];
+				values[i] = oldValues[j];
+			}
+		}
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new Object[capacity];
+		threshold = capacity / 4 * 3;
+	}
+
+	private static int capacityFor(int expectedSize) {
+		int capacity = MIN_CAPACITY;
+		while (capacity / 4 * 3 < expectedSize) {
+			capacity *= 2;
+		}
+		return capacity;
+	}
+
+	private static int slot(long key, int mask) {
+		long hash = key * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ hash >>> 32) & mask;
+	}
+}
@@ -1,6 +1,6 @@
 package pl.edu.mimuw.forum.data;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 //import com.thoughtworks.xstream.annotations.XStreamOmitField;
@@ -12,9 +12,15 @@ import pl.edu.mimuw.forum.ui.models.NodeViewModel;
  * @author jsroka
  */
 public class Node {
+
+	/**
+	 * Trwaly identyfikator wezla, zapisywany w pliku forum (zob. {@link NodeIds}).
+	 */
+	long id = NodeIds.next();
+
 	String content;
 	String author;
-	List<Node> children = new LinkedList<>();
+	List<Node> children = new ArrayList<>();
 
 	//@XStreamOmitField
 	transient NodeViewModel model;
@@ -24,6 +30,18 @@ public class Node {
 		this.author = author;
 	}
 
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * Ustawia identyfikator wczytany z pliku (lub skopiowany z modelu widoku).
+	 */
+	public void setId(long id) {
+		this.id = id;
+		NodeIds.reserve(id);
+	}
+
 	public String getContent() {
 		return content;
 	}
@@ -44,14 +62,29 @@ public class Node {
 		return children;
 	}
 
+	/**
+	 * Zastepuje liste dzieci wezla, np. lista wczytywana z pliku dopiero przy pierwszym dostepie.
+	 */
+	public void setChildren(List<Node> children) {
+		this.children = children;
+	}
+
 	public void addChild(Node child) {
 		children.add(child);
 	}
 
+	public void addChild(int index, Node child) {
+		children.add(index, child);
+	}
+
 	public void removeChild(Node child) {
 		children.remove(child);
 	}
 
+	public Node removeChild(int index) {
+		return children.remove(index);
+	}
+
 	public NodeViewModel getModel() {
 		if (model == null) {
 			model = createModel();
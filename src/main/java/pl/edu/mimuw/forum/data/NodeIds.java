@@ -0,0 +1,53 @@
+package pl.edu.mimuw.forum.data;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generator trwalych identyfikatorow wezlow ({@link Node#getId()}). Identyfikatory pochodza z licznika
+ * zainicjowanego czasem uruchomienia programu (przesunietym o 20 bitow), wiec wezly tworzone
+ * w kolejnych uruchomieniach nie powtarzaja identyfikatorow. Identyfikatory wczytane z pliku sa
+ * zastrzegane (zob. {@link #reserve(long)}) - nowe wezly otrzymuja wieksze. Wczytywane identyfikatory
+ * musza nalezec do przedzialu {@code 1..}{@link #MAX_ID} (zob. {@link #isValid(long)}).
+ */
+public final class NodeIds {
+
+	private static final AtomicLong last = new AtomicLong(System.currentTimeMillis() << 20);
+
+	/**
+	 * Najwiekszy identyfikator przyjmowany z pliku - powyzej licznik nie mialby zapasu na nowe wezly.
+	 */
+	public static final long MAX_ID = Long.MAX_VALUE >> 1;
+
+	private NodeIds() {
+	}
+
+	public static long next() {
+		long id = last.incrementAndGet();
+		if (id <= 0) {
+			throw new IllegalStateException("Node ids are exhausted.");
+		}
+		return id;
+	}
+
+	/**
+	 * Czy identyfikator wczytany z pliku moze zostac zastrzezony.
+	 */
+	public static boolean isValid(long id) {
+		return id > 0 && id <= MAX_ID;
+	}
+
+	/**
+	 * Zapewnia, ze {@link #next()} nie zwroci juz identyfikatora {@code id} ani mniejszego.
+	 *
+	 * @throws IllegalArgumentException gdy identyfikator nie nalezy do przedzialu {@code 1..}{@link #MAX_ID}
+	 */
+	public static void reserve(long id) {
+		if (!isValid(id)) {
+			throw new IllegalArgumentException("Node id out of range: " + id);
+		}
+		long current = last.get();
+		while (current < id && !last.compareAndSet(current, id)) {
+			current = last.get();
+		}
+	}
+}
@@ -0,0 +1,276 @@
+package pl.edu.mimuw.forum.data;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Niezmienna lista dzieci {@link PersistentNode} - drzewo AVL uporzadkowane kluczami kolejnosci
+ * (zob. {@link VersionedForum}), z rozmiarami poddrzew, dzieki ktorym dziecko o danym indeksie
+ * znajdowane jest w czasie logarytmicznym. Kazda zmiana kopiuje jedynie sciezke od korzenia
+ * drzewa AVL do zmienianego elementu - pozostale elementy wspoldzielone sa z poprzednia wersja.
+ * Kazdy element drzewa AVL zapamietuje tez podsumowanie dzieci swojego poddrzewa AVL (obliczane
+ * przy pierwszym dostepie), wiec po zmianie jednego dziecka podsumowanie wszystkich dzieci obliczane
+ * jest w czasie logarytmicznym.
+ *
+ * Pusta lista to {@code null}, dlatego operacje sa metodami statycznymi.
+ */
+final class PersistentChildren {
+
+	private final long key;
+	private final PersistentNode value;
+	private final PersistentChildren left;
+	private final PersistentChildren right;
+	private final int height;
+	private final int size;
+
+	/**
+	 * Podsumowanie dzieci poddrzewa AVL ({@code null}, dopoki nie zostanie obliczone).
+	 */
+	private volatile SubtreeStats stats;
+
+	private PersistentChildren(long key, PersistentNode value, PersistentChildren left, PersistentChildren right) {
+		this.key = key;
+		this.value = value;
+		this.left = left;
+		this.right = right;
+		this.height = Math.max(height(left), height(right)) + 1;
+		this.size = size(left) + size(right) + 1;
+	}
+
+	static int size(PersistentChildren tree) {
+		return tree == null ? 0 : tree.size;
+	}
+
+	/**
+	 * Suma podsumowan poddrzew wszystkich dzieci. Brakujace podsumowania (elementow drzewa AVL i wezli
+	 * dzieci) obliczane sa bez rekurencji - sciezki skopiowane przy zmianach moga byc bardzo dlugie.
+	 */
+	static SubtreeStats stats(PersistentChildren tree) {
+		if (tree == null) {
+			return SubtreeStats.EMPTY;
+		}
+		if (tree.stats != null) {
+			return tree.stats;
+		}
+		Deque<Object> pending = new ArrayDeque<>();
+		pending.push(tree);
+		while (!pending.isEmpty()) {
+			Object next = pending.peek();
+			if (next instanceof PersistentNode) {
+				PersistentNode node = (PersistentNode) next;
+				if (node.source == null && node.children != null && node.children.stats == null) {
+					pending.push(node.children);
+				} else {
+					node.getChildStats(); // podsumowanie dzieci jest juz znane lub czytane z wezla forum
+					pending.pop();
+				}
+				continue;
+			}
+			PersistentChildren element = (PersistentChildren) next;
+			if (element.stats != null) {
+				pending.pop();
+			} else if (element.left != null && element.left.stats == null) {
+				pending.push(element.left);
+			} else if (element.right != null && element.right.stats == null) {
+				pending.push(element.right);
+			} else if (!element.value.hasChildStats()) {
+				pending.push(element.value);
+			} else {
+				element.stats = stats(element.left).plus(element.value.getStats()).plus(stats(element.right));
+				pending.pop();
+			}
+		}
+		return tree.stats;
+	}
+
+	private static int height(PersistentChildren tree) {
+		return tree == null ? 0 : tree.height;
+	}
+
+	/**
+	 * Dziecko o kluczu {@code key} ({@code null}, gdy go nie ma).
+	 */
+	static PersistentNode find(PersistentChildren tree, long key) {
+		while (tree != null) {
+			if (key < tree.key) {
+				tree = tree.left;
+			} else if (key > tree.key) {
+				tree = tree.right;
+			} else {
+				return tree.value;
+			}
+		}
+		return null;
+	}
+
+	static PersistentNode get(PersistentChildren tree, int index) {
+		return at(tree, index).value;
+	}
+
+	static long keyAt(PersistentChildren tree, int index) {
+		return at(tree, index).key;
+	}
+
+	private static PersistentChildren at(PersistentChildren tree, int index) {
+		if (index < 0 || index >= size(tree)) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size(tree));
+		}
+		while (true) {
+			int leftSize = size(tree.left);
+			if (index < leftSize) {
+				tree = tree.left;
+			} else if (index > leftSize) {
+				index -= leftSize + 1;
+				tree = tree.right;
+			} else {
+				return tree;
+			}
+		}
+	}
+
+	/**
+	 * Dodaje dziecko o kluczu, ktorego nie ma jeszcze na liscie.
+	 */
+	static PersistentChildren insert(PersistentChildren tree, long key, PersistentNode value) {
+		if (tree == null) {
+			return new PersistentChildren(key, value, null, null);
+		}
+		if (key < tree.key) {
+			return balance(tree.key, tree.value, insert(tree.left, key, value), tree.right);
+		} else if (key > tree.key) {
+			return balance(tree.key, tree.value, tree.left, insert(tree.right, key, value));
+		}
+		throw new IllegalArgumentException("Duplicate child key " + key + ".");
+	}
+
+	/**
+	 * Zastepuje dziecko o kluczu {@code key} (ksztalt drzewa sie nie zmienia).
+	 */
+	static PersistentChildren replace(PersistentChildren tree, long key, PersistentNode value) {
+		if (tree == null) {
+			throw new NoSuchElementException("No child with key " + key + ".");
+		}
+		if (key < tree.key) {
+			return new PersistentChildren(tree.key, tree.value, replace(tree.left, key, value), tree.right);
+		} else if (key > tree.key) {
+			return new PersistentChildren(tree.key, tree.value, tree.left, replace(tree.right, key, value));
+		}
+		return new PersistentChildren(key, value, tree.left, tree.right);
+	}
+
+	static PersistentChildren remove(PersistentChildren tree, long key) {
+		if (tree == null) {
+			throw new NoSuchElementException("No child with key " + key + ".");
+		}
+		if (key < tree.key) {
+			return balance(tree.key, tree.value, remove(tree.left, key), tree.right);
+		} else if (key > tree.key) {
+			return balance(tree.key, tree.value, tree.left, remove(tree.right, key));
+		}
+		if (tree.left == null) {
+			return tree.right;
+		}
+		if (tree.right == null) {
+			return tree.left;
+		}
+		PersistentChildren first = tree.right;
+		while (first.left != null) {
+			first = first.left;
+		}
+		return balance(first.key, first.value, tree.left, remove(tree.right, first.key));
+	}
+
+	/**
+	 * Zrownowazone drzewo z dzieci {@code values[from..to)} o rosnacych kluczach {@code keys}.
+	 */
+	static PersistentChildren of(long[] keys, PersistentNode[] values, int from, int to) {
+		if (from >= to) {
+			return null;
+		}
+		int middle = (from + to) >>> 1;
+		return new PersistentChildren(keys[middle], values[middle], of(keys, values, from, middle),
+				of(keys, values, middle + 1, to));
+	}
+
+	/**
+	 * Widok listy (tylko do odczytu). Przegladanie iteratorem trwa czas liniowy, dostep przez indeks -
+	 * logarytmiczny.
+	 */
+	static List<PersistentNode> asList(PersistentChildren tree) {
+		return new AbstractList<PersistentNode>() {
+			@Override
+			public PersistentNode get(int index) {
+				return PersistentChildren.get(tree, index);
+			}
+
+			@Override
+			public int size() {
+				return PersistentChildren.size(tree);
+			}
+
+			@Override
+			public Iterator<PersistentNode> iterator() {
+				return new Iterator<PersistentNode>() {
+					// nieodwiedzeni przodkowie - na szczycie stosu jest nastepny element
+					private final Deque<PersistentChildren> stack = new ArrayDeque<>();
+
+					{
+						pushLeft(tree);
+					}
+
+					private void pushLeft(PersistentChildren node) {
+						for (; node != null; node = node.left) {
+							stack.push(node);
+						}
+					}
+
+					@Override
+					public boolean hasNext() {
+						return !stack.isEmpty();
+					}
+
+					@Override
+					public PersistentNode next() {
+						if (stack.isEmpty()) {
+							throw new NoSuchElementException();
+						}
+						PersistentChildren node = stack.pop();
+						pushLeft(node.right);
+						return node.value;
+					}
+				};
+			}
+		};
+	}
+
+	private static PersistentChildren balance(long key, PersistentNode value, PersistentChildren left,
+			PersistentChildren right) {
+		int leftHeight = height(left);
+		int rightHeight = height(right);
+		if (leftHeight > rightHeight + 1) {
+			if (height(left.left) >= height(left.right)) {
+				return new PersistentChildren(left.key, left.value, left.left,
+						new PersistentChildren(key, value, left.right, right));
+			}
+			PersistentChildren pivot = left.right;
+			return new PersistentChildren(pivot.key, pivot.value,
+					new PersistentChildren(left.key, left.value, left.left, pivot.left),
+					new PersistentChildren(key, value, pivot.right, right));
+		}
+		if (rightHeight > leftHeight + 1) {
+			if (height(right.right) >= height(right.left)) {
+				return new PersistentChildren(right.key, right.value,
+						new PersistentChildren(key, value, left, right.left), right.right);
+			}
+			PersistentChildren pivot = right.left;
+			return new PersistentChildren(pivot.key, pivot.value,
+					new PersistentChildren(key, value, left, pivot.left),
+					new PersistentChildren(right.key, right.value, pivot.right, right.right));
+		}
+		return new PersistentChildren(key, value, left, right);
+	}
+}
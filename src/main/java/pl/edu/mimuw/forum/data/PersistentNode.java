@@ -0,0 +1,278 @@
+package pl.edu.mimuw.forum.data;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Niezmienny wezel forum - wersja drzewa {@link Node} z chwili utworzenia migawki
+ * (zob. {@link VersionedForum}). Zmiana pola tworzy nowy wezel ({@code with...}), a wezly i listy
+ * dzieci, ktorych zmiana nie dotyczy, wspoldzielone sa przez kolejne wersje forum.
+ *
+ * Wezel utworzony z wezla forum ({@link #of(Node)}) nie kopiuje jego poddrzewa: dzieci czytane sa
+ * z wezla forum przy kazdym dostepie, wiec wezly drzewa {@link Node}, na ktorym oparto forum, nie moga
+ * sie juz zmieniac. Kopiowane sa jedynie listy dzieci wezlow na sciezkach do zmienianych wezlow.
+ *
+ * Wezel przechowuje pola wszystkich typow wezlow - znaczenie maja jedynie pola typu
+ * {@link #getType()}. Mozna z niego korzystac z wielu watkow.
+ */
+public final class PersistentNode {
+
+	/**
+	 * Wartosc pola terminu oznaczajaca brak terminu.
+	 */
+	private static final long NO_DATE = Long.MIN_VALUE;
+
+	private final long id;
+	private final Class<? extends Node> type;
+	private final String content;
+	private final String author;
+	private final long dueDate;
+	private final int likes;
+	private final int dislikes;
+	private final String response;
+	private final Boolean responseAccepted;
+
+	/**
+	 * Skopiowana lista dzieci ({@code null}, gdy wezel nie ma dzieci lub czyta je z {@link #source}).
+	 */
+	final PersistentChildren children;
+
+	/**
+	 * Wezel forum, z ktorego czytane sa dzieci ({@code null}, gdy lista dzieci zostala skopiowana).
+	 */
+	final Node source;
+
+	/**
+	 * Podsumowanie poddrzew dzieci ({@code null}, dopoki nie zostanie obliczone, zob. {@link #getStats()}).
+	 */
+	private volatile SubtreeStats childStats;
+
+	private PersistentNode(long id, Class<? extends Node> type, String content, String author, long dueDate, int likes,
+			int dislikes, String response, Boolean responseAccepted, PersistentChildren children, Node source,
+			SubtreeStats childStats) {
+		this.id = id;
+		this.type = type;
+		this.content = content;
+		this.author = author;
+		this.dueDate = dueDate;
+		this.likes = likes;
+		this.dislikes = dislikes;
+		this.response = response;
+		this.responseAccepted = responseAccepted;
+		this.children = children;
+		this.source = source;
+		this.childStats = children == null && source == null ? SubtreeStats.EMPTY : childStats;
+	}
+
+	/**
+	 * Wersja wezla forum {@code node} wraz z poddrzewem, ktorego wezly tworzone sa dopiero przy dostepie.
+	 */
+	public static PersistentNode of(Node node) {
+		long dueDate = NO_DATE;
+		int likes = 0;
+		int dislikes = 0;
+		String response = null;
+		Boolean responseAccepted = null;
+		if (node instanceof Task) {
+			Date date = ((Task) node).getDueDate();
+			dueDate = date == null ? NO_DATE : date.getTime();
+		} else if (node instanceof Survey) {
+			likes = ((Survey) node).getLikes();
+			dislikes = ((Survey) node).getDislikes();
+		} else if (node instanceof Suggestion) {
+			response = ((Suggestion) node).getResponse();
+			responseAccepted = ((Suggestion) node).getIsResponseAccepted();
+		}
+		return new PersistentNode(node.getId(), node.getClass(), node.getContent(), node.getAuthor(), dueDate,
+				likes, dislikes, response, responseAccepted, null, node.getChildren().isEmpty() ? null : node, null);
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * Klasa wezla forum, ktorego wersja jest ten wezel.
+	 */
+	public Class<? extends Node> getType() {
+		return type;
+	}
+
+	public String getContent() {
+		return content;
+	}
+
+	public String getAuthor() {
+		return author;
+	}
+
+	/**
+	 * Termin zadania (kopia - wezel pozostaje niezmienny).
+	 */
+	public Date getDueDate() {
+		return dueDate == NO_DATE ? null : new Date(dueDate);
+	}
+
+	public int getLikes() {
+		return likes;
+	}
+
+	public int getDislikes() {
+		return dislikes;
+	}
+
+	public String getResponse() {
+		return response;
+	}
+
+	public Boolean getIsResponseAccepted() {
+		return responseAccepted;
+	}
+
+	/**
+	 * Dzieci wezla (lista tylko do odczytu). Dzieci czytane z wezla forum tworzone sa przy kazdym
+	 * dostepie do elementu listy.
+	 */
+	public List<PersistentNode> getChildren() {
+		if (source != null) {
+			List<? extends Node> nodes = source.getChildren();
+			return new AbstractList<PersistentNode>() {
+				@Override
+				public PersistentNode get(int index) {
+					return of(nodes.get(index));
+				}
+
+				@Override
+				public int size() {
+					return nodes.size();
+				}
+			};
+		}
+		return PersistentChildren.asList(children);
+	}
+
+	public int getChildCount() {
+		return source != null ? source.getChildren().size() : PersistentChildren.size(children);
+	}
+
+	/**
+	 * Wykonuje {@code action} dla kazdego wezla poddrzewa (wraz z tym wezlem). Kolejnosc wezlow nie
+	 * jest okreslona; glebokosc drzewa nie jest ograniczona rozmiarem stosu.
+	 */
+	public void forEachInSubtree(Consumer<PersistentNode> action) {
+		Deque<PersistentNode> pending = new ArrayDeque<>();
+		pending.push(this);
+		while (!pending.isEmpty()) {
+			PersistentNode node = pending.pop();
+			action.accept(node);
+			node.getChildren().forEach(pending::push);
+		}
+	}
+
+	/**
+	 * Wezly poddrzewa o podanych identyfikatorach (wedlug identyfikatora; brakuje tych, ktorych
+	 * w poddrzewie nie ma). Poddrzewo przegladane jest do znalezienia wszystkich wezlow, wiec metode
+	 * nalezy wywolywac w tle.
+	 */
+	public LongMap<PersistentNode> findAll(Collection<Long> ids) {
+		LongMap<PersistentNode> found = new LongMap<>();
+		Set<Long> missing = new HashSet<>(ids);
+		Deque<PersistentNode> pending = new ArrayDeque<>();
+		pending.push(this);
+		while (!pending.isEmpty() && !missing.isEmpty()) {
+			PersistentNode node = pending.pop();
+			if (missing.remove(node.id)) {
+				found.put(node.id, node);
+			}
+			List<PersistentNode> children = node.getChildren();
+			for (int i = children.size() - 1; i >= 0; i--) {
+				pending.push(children.get(i));
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Podsumowanie poddrzewa wezla (wraz z nim samym). Podsumowanie poddrzew dzieci obliczane jest
+	 * przy pierwszym wywolaniu - dla wezla, ktorego poddrzewo nie zostalo skopiowane, wymaga to
+	 * przejrzenia calego poddrzewa, wiec metode nalezy wtedy wywolywac w tle. Kopie wezla ze zmienionym
+	 * polem przejmuja obliczone podsumowanie dzieci.
+	 */
+	public SubtreeStats getStats() {
+		return SubtreeStats.of(type, responseAccepted, likes, dislikes).plus(getChildStats());
+	}
+
+	/**
+	 * Podsumowanie poddrzew dzieci (zob. {@link #getStats()}).
+	 */
+	SubtreeStats getChildStats() {
+		SubtreeStats stats = childStats;
+		if (stats == null) {
+			stats = source != null ? SubtreeStats.ofDescendants(source) : PersistentChildren.stats(children);
+			childStats = stats;
+		}
+		return stats;
+	}
+
+	/**
+	 * Czy podsumowanie poddrzew dzieci jest juz znane.
+	 */
+	boolean hasChildStats() {
+		return childStats != null;
+	}
+
+	public PersistentNode withContent(String content) {
+		return new PersistentNode(id, type, content, author, dueDate, likes, dislikes, response, responseAccepted,
+				children, source, childStats);
+	}
+
+	public PersistentNode withAuthor(String author) {
+		return new PersistentNode(id, type, content, author, dueDate, likes, dislikes, response, responseAccepted,
+				children, source, childStats);
+	}
+
+	public PersistentNode withDueDate(Date dueDate) {
+		return new PersistentNode(id, type, content, author, dueDate == null ? NO_DATE : dueDate.getTime(), likes,
+				dislikes, response, responseAccepted, children, source, childStats);
+	}
+
+	public PersistentNode withLikes(int likes) {
+		return new PersistentNode(id, type, content, author, dueDate, likes, dislikes, response, responseAccepted,
+				children, source, childStats);
+	}
+
+	public PersistentNode withDislikes(int dislikes) {
+		return new PersistentNode(id, type, content, author, dueDate, likes, dislikes, response, responseAccepted,
+				children, source, childStats);
+	}
+
+	public PersistentNode withResponse(String response) {
+		return new PersistentNode(id, type, content, author, dueDate, likes, dislikes, response, responseAccepted,
+				children, source, childStats);
+	}
+
+	public PersistentNode withIsResponseAccepted(Boolean responseAccepted) {
+		return new PersistentNode(id, type, content, author, dueDate, likes, dislikes, response, responseAccepted,
+				children, source, childStats);
+	}
+
+	/**
+	 * Kopia wezla ze skopiowana lista dzieci {@code children} (wezel nie czyta juz dzieci z wezla forum).
+	 */
+	PersistentNode withChildren(PersistentChildren children) {
+		return new PersistentNode(id, type, content, author, dueDate, likes, dislikes, response, responseAccepted,
+				children, null, null);
+	}
+
+	@Override
+	public String toString() {
+		return type.getSimpleName() + "(id=" + id + ", content=" + content + ", author=" + getAuthor() + ")";
+	}
+}
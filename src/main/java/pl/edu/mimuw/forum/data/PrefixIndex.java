@@ -0,0 +1,305 @@
+package pl.edu.mimuw.forum.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Slownik napisow z czestosciami, podpowiadajacy najczestsze napisy o danym przedrostku (zob.
+ * {@link #complete}). Napisy przechowywane sa w drzewie trie z kompresja sciezek - krawedzie
+ * oznaczone sa calymi fragmentami napisow, wiec drzewo ma mniej niz dwa wezly na napis.
+ *
+ * Kazdy wezel pamieta najwieksza czestosc w swoim poddrzewie, dzieki czemu podpowiedzi wyznaczane
+ * sa przegladaniem najpierw najlepszych poddrzew - koszt zalezy od liczby podpowiedzi i dlugosci
+ * napisow, a nie od liczby napisow o danym przedrostku. Zmiana czestosci uaktualnia jedynie wezly
+ * na sciezce do napisu.
+ *
+ * Napisy porownywane sa z uwzglednieniem wielkosci liter.
+ */
+public class PrefixIndex {
+
+	private static final Node[] NO_CHILDREN = new Node[0];
+
+	private static final class Node {
+
+		/**
+		 * Fragment napisu na krawedzi od rodzica (pusty jedynie w korzeniu).
+		 */
+		String label;
+
+		/**
+		 * Czestosc napisu konczacego sie w tym wezle (0, gdy zaden sie w nim nie konczy).
+		 */
+		int count;
+
+		/**
+		 * Najwieksza czestosc napisu w poddrzewie (wraz z wezlem).
+		 */
+		int best;
+
+		/**
+		 * Dzieci uporzadkowane wedlug pierwszego znaku etykiety.
+		 */
+		Node[] children = NO_CHILDREN;
+
+		Node(String label) {
+			this.label = label;
+		}
+
+		int indexOf(char first) {
+			int low = 0;
+			int high = children.length - 1;
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+				char c = children[middle].label.charAt(0);
+				if (c < first) {
+					low = middle + 1;
+				} else if (c > first) {
+					high = middle - 1;
+				} else {
+					return middle;
+				}
+			}
+			return -(low + 1);
+		}
+
+		Node child(char first) {
+			int i = indexOf(first);
+			return i < 0 ? null : children[i];
+		}
+
+		void insert(Node child) {
+			int i = -(indexOf(child.label.charAt(0)) + 1);
+			Node[] longer = new Node[children.length + 1];
+			System.arraycopy(children, 0, longer, 0, i);
+			longer[i] = child;
+			System.arraycopy(children, i, longer, i + 1, children.length - i);
+			children = longer;
+		}
+
+		void remove(Node child) {
+			int i = indexOf(child.label.charAt(0));
+			Node[] shorter = Arrays.copyOf(children, children.length - 1);
+			System.arraycopy(children, i + 1, shorter, i, children.length - i - 1);
+			children = shorter.length == 0 ? NO_CHILDREN : shorter;
+		}
+
+		/**
+		 * Dolacza jedyne dziecko do wezla, w ktorym nie konczy sie zaden napis.
+		 */
+		void absorbOnlyChild() {
+			Node child = children[0];
+			label += child.label;
+			count = child.count;
+			best = child.best;
+			children = child.children;
+		}
+
+		int computeBest() {
+			int max = count;
+			for (Node child : children) {
+				max = Math.max(max, child.best);
+			}
+			return max;
+		}
+	}
+
+	/**
+	 * Kandydat na podpowiedz - napis (gdy {@code word}) lub poddrzewo, ktorego napisy zaczynaja sie
+	 * od {@code text}.
+	 */
+	private static final class Candidate {
+		final Node node;
+		final String text;
+		final boolean word;
+
+		Candidate(Node node, String text, boolean word) {
+			this.node = node;
+			this.text = text;
+			this.word = word;
+		}
+
+		int priority() {
+			return word ? node.count : node.best;
+		}
+	}
+
+	/**
+	 * Od najwiekszej czestosci, a przy rownej - alfabetycznie. Napisy poddrzewa nie poprzedzaja
+	 * alfabetycznie jego przedrostka, wiec podpowiedzi o rownej czestosci tez sa uporzadkowane.
+	 */
+	private static final Comparator<Candidate> ORDER = (a, b) -> a.priority() != b.priority()
+			? Integer.compare(b.priority(), a.priority()) : a.text.compareTo(b.text);
+
+	private final Node root = new Node("");
+
+	/**
+	 * Liczba napisow o dodatniej czestosci.
+	 */
+	private int size;
+
+	/**
+	 * Zmienia czestosc napisu {@code text} o {@code delta}. Napis, ktorego czestosc spadnie do zera,
+	 * jest usuwany (czestosci nie sa ujemne).
+	 */
+	public void add(String text, int delta) {
+		if (delta == 0) {
+			return;
+		}
+		// Wezly od korzenia do wezla napisu
+		List<Node> path = new ArrayList<>();
+		Node node = root;
+		path.add(node);
+		int i = 0;
+		while (i < text.length()) {
+			Node child = node.child(text.charAt(i));
+			if (child == null) {
+				if (delta < 0) {
+					return;
+				}
+				child = new Node(text.substring(i));
+				node.insert(child);
+				path.add(child);
+				node = child;
+				break;
+			}
+			int common = commonPrefix(child.label, text, i);
+			if (common < child.label.length()) {
+				if (delta < 0) {
+					return;
+				}
+				// Napis rozchodzi sie z krawedzia w jej srodku - dzielimy ja
+				Node middle = new Node(child.label.substring(0, common));
+				node.children[node.indexOf(text.charAt(i))] = middle;
+				child.label = child.label.substring(common);
+				middle.children = new Node[] { child };
+				middle.best = child.best;
+				child = middle;
+			}
+			path.add(child);
+			node = child;
+			i += common;
+		}
+
+		int oldCount = node.count;
+		int newCount = Math.max(0, oldCount + delta);
+		if (newCount == oldCount) {
+			return;
+		}
+		node.count = newCount;
+		if (oldCount == 0) {
+			size++;
+		} else if (newCount == 0) {
+			size--;
+		}
+
+		if (newCount > oldCount) {
+			// Wzrost czestosci - wystarczy porownac ja z dotychczasowymi maksimami
+			for (int p = path.size() - 1; p >= 0 && path.get(p).best < newCount; p--) {
+				path.get(p).best = newCount;
+			}
+			return;
+		}
+
+		int last = path.size() - 1;
+		if (newCount == 0 && node != root) {
+			Node parent = path.get(last - 1);
+			if (node.children.length == 0) {
+				parent.remove(node);
+				last--;
+				if (parent != root && parent.count == 0 && parent.children.length == 1) {
+					parent.absorbOnlyChild();
+				}
+			} else if (node.children.length == 1) {
+				node.absorbOnlyChild();
+			}
+		}
+		// Spadek czestosci zmienia maksima jedynie tych przodkow, dla ktorych napis byl najczestszy
+		for (int p = last; p >= 0; p--) {
+			Node ancestor = path.get(p);
+			if (ancestor.best > oldCount) {
+				break;
+			}
+			ancestor.best = ancestor.computeBest();
+		}
+	}
+
+	/**
+	 * Czestosc napisu {@code text} (0, gdy go nie ma).
+	 */
+	public int frequency(String text) {
+		Node node = root;
+		int i = 0;
+		while (i < text.length()) {
+			node = node.child(text.charAt(i));
+			if (node == null || !text.startsWith(node.label, i)) {
+				return 0;
+			}
+			i += node.label.length();
+		}
+		return node.count;
+	}
+
+	/**
+	 * Najwyzej {@code count} napisow zaczynajacych sie od {@code prefix} (wraz z nim samym),
+	 * od najczestszych, a przy rownej czestosci - alfabetycznie.
+	 */
+	public List<String> complete(String prefix, int count) {
+		Node node = root;
+		String text = "";
+		int i = 0;
+		while (i < prefix.length()) {
+			Node child = node.child(prefix.charAt(i));
+			if (child == null) {
+				return Collections.emptyList();
+			}
+			int common = commonPrefix(child.label, prefix, i);
+			if (i + common < prefix.length() && common < child.label.length()) {
+				return Collections.emptyList();
+			}
+			text = prefix.substring(0, i) + child.label;
+			node = child;
+			i += common;
+		}
+		if (node.best == 0 || count <= 0) {
+			return Collections.emptyList();
+		}
+
+		List<String> completions = new ArrayList<>(count);
+		PriorityQueue<Candidate> candidates = new PriorityQueue<>(ORDER);
+		candidates.add(new Candidate(node, text, false));
+		while (completions.size() < count && !candidates.isEmpty()) {
+			Candidate candidate = candidates.poll();
+			if (candidate.word) {
+				completions.add(candidate.text);
+				continue;
+			}
+			if (candidate.node.count > 0) {
+				candidates.add(new Candidate(candidate.node, candidate.text, true));
+			}
+			for (Node child : candidate.node.children) {
+				candidates.add(new Candidate(child, candidate.text + child.label, false));
+			}
+		}
+		return completions;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Dlugosc wspolnego przedrostka {@code label} i {@code text} od pozycji {@code from}.
+	 */
+	private static int commonPrefix(String label, String text, int from) {
+		int length = Math.min(label.length(), text.length() - from);
+		int i = 0;
+		while (i < length && label.charAt(i) == text.charAt(from + i)) {
+			i++;
+		}
+		return i;
+	}
+}
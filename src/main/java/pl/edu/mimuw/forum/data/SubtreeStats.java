@@ -0,0 +1,158 @@
+package pl.edu.mimuw.forum.data;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Podsumowanie poddrzewa forum: liczba postow, liczby sugestii wedlug stanu odpowiedzi i suma
+ * glosow w ankietach. Obiekty sa niezmienne - podsumowania zapamietywane sa w wezlach
+ * {@link PersistentNode} przy pierwszym obliczeniu, a po zmianie forum obliczane sa od nowa jedynie
+ * dla sciezki skopiowanej przy tej zmianie.
+ */
+public final class SubtreeStats {
+
+	public static final SubtreeStats EMPTY = new SubtreeStats(0, 0, 0, 0, 0, 0);
+
+	/**
+	 * Pojedynczy post bez sugestii i glosow (wspolny dla wszystkich takich lisci).
+	 */
+	static final SubtreeStats POST = new SubtreeStats(1, 0, 0, 0, 0, 0);
+
+	private static final SubtreeStats ACCEPTED = new SubtreeStats(1, 1, 0, 0, 0, 0);
+	private static final SubtreeStats REJECTED = new SubtreeStats(1, 0, 1, 0, 0, 0);
+	private static final SubtreeStats PENDING = new SubtreeStats(1, 0, 0, 1, 0, 0);
+
+	private final int posts;
+	private final int acceptedSuggestions;
+	private final int rejectedSuggestions;
+	private final int pendingSuggestions;
+	private final long likes;
+	private final long dislikes;
+
+	private SubtreeStats(int posts, int acceptedSuggestions, int rejectedSuggestions, int pendingSuggestions,
+			long likes, long dislikes) {
+		this.posts = posts;
+		this.acceptedSuggestions = acceptedSuggestions;
+		this.rejectedSuggestions = rejectedSuggestions;
+		this.pendingSuggestions = pendingSuggestions;
+		this.likes = likes;
+		this.dislikes = dislikes;
+	}
+
+	/**
+	 * Podsumowanie pojedynczego wezla (bez dzieci).
+	 */
+	static SubtreeStats of(Class<? extends Node> type, Boolean responseAccepted, int likes, int dislikes) {
+		if (Suggestion.class.isAssignableFrom(type)) {
+			return responseAccepted == null ? PENDING : responseAccepted ? ACCEPTED : REJECTED;
+		}
+		if (Survey.class.isAssignableFrom(type) && (likes != 0 || dislikes != 0)) {
+			return new SubtreeStats(1, 0, 0, 0, likes, dislikes);
+		}
+		return POST;
+	}
+
+	/**
+	 * Podsumowanie poddrzew dzieci wezla forum {@code node} (przejscie bez rekurencji - watki moga
+	 * byc bardzo glebokie).
+	 */
+	static SubtreeStats ofDescendants(Node node) {
+		int posts = 0;
+		int accepted = 0;
+		int rejected = 0;
+		int pending = 0;
+		long likes = 0;
+		long dislikes = 0;
+		Deque<Node> nodes = new ArrayDeque<>();
+		node.getChildren().forEach(nodes::push);
+		while (!nodes.isEmpty()) {
+			Node next = nodes.pop();
+			posts++;
+			if (next instanceof Suggestion) {
+				Boolean responseAccepted = ((Suggestion) next).getIsResponseAccepted();
+				if (responseAccepted == null) {
+					pending++;
+				} else if (responseAccepted) {
+					accepted++;
+				} else {
+					rejected++;
+				}
+			} else if (next instanceof Survey) {
+				likes += ((Survey) next).getLikes();
+				dislikes += ((Survey) next).getDislikes();
+			}
+			next.getChildren().forEach(nodes::push);
+		}
+		return posts == 0 ? EMPTY : new SubtreeStats(posts, accepted, rejected, pending, likes, dislikes);
+	}
+
+	public SubtreeStats plus(SubtreeStats other) {
+		if (other == EMPTY) {
+			return this;
+		}
+		if (this == EMPTY) {
+			return other;
+		}
+		return new SubtreeStats(posts + other.posts, acceptedSuggestions + other.acceptedSuggestions,
+				rejectedSuggestions + other.rejectedSuggestions, pendingSuggestions + other.pendingSuggestions,
+				likes + other.likes, dislikes + other.dislikes);
+	}
+
+	/**
+	 * Liczba postow w poddrzewie (wraz z jego korzeniem).
+	 */
+	public int getPosts() {
+		return posts;
+	}
+
+	public int getAcceptedSuggestions() {
+		return acceptedSuggestions;
+	}
+
+	public int getRejectedSuggestions() {
+		return rejectedSuggestions;
+	}
+
+	/**
+	 * Liczba sugestii, na ktorych odpowiedz nie zostala jeszcze przyjeta ani odrzucona.
+	 */
+	public int getPendingSuggestions() {
+		return pendingSuggestions;
+	}
+
+	public int getSuggestions() {
+		return acceptedSuggestions + rejectedSuggestions + pendingSuggestions;
+	}
+
+	public long getLikes() {
+		return likes;
+	}
+
+	public long getDislikes() {
+		return dislikes;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof SubtreeStats)) {
+			return false;
+		}
+		SubtreeStats other = (SubtreeStats) obj;
+		return posts == other.posts && acceptedSuggestions == other.acceptedSuggestions
+				&& rejectedSuggestions == other.rejectedSuggestions && pendingSuggestions == other.pendingSuggestions
+				&& likes == other.likes && dislikes == other.dislikes;
+	}
+
+	@Override
+	public int hashCode() {
+		return ((posts * 31 + acceptedSuggestions) * 31 + rejectedSuggestions) * 31 + pendingSuggestions
+				+ Long.hashCode(likes * 31 + dislikes);
+	}
+
+	@Override
+	public String toString() {
+		return "SubtreeStats(posts=" + posts + ", accepted=" + acceptedSuggestions + ", rejected="
+				+ rejectedSuggestions + ", pending=" + pendingSuggestions + ", likes=" + likes + ", dislikes="
+				+ dislikes + ')';
+	}
+}
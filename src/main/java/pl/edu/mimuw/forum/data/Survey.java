@@ -9,7 +9,7 @@ import pl.edu.mimuw.forum.ui.models.SurveyViewModel;
  */
 public class Survey extends Node {
 
-	int likes, dislikes;
+	private final VoteCounter votes;
 
 	public Survey(String content, String author) {
 		this(content, author, 0, 0);
@@ -17,38 +17,53 @@ public class Survey extends Node {
 
 	public Survey(String content, String author, int likes, int dislikes) {
 		super(content, author);
-		this.likes = likes;
-		this.dislikes = dislikes;
+		votes = new VoteCounter(likes, dislikes);
+	}
+
+	/**
+	 * Liczniki glosow ankiety - mozna z nich korzystac z wielu watkow.
+	 */
+	public VoteCounter getVotes() {
+		return votes;
 	}
 
 	public int getLikes() {
-		return likes;
+		return votes.getLikes();
 	}
 
 	public int getDislikes() {
-		return dislikes;
+		return votes.getDislikes();
+	}
+
+	public void setLikes(int likes) {
+		votes.setLikes(likes);
+	}
+
+	public void setDislikes(int dislikes) {
+		votes.setDislikes(dislikes);
 	}
 
 	public void addLike() {
-		likes++;
+		votes.addLike();
 	}
 
 	public void removeLike() {
-		likes--;
-		if (likes < 0) {
-			likes = 0;
-		}
+		votes.removeLike();
 	}
 
 	public void addDislike() {
-		dislikes++;
+		votes.addDislike();
 	}
 
 	public void removeDislike() {
-		dislikes--;
-		if (dislikes < 0) {
-			dislikes = 0;
-		}
+		votes.removeDislike();
+	}
+
+	/**
+	 * Dodaje naraz paczke glosow (zob. {@link VoteCounter#add(int, int)}).
+	 */
+	public void addVotes(int likes, int dislikes) {
+		votes.add(likes, dislikes);
 	}
 
 	@Override
@@ -58,7 +73,6 @@ public class Survey extends Node {
 
 	@Override
 	public String toString() {
-		return "Surve(" + super.toString() + " likes=" + likes
-				+ ", dislikes=" + dislikes + ')';
+		return "Surve(" + super.toString() + " " + votes + ')';
 	}
 }
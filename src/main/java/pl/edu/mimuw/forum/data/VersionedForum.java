@@ -0,0 +1,311 @@
+package pl.edu.mimuw.forum.data;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * Forum przechowywane jako kolejne niezmienne wersje drzewa ({@link PersistentNode}). Kazda zmiana
+ * tworzy nowa wersje, kopiujac jedynie wezly na sciezce od korzenia do zmienianego wezla - dawne
+ * wersje pozostaja niezmienione i mozna je czytac (np. zapisywac w tle), podczas gdy forum jest
+ * dalej edytowane. Migawka (zob. {@link #snapshot()}) to jedynie odczyt aktualnego korzenia.
+ *
+ * Pierwsza wersja jedynie opakowuje drzewo {@link Node} (zob. {@link PersistentNode#of(Node)}), wiec
+ * utworzenie forum nie kopiuje drzewa. Listy dzieci kopiowane sa dopiero przy zmianie wezla (dla
+ * wezlow na sciezce od korzenia), a wiec sa to listy dzieci przodkow zmienionych wezlow.
+ *
+ * Wezly wskazywane sa identyfikatorami ({@link Node#getId()}). Forum pamieta rodzica i klucz
+ * kolejnosci wsrod rodzenstwa (zob. {@link PersistentChildren}) jedynie dla wezlow, ktore zostaly
+ * odsloniete (zob. {@link #reveal(long[])}) - zwykle wezlow widocznych w drzewie widoku i ich
+ * rodzenstwa - wiec zmiana wezla na glebokosci d kosztuje O(d log k), gdzie k to liczba dzieci wezlow
+ * na sciezce, a pamiec forum jest proporcjonalna do liczby odslonietych i zmienionych wezlow.
+ *
+ * Zmieniac forum moze jeden watek, migawki mozna czytac z dowolnych watkow.
+ */
+public class VersionedForum {
+
+	/**
+	 * Odstep kluczy kolejnosci nadawanych kolejnym dzieciom - miedzy dwoma sasiednimi dziecmi
+	 * mozna wstawic okolo 20 wezlow, zanim klucze rodzenstwa trzeba nadac od nowa. Dzieci czytane
+	 * z wezla forum maja klucze {@code i * GAP}.
+	 */
+	private static final long GAP = 1L << 20;
+
+	/**
+	 * Polozenie wezla w drzewie (tylko do uzytku piszacego watku - migawki go nie zawieraja).
+	 */
+	private static final class Location {
+		final long parent;
+		long order;
+
+		/**
+		 * Czy polozenie maja wszystkie dzieci wezla.
+		 */
+		boolean childrenLocated;
+
+		Location(long parent, long order) {
+			this.parent = parent;
+			this.order = order;
+		}
+	}
+
+	private volatile PersistentNode root;
+
+	private final LongMap<Location> locations = new LongMap<>();
+
+	/**
+	 * Tworzy pierwsza wersje forum opartego na drzewie {@code root}, ktorego wezly nie moga sie juz
+	 * zmieniac.
+	 */
+	public VersionedForum(Node root) {
+		this.root = PersistentNode.of(root);
+		locations.put(root.getId(), new Location(root.getId(), 0));
+	}
+
+	/**
+	 * Aktualna wersja forum (niezmienna).
+	 */
+	public PersistentNode snapshot() {
+		return root;
+	}
+
+	/**
+	 * Zapamietuje polozenie wezlow na sciezce {@code ids} - identyfikatorow kolejnych wezlow od korzenia
+	 * (pierwszy element) - i ich rodzenstwa. Do wezlow, ktore nie zostaly odsloniete ani dodane, nie
+	 * mozna sie odwolywac.
+	 *
+	 * @throws IllegalArgumentException gdy sciezki nie ma w forum
+	 */
+	public void reveal(long[] ids) {
+		if (ids.length == 0 || ids[0] != root.getId()) {
+			throw new IllegalArgumentException("The path does not start at the root.");
+		}
+		PersistentNode node = root;
+		for (int i = 1; i < ids.length; i++) {
+			Location parent = locations.get(ids[i - 1]);
+			if (!parent.childrenLocated) {
+				locateChildren(ids[i - 1], parent, node);
+			}
+			Location location = locations.get(ids[i]);
+			if (location == null || location.parent != ids[i - 1]) {
+				throw new IllegalArgumentException("No node " + ids[i] + " under node " + ids[i - 1] + ".");
+			}
+			node = child(node, location.order);
+		}
+	}
+
+	/**
+	 * Zapamietuje polozenie wszystkich dzieci wezla {@code node}.
+	 */
+	private void locateChildren(long id, Location location, PersistentNode node) {
+		if (node.source != null) {
+			List<PersistentNode> children = node.getChildren();
+			for (int i = 0; i < children.size(); i++) {
+				locations.put(children.get(i).getId(), new Location(id, i * GAP));
+			}
+		}
+		location.childrenLocated = true; // dzieci z listy skopiowanej maja polozenie od jej skopiowania
+	}
+
+	/**
+	 * Wezel o identyfikatorze {@code id} w aktualnej wersji forum.
+	 */
+	public PersistentNode get(long id) {
+		PersistentNode[] path = path(id);
+		return path[path.length - 1];
+	}
+
+	/**
+	 * Wezly aktualnej wersji forum na sciezce od korzenia (pierwszy element) do wezla {@code id}
+	 * (np. do uaktualnienia podsumowan przodkow zmienionego wezla, zob. {@link PersistentNode#getStats()}).
+	 */
+	public PersistentNode[] path(long id) {
+		return walk(pathTo(id));
+	}
+
+	/**
+	 * Wezly na sciezce od korzenia wyznaczonej kluczami kolejnosci (zob. {@link #pathTo(long)}).
+	 */
+	private PersistentNode[] walk(long[] keys) {
+		PersistentNode[] path = new PersistentNode[keys.length + 1];
+		path[0] = root;
+		for (int i = 1; i < path.length; i++) {
+			path[i] = child(path[i - 1], keys[keys.length - i]);
+		}
+		return path;
+	}
+
+	/**
+	 * Dziecko wezla o kluczu kolejnosci {@code key}.
+	 */
+	private static PersistentNode child(PersistentNode node, long key) {
+		if (node.source != null) {
+			return node.getChildren().get((int) (key / GAP));
+		}
+		return PersistentChildren.find(node.children, key);
+	}
+
+	/**
+	 * Zastepuje wezel o identyfikatorze {@code id} wynikiem {@code change} (np.
+	 * {@code node -> node.withContent(text)}).
+	 */
+	public void update(long id, UnaryOperator<PersistentNode> change) {
+		long[] keys = pathTo(id);
+		int depth = keys.length;
+		PersistentNode[] path = walk(keys);
+
+		PersistentNode node = change.apply(path[depth]);
+		for (int i = depth; i > 0; i--) {
+			PersistentNode parent = path[i - 1];
+			node = parent.withChildren(PersistentChildren.replace(childrenOf(parent), keys[depth - i], node));
+		}
+		root = node;
+	}
+
+	/**
+	 * Klucze kolejnosci na sciezce od wezla {@code id} (pierwszy klucz) do korzenia.
+	 */
+	private long[] pathTo(long id) {
+		long[] keys = new long[16];
+		int depth = 0;
+		for (long node = id; node != root.getId(); depth++) {
+			Location location = locations.get(node);
+			if (location == null) {
+				throw new IllegalArgumentException("No node " + id + ".");
+			}
+			if (depth == keys.length) {
+				keys = Arrays.copyOf(keys, depth * 2);
+			}
+			keys[depth] = location.order;
+			node = location.parent;
+		}
+		return Arrays.copyOf(keys, depth);
+	}
+
+	/**
+	 * Lista dzieci wezla do skopiowania przy zmianie - dzieci czytane z wezla forum przepisywane sa
+	 * do nowej listy (i otrzymuja polozenie).
+	 */
+	private PersistentChildren childrenOf(PersistentNode node) {
+		Location location = locations.get(node.getId());
+		if (node.source == null) {
+			location.childrenLocated = true; // skopiowana lista - wszystkie dzieci maja polozenie
+			return node.children;
+		}
+		List<PersistentNode> children = node.getChildren();
+		int size = children.size();
+		long[] keys = new long[size];
+		PersistentNode[] values = new PersistentNode[size];
+		for (int i = 0; i < size; i++) {
+			keys[i] = i * GAP;
+			values[i] = children.get(i);
+			if (!location.childrenLocated) {
+				locations.put(values[i].getId(), new Location(node.getId(), keys[i]));
+			}
+		}
+		location.childrenLocated = true;
+		return PersistentChildren.of(keys, values, 0, size);
+	}
+
+	/**
+	 * Wstawia poddrzewo {@code subtree} jako dziecko wezla {@code parent} na pozycji {@code index}.
+	 * Wezly poddrzewa nie moga sie juz zmieniac (zob. {@link PersistentNode#of(Node)}).
+	 *
+	 * @return wstawiony wezel
+	 */
+	public PersistentNode add(long parent, int index, Node subtree) {
+		PersistentNode[] added = new PersistentNode[1];
+		update(parent, node -> {
+			PersistentChildren children = childrenOf(node);
+			if (index < 0 || index > PersistentChildren.size(children)) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", size: " + PersistentChildren.size(children));
+			}
+			long key = keyFor(children, index);
+			if (key == Long.MIN_VALUE) {
+				children = renumber(children);
+				key = keyFor(children, index);
+			}
+			added[0] = PersistentNode.of(subtree);
+			locations.put(subtree.getId(), new Location(parent, key));
+			return node.withChildren(PersistentChildren.insert(children, key, added[0]));
+		});
+		return added[0];
+	}
+
+	/**
+	 * Usuwa wezel (wraz z poddrzewem).
+	 *
+	 * @return usuniete poddrzewo (z wersji sprzed usuniecia)
+	 */
+	public PersistentNode remove(long id) {
+		Location location = locations.get(id);
+		if (location == null || id == root.getId()) {
+			throw new IllegalArgumentException(id == root.getId() ? "Can't remove the root node." : "No node " + id + ".");
+		}
+		PersistentNode[] removed = new PersistentNode[1];
+		update(location.parent, node -> {
+			PersistentChildren children = childrenOf(node);
+			removed[0] = PersistentChildren.find(children, location.order);
+			return node.withChildren(PersistentChildren.remove(children, location.order));
+		});
+
+		forget(removed[0]);
+		return removed[0];
+	}
+
+	/**
+	 * Usuwa polozenie wezlow poddrzewa - przegladane sa jedynie dzieci wezlow, ktorych dzieci maja
+	 * polozenie.
+	 */
+	private void forget(PersistentNode subtree) {
+		Deque<PersistentNode> pending = new ArrayDeque<>();
+		pending.push(subtree);
+		while (!pending.isEmpty()) {
+			PersistentNode node = pending.pop();
+			Location location = locations.remove(node.getId());
+			if (location != null && location.childrenLocated) {
+				node.getChildren().forEach(pending::push);
+			}
+		}
+	}
+
+	/**
+	 * Klucz kolejnosci dla dziecka wstawianego na pozycji {@code index} ({@link Long#MIN_VALUE},
+	 * gdy miedzy kluczami sasiadow nie ma wolnego klucza).
+	 */
+	private static long keyFor(PersistentChildren children, int index) {
+		int size = PersistentChildren.size(children);
+		if (size == 0) {
+			return 0;
+		}
+		if (index == size) {
+			long last = PersistentChildren.keyAt(children, size - 1);
+			return last <= Long.MAX_VALUE - GAP ? last + GAP : Long.MIN_VALUE;
+		}
+		long next = PersistentChildren.keyAt(children, index);
+		long previous = index == 0 ? next - 2 * GAP : PersistentChildren.keyAt(children, index - 1);
+		if (next - previous < 2 || previous <= Long.MIN_VALUE + 2 * GAP) {
+			return Long.MIN_VALUE;
+		}
+		return previous + (next - previous) / 2;
+	}
+
+	/**
+	 * Nadaje dzieciom od nowa klucze kolejnosci odlegle o {@link #GAP}.
+	 */
+	private PersistentChildren renumber(PersistentChildren children) {
+		int size = PersistentChildren.size(children);
+		long[] keys = new long[size];
+		PersistentNode[] values = new PersistentNode[size];
+		Iterator<PersistentNode> nodes = PersistentChildren.asList(children).iterator();
+		for (int i = 0; i < size; i++) {
+			keys[i] = i * GAP;
+			values[i] = nodes.next();
+			locations.get(values[i].getId()).order = keys[i];
+		}
+		return PersistentChildren.of(keys, values, 0, size);
+	}
+}
@@ -0,0 +1,92 @@
+package pl.edu.mimuw.forum.data;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Liczniki glosow ankiety ({@link Survey}). Glosy moga byc dodawane jednoczesnie z wielu watkow
+ * (np. z zewnetrznego zrodla glosow) - liczniki sa rozproszone ({@link LongAdder}), wiec watki
+ * nie rywalizuja o jedna komorke pamieci. Odczyt sumuje liczniki, jest wiec wolniejszy od zapisu.
+ *
+ * Wspoldzielony przez ankiete i jej model widoku, dzieki czemu liczby glosow przechowywane sa
+ * tylko w jednym miejscu.
+ */
+public class VoteCounter {
+
+	private final LongAdder likes = new LongAdder();
+	private final LongAdder dislikes = new LongAdder();
+
+	public VoteCounter(int likes, int dislikes) {
+		this.likes.add(likes);
+		this.dislikes.add(dislikes);
+	}
+
+	public int getLikes() {
+		return clamp(likes.sum());
+	}
+
+	public int getDislikes() {
+		return clamp(dislikes.sum());
+	}
+
+	/**
+	 * Ustawia liczbe glosow za. Glosy dodawane w tym samym czasie przez inne watki moga zostac
+	 * utracone.
+	 */
+	public void setLikes(int likes) {
+		this.likes.reset();
+		this.likes.add(likes);
+	}
+
+	public void setDislikes(int dislikes) {
+		this.dislikes.reset();
+		this.dislikes.add(dislikes);
+	}
+
+	/**
+	 * Dodaje naraz paczke glosow (np. zebranych przez zrodlo glosow od ostatniego wywolania).
+	 */
+	public void add(int likes, int dislikes) {
+		if (likes < 0 || dislikes < 0) {
+			throw new IllegalArgumentException("Vote counts must not be negative: " + likes + ", " + dislikes);
+		}
+		if (likes != 0) {
+			this.likes.add(likes);
+		}
+		if (dislikes != 0) {
+			this.dislikes.add(dislikes);
+		}
+	}
+
+	public void addLike() {
+		likes.increment();
+	}
+
+	/**
+	 * Wycofuje glos za, o ile jakis jest (przy jednoczesnym wycofywaniu glosow przez wiele watkow
+	 * suma moze chwilowo spasc ponizej zera - odczyt zwraca wtedy zero).
+	 */
+	public void removeLike() {
+		if (likes.sum() > 0) {
+			likes.decrement();
+		}
+	}
+
+	public void addDislike() {
+		dislikes.increment();
+	}
+
+	public void removeDislike() {
+		if (dislikes.sum() > 0) {
+			dislikes.decrement();
+		}
+	}
+
+	private static int clamp(long votes) {
+		return (int) Math.max(0, Math.min(votes, Integer.MAX_VALUE));
+	}
+
+	@Override
+	public String toString() {
+		return "likes=" + getLikes() + ", dislikes=" + getDislikes();
+	}
+}
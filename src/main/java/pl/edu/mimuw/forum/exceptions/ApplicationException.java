@@ -8,6 +8,10 @@ public class ApplicationException extends Exception {
 		super();
 	}
 	
+	public ApplicationException(String message) {
+		super(message);
+	}
+	
 	public ApplicationException(String message, Throwable cause) {
 		super(message, cause);
 	}
@@ -0,0 +1,142 @@
+package pl.edu.mimuw.forum.io;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Zapis pliku odporny na awarie: tresc trafia najpierw do pliku tymczasowego w tym samym katalogu,
+ * jest utrwalana na dysku (fsync), a nastepnie plik tymczasowy atomowo zastepuje plik docelowy.
+ * W razie bledu lub awarii w trakcie zapisu plik docelowy pozostaje nienaruszony.
+ *
+ * Plik tymczasowy tworzony jest z domyslnymi uprawnieniami (jak nowy plik), a gdy plik docelowy
+ * istnieje, przejmuje jego uprawnienia, wlasciciela i grupe (w systemach POSIX) - zastapienie pliku
+ * nie zmienia wiec dostepu do niego.
+ */
+public class AtomicFileWriter {
+
+	@FunctionalInterface
+	public interface Content {
+		void writeTo(OutputStream out) throws IOException;
+	}
+
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	private static final Set<PosixFilePermission> GROUP_PERMISSIONS = EnumSet.of(PosixFilePermission.GROUP_READ,
+			PosixFilePermission.GROUP_WRITE, PosixFilePermission.GROUP_EXECUTE);
+
+	private AtomicFileWriter() {
+	}
+
+	public static void write(File target, Content content) throws IOException {
+		Path targetPath = target.toPath().toAbsolutePath();
+		Path directory = targetPath.getParent();
+		Path temp = createTempFile(directory, "." + targetPath.getFileName());
+
+		try {
+			try (FileOutputStream fileOut = new FileOutputStream(temp.toFile());
+					OutputStream out = new BufferedOutputStream(fileOut)) {
+				content.writeTo(out);
+				out.flush();
+				fileOut.getFD().sync();
+			}
+			copyAttributes(targetPath, temp);
+
+			try {
+				Files.move(temp, targetPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, targetPath, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(temp);
+			throw e;
+		}
+
+		syncDirectory(directory);
+	}
+
+	/**
+	 * Tworzy pusty plik o niepowtarzalnej nazwie. W odroznieniu od {@link Files#createTempFile}
+	 * (uprawnienia 0600) plik otrzymuje domyslne uprawnienia nowych plikow (zgodnie z umask).
+	 */
+	private static Path createTempFile(Path directory, String prefix) throws IOException {
+		while (true) {
+			String random = Long.toUnsignedString(ThreadLocalRandom.current().nextLong());
+			Path temp = directory.resolve(prefix + random + TEMP_SUFFIX);
+			try {
+				return Files.createFile(temp);
+			} catch (FileAlreadyExistsException e) {
+				// nazwa zajeta - losujemy inna
+			}
+		}
+	}
+
+	/**
+	 * Nadaje plikowi tymczasowemu uprawnienia, wlasciciela i grupe pliku docelowego (o ile istnieje
+	 * i system plikow obsluguje atrybuty POSIX). Wlasciciela moze zmienic jedynie administrator -
+	 * w przeciwnym razie plik nalezy do zapisujacego. Gdy nie mozna zachowac grupy (zapisujacy do
+	 * niej nie nalezy), plikowi odbierane sa uprawnienia grupy, tak by nie udostepnic go innej grupie.
+	 */
+	private static void copyAttributes(Path target, Path temp) throws IOException {
+		PosixFileAttributeView targetView = Files.getFileAttributeView(target, PosixFileAttributeView.class);
+		PosixFileAttributeView tempView = Files.getFileAttributeView(temp, PosixFileAttributeView.class);
+		if (targetView == null || tempView == null || !Files.exists(target)) {
+			return;
+		}
+		PosixFileAttributes original = targetView.readAttributes();
+		PosixFileAttributes current = tempView.readAttributes();
+
+		if (!original.owner().equals(current.owner())) {
+			try {
+				tempView.setOwner(original.owner());
+			} catch (IOException e) {
+				// tylko administrator moze zmienic wlasciciela
+			}
+		}
+		Set<PosixFilePermission> permissions = EnumSet.noneOf(PosixFilePermission.class);
+		permissions.addAll(original.permissions());
+		if (!original.group().equals(current.group())) {
+			try {
+				tempView.setGroup(original.group());
+			} catch (IOException e) {
+				permissions.removeAll(GROUP_PERMISSIONS);
+			}
+		}
+		tempView.setPermissions(permissions);
+	}
+
+	/**
+	 * Utrwala wpis katalogu po zmianie nazwy. Nie wszystkie systemy (np. Windows) pozwalaja
+	 * otworzyc katalog - wtedy polegamy na systemie plikow. Blad utrwalania zglaszany jest jak blad
+	 * zapisu (plik zostal juz zastapiony, ale zmiana nazwy moze nie przetrwac awarii).
+	 */
+	private static void syncDirectory(Path directory) throws IOException {
+		FileChannel channel;
+		try {
+			channel = FileChannel.open(directory, StandardOpenOption.READ);
+		} catch (AccessDeniedException | UnsupportedOperationException e) {
+			return;
+		}
+		try (FileChannel open = channel) {
+			open.force(true);
+		} catch (IOException e) {
+			throw new IOException("Cannot flush the directory " + directory + " after replacing the file.", e);
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package pl.edu.mimuw.forum.io;
+
+/**
+ * Stale binarnego formatu pliku forum.
+ *
+ * <pre>
+ * plik      := MAGIC wersja:u16 autorzy wezel* indeks stopka      (indeks i stopka od wersji 2)
+ * autorzy   := liczba:i32 napis*
+ * wezel     := znacznik:u8 dlugosc:i32 rekord[dlugosc]      (kolejnosc prefiksowa, dzieci po rodzicu)
+ * rekord    := autor:i32 tresc:napis pola-typu liczba-dzieci:i32 id:i64  (id od wersji 3)
+ * napis     := dlugosc:i32 bajty-UTF-8                      (dlugosc -1 oznacza null)
+ * indeks    := (pozycja:i64 rozmiar-poddrzewa:i32)*          (dla kazdego wezla w kolejnosci rekordow)
+ * stopka    := pozycja-indeksu:i64 liczba-wezlow:i32 INDEX_MAGIC
+ * </pre>
+ *
+ * Autor zapisywany jest jako indeks w tablicy autorow (-1 oznacza null). Pola typu:
+ * zadanie - termin jako milisekundy od epoki ({@link #NO_DATE} oznacza brak terminu),
+ * ankieta - dwie liczby i32, sugestia - napis z odpowiedzia i bajt akceptacji
+ * (-1 null, 0 nie, 1 tak). Rekord moze zawierac pola dopisane w kolejnych wersjach formatu -
+ * czytnik pomija nieznany nadmiar dzieki dlugosci rekordu.
+ *
+ * Indeks pozwala odczytac dowolny wezel bez czytania calego pliku (zob. {@link MappedForumFile}).
+ * Wezly numerowane sa kolejnoscia rekordow, wiec pierwszym dzieckiem wezla {@code i}
+ * jest {@code i + 1}, a kolejnym rodzenstwem wezla {@code c} - {@code c + rozmiar(c)}.
+ * Czytnik strumieniowy konczy prace na ostatnim rekordzie i indeks pomija.
+ */
+final class BinaryFormat {
+
+	static final byte[] MAGIC = { 'P', 'O', 'F', 'B' };
+
+	static final byte[] INDEX_MAGIC = { 'P', 'O', 'F', 'X' };
+
+	static final int VERSION = 3;
+
+	/**
+	 * Najstarsza wersja zawierajaca indeks wezlow.
+	 */
+	static final int INDEXED_VERSION = 2;
+
+	/**
+	 * Najstarsza wersja zawierajaca identyfikatory wezlow.
+	 */
+	static final int ID_VERSION = 3;
+
+	static final int INDEX_ENTRY_SIZE = Long.BYTES + Integer.BYTES;
+
+	static final int FOOTER_SIZE = Long.BYTES + Integer.BYTES + 4;
+
+	static final long NO_DATE = Long.MIN_VALUE;
+
+	static final int NULL_LENGTH = -1;
+
+	private BinaryFormat() {
+	}
+}
@@ -0,0 +1,152 @@
+package pl.edu.mimuw.forum.io;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.CancellationException;
+
+import pl.edu.mimuw.forum.data.Node;
+import pl.edu.mimuw.forum.exceptions.ApplicationException;
+
+/**
+ * Czyta forum zapisane w formacie binarnym (zob. {@link BinaryFormat}).
+ * Podobnie jak {@link ForumXmlReader} czyta plik strumieniowo i iteracyjnie.
+ */
+public class BinaryForumReader implements ForumReader {
+
+	/**
+	 * Co tyle wezlow sprawdzamy, czy watek czytajacy nie zostal przerwany.
+	 */
+	private static final int INTERRUPT_CHECK_INTERVAL = 1024;
+
+	/**
+	 * Wezel, ktorego nie wszystkie dzieci zostaly jeszcze przeczytane.
+	 */
+	private static class Frame {
+		final Node node;
+		int remainingChildren;
+
+		Frame(Node node, int remainingChildren) {
+			this.node = node;
+			this.remainingChildren = remainingChildren;
+		}
+	}
+
+	private final DataInputStream in;
+
+	private String[] authors;
+
+	private byte[] buffer = new byte[256];
+	private ByteBuffer record = ByteBuffer.wrap(buffer);
+
+	public BinaryForumReader(InputStream in) {
+		this.in = new DataInputStream(in);
+	}
+
+	@Override
+	public Node read(Listener listener) throws ApplicationException {
+		try {
+			return readForum(listener);
+		} catch (EOFException e) {
+			throw new ApplicationException("The forum file is truncated.", e);
+		} catch (IOException e) {
+			throw new ApplicationException("Cannot read the forum file.", e);
+		} catch (RuntimeException e) {
+			if (e instanceof CancellationException) {
+				throw e;
+			}
+			throw new ApplicationException("Malformed forum file.", e);
+		}
+	}
+
+	private Node readForum(Listener listener) throws IOException, ApplicationException {
+		readHeader(in);
+
+		authors = new String[in.readInt()];
+		for (int i = 0; i < authors.length; ++i) {
+			authors[i] = readString(in);
+		}
+
+		Frame rootFrame = readNode();
+		Node root = rootFrame.node;
+		if (listener != null && rootFrame.remainingChildren > 0) {
+			listener.rootStarted(root);
+		}
+
+		Deque<Frame> stack = new ArrayDeque<>();
+		stack.push(rootFrame);
+		int nodes = 0;
+
+		while (!stack.isEmpty()) {
+			Frame parent = stack.peek();
+			if (parent.remainingChildren == 0) {
+				stack.pop();
+				if (stack.size() == 1 && listener != null) {
+					listener.threadRead(parent.node);
+				}
+				continue;
+			}
+
+			if (++nodes % INTERRUPT_CHECK_INTERVAL == 0 && Thread.currentThread().isInterrupted()) {
+				throw new CancellationException("Reading the forum file was cancelled.");
+			}
+
+			parent.remainingChildren--;
+			Frame child = readNode();
+			if (stack.size() > 1 || listener == null) {
+				parent.node.addChild(child.node);
+			}
+			stack.push(child);
+		}
+
+		return root;
+	}
+
+	static void readHeader(DataInputStream in) throws IOException, ApplicationException {
+		byte[] magic = new byte[BinaryFormat.MAGIC.length];
+		in.readFully(magic);
+		if (!Arrays.equals(magic, BinaryFormat.MAGIC)) {
+			throw new ApplicationException("Not a binary forum file.");
+		}
+		int version = in.readUnsignedShort();
+		if (version > BinaryFormat.VERSION) {
+			throw new ApplicationException("Unsupported forum file version " + version + ".");
+		}
+	}
+
+	private Frame readNode() throws IOException, ApplicationException {
+		byte tag = in.readByte();
+		int length = in.readInt();
+		if (length < 0) {
+			throw new ApplicationException("Malformed forum file: negative record length.");
+		}
+		if (buffer.length < length) {
+			buffer = new byte[Math.max(length, buffer.length * 2)];
+			record = ByteBuffer.wrap(buffer);
+		}
+		in.readFully(buffer, 0, length);
+		record.clear();
+		record.limit(length);
+
+		Node node = BinaryRecords.decode(tag, record, authors);
+		Frame frame = new Frame(node, record.getInt());
+		BinaryRecords.decodeTrailer(node, record);
+		return frame;
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length == BinaryFormat.NULL_LENGTH) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,184 @@
+package pl.edu.mimuw.forum.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Deque;
+import java.util.Iterator;
+
+import pl.edu.mimuw.forum.data.AuthorRegistry;
+import pl.edu.mimuw.forum.data.Node;
+
+/**
+ * Zapisuje forum w formacie binarnym (zob. {@link BinaryFormat}).
+ */
+public class BinaryForumWriter {
+
+	/**
+	 * Wezel, ktorego poddrzewo jest w trakcie zapisu.
+	 */
+	private static class Frame<N> {
+		final int id;
+		final Iterator<? extends N> children;
+
+		Frame(int id, Iterator<? extends N> children) {
+			this.id = id;
+			this.children = children;
+		}
+	}
+
+	private final DataOutputStream out;
+
+	/**
+	 * Liczba zapisanych bajtow ({@link DataOutputStream#size()} przepelnia sie dla plikow powyzej 2 GB).
+	 */
+	private long written;
+
+	private int nodeCount;
+	private long[] offsets = new long[1024];
+	private int[] subtreeSizes = new int[1024];
+
+	private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+	private final DataOutputStream record = new DataOutputStream(recordBytes);
+
+	private final AuthorRegistry authors = new AuthorRegistry();
+
+	public BinaryForumWriter(OutputStream out) {
+		this.out = new DataOutputStream(new FilterOutputStream(out) {
+			@Override
+			public void write(int b) throws IOException {
+				out.write(b);
+				written++;
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				out.write(b, off, len);
+				written += len;
+			}
+		});
+	}
+
+	public void write(Node root) throws IOException {
+		write(root, DataNodes.INSTANCE);
+	}
+
+	/**
+	 * Zapisuje forum czytajac wezly bezposrednio z ich reprezentacji (np. modeli widoku).
+	 */
+	public <N> void write(N root, NodeAccessor<N> nodes) throws IOException {
+		collectAuthors(root, nodes);
+
+		out.write(BinaryFormat.MAGIC);
+		out.writeShort(BinaryFormat.VERSION);
+
+		out.writeInt(authors.size());
+		for (int i = 0; i < authors.size(); ++i) {
+			writeString(out, authors.nameOf(i));
+		}
+
+		writeNodes(root, nodes);
+		writeIndex();
+		out.flush();
+	}
+
+	/**
+	 * Zapisuje rekordy wezlow w kolejnosci prefiksowej, zapamietujac ich pozycje i rozmiary poddrzew.
+	 */
+	private <N> void writeNodes(N root, NodeAccessor<N> nodes) throws IOException {
+		Deque<Frame<N>> stack = new ArrayDeque<>();
+		stack.push(open(root, nodes));
+
+		while (!stack.isEmpty()) {
+			Frame<N> frame = stack.peek();
+			if (frame.children.hasNext()) {
+				stack.push(open(frame.children.next(), nodes));
+			} else {
+				stack.pop();
+				subtreeSizes[frame.id] = nodeCount - frame.id;
+			}
+		}
+	}
+
+	private <N> Frame<N> open(N node, NodeAccessor<N> nodes) throws IOException {
+		int id = nodeCount++;
+		if (id == offsets.length) {
+			offsets = Arrays.copyOf(offsets, id * 2);
+			subtreeSizes = Arrays.copyOf(subtreeSizes, id * 2);
+		}
+		offsets[id] = written;
+		writeNode(node, nodes);
+		return new Frame<>(id, nodes.children(node).iterator());
+	}
+
+	private void writeIndex() throws IOException {
+		long indexOffset = written;
+		for (int i = 0; i < nodeCount; ++i) {
+			out.writeLong(offsets[i]);
+			out.writeInt(subtreeSizes[i]);
+		}
+		out.writeLong(indexOffset);
+		out.writeInt(nodeCount);
+		out.write(BinaryFormat.INDEX_MAGIC);
+	}
+
+	private <N> void collectAuthors(N root, NodeAccessor<N> nodes) {
+		Deque<N> stack = new ArrayDeque<>();
+		stack.push(root);
+		while (!stack.isEmpty()) {
+			N node = stack.pop();
+			authors.idOf(nodes.author(node));
+			nodes.children(node).forEach(stack::push);
+		}
+	}
+
+	private <N> void writeNode(N node, NodeAccessor<N> nodes) throws IOException {
+		recordBytes.reset();
+
+		String author = nodes.author(node);
+		record.writeInt(author == null ? BinaryFormat.NULL_LENGTH : authors.find(author));
+		writeString(record, nodes.content(node));
+
+		byte tag = NodeTypes.tagFor(nodes.type(node));
+		switch (tag) {
+		case NodeTypes.TASK:
+			Date dueDate = nodes.dueDate(node);
+			record.writeLong(dueDate == null ? BinaryFormat.NO_DATE : dueDate.getTime());
+			break;
+		case NodeTypes.SURVEY:
+			record.writeInt(nodes.likes(node));
+			record.writeInt(nodes.dislikes(node));
+			break;
+		case NodeTypes.SUGGESTION:
+			writeString(record, nodes.response(node));
+			Boolean accepted = nodes.isResponseAccepted(node);
+			record.writeByte(accepted == null ? -1 : accepted ? 1 : 0);
+			break;
+		default:
+			break;
+		}
+
+		record.writeInt(nodes.children(node).size());
+		record.writeLong(nodes.id(node));
+
+		out.writeByte(tag);
+		out.writeInt(recordBytes.size());
+		recordBytes.writeTo(out);
+	}
+
+	private static void writeString(DataOutputStream out, String text) throws IOException {
+		if (text == null) {
+			out.writeInt(BinaryFormat.NULL_LENGTH);
+		} else {
+			byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package pl.edu.mimuw.forum.io;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+import pl.edu.mimuw.forum.data.Comment;
+import pl.edu.mimuw.forum.data.Node;
+import pl.edu.mimuw.forum.data.NodeIds;
+import pl.edu.mimuw.forum.data.Suggestion;
+import pl.edu.mimuw.forum.data.Survey;
+import pl.edu.mimuw.forum.data.Task;
+import pl.edu.mimuw.forum.exceptions.ApplicationException;
+
+/**
+ * Dekodowanie rekordow wezlow formatu binarnego (zob. {@link BinaryFormat}).
+ */
+final class BinaryRecords {
+
+	private BinaryRecords() {
+	}
+
+	/**
+	 * Tworzy wezel (bez dzieci) z rekordu. Po powrocie bufor ustawiony jest na liczbie dzieci.
+	 *
+	 * @param record bufor z tablica ({@link ByteBuffer#hasArray()}) ustawiony na poczatku rekordu
+	 */
+	static Node decode(byte tag, ByteBuffer record, String[] authors) throws ApplicationException {
+		int authorId = record.getInt();
+		String author = authorId == BinaryFormat.NULL_LENGTH ? null : authors[authorId];
+		String content = readString(record);
+
+		switch (tag) {
+		case NodeTypes.NODE:
+			return new Node(content, author);
+		case NodeTypes.COMMENT:
+			return new Comment(content, author);
+		case NodeTypes.TASK:
+			long dueDate = record.getLong();
+			return new Task(dueDate == BinaryFormat.NO_DATE ? null : new Date(dueDate), content, author);
+		case NodeTypes.SURVEY:
+			int likes = record.getInt();
+			return new Survey(content, author, likes, record.getInt());
+		case NodeTypes.SUGGESTION:
+			Suggestion suggestion = new Suggestion(content, author, readString(record));
+			byte accepted = record.get();
+			suggestion.setIsResponseAccepted(accepted == -1 ? null : accepted == 1);
+			return suggestion;
+		default:
+			throw new ApplicationException("Malformed forum file: unknown node type " + tag + ".");
+		}
+	}
+
+	/**
+	 * Czyta pola dopisane do rekordu po liczbie dzieci (zob. {@link BinaryFormat}). Rekordy starszych
+	 * wersji formatu ich nie maja - wezel zachowuje wtedy nowy identyfikator.
+	 *
+	 * @param record bufor ustawiony za liczba dzieci
+	 */
+	static void decodeTrailer(Node node, ByteBuffer record) throws ApplicationException {
+		if (record.remaining() >= Long.BYTES) {
+			long id = record.getLong();
+			if (!NodeIds.isValid(id)) {
+				throw new ApplicationException("Malformed forum file: node id " + id + " is out of range.");
+			}
+			node.setId(id);
+		}
+	}
+
+	private static String readString(ByteBuffer record) {
+		int length = record.getInt();
+		if (length == BinaryFormat.NULL_LENGTH) {
+			return null;
+		}
+		String text = new String(record.array(), record.arrayOffset() + record.position(), length,
+				StandardCharsets.UTF_8);
+		record.position(record.position() + length);
+		return text;
+	}
+}
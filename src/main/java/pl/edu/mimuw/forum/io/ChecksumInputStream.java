@@ -0,0 +1,91 @@
+package pl.edu.mimuw.forum.io;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+
+import pl.edu.mimuw.forum.exceptions.ApplicationException;
+
+/**
+ * Strumien weryfikujacy sume kontrolna zapisana przez {@link ChecksumOutputStream}
+ * w trakcie zwyklego czytania pliku. Ostatnie {@link ChecksumTrailer#LENGTH} bajtow
+ * sa wstrzymywane przed wliczeniem do sumy, bo moga okazac sie suma kontrolna -
+ * wiadomo to dopiero po dojsciu do konca strumienia.
+ */
+public class ChecksumInputStream extends FilterInputStream {
+
+	private final CRC32 crc = new CRC32();
+	private final byte[] tail = new byte[ChecksumTrailer.LENGTH];
+	private int tailLength;
+
+	public ChecksumInputStream(InputStream in) {
+		super(in);
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int n = in.read(b, off, len);
+		if (n > 0) {
+			consume(b, off, n);
+		}
+		return n;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		byte[] buffer = new byte[(int) Math.min(n, 8192)];
+		int read = read(buffer, 0, buffer.length);
+		return Math.max(read, 0);
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	/**
+	 * Doczytuje strumien do konca i sprawdza sume kontrolna.
+	 *
+	 * @return suma kontrolna pliku lub -1, gdy plik jej nie zawiera (np. zostal zapisany starsza wersja)
+	 * @throws ApplicationException gdy suma kontrolna nie zgadza sie z zawartoscia pliku
+	 */
+	public long verify() throws IOException, ApplicationException {
+		byte[] buffer = new byte[8192];
+		while (read(buffer, 0, buffer.length) != -1) {
+			// doczytujemy dane za elementem glownym
+		}
+
+		long expected = ChecksumTrailer.parse(tail, tailLength);
+		if (expected == -1) {
+			return -1;
+		}
+		if (expected != crc.getValue()) {
+			throw new ApplicationException("The forum file is corrupted (checksum mismatch).");
+		}
+		return expected;
+	}
+
+	private void consume(byte[] b, int off, int n) {
+		int total = tailLength + n;
+		int evicted = Math.max(0, total - tail.length);
+
+		// najstarsze bajty (najpierw z bufora, potem z nowego fragmentu) wliczamy do sumy
+		int fromTail = Math.min(evicted, tailLength);
+		crc.update(tail, 0, fromTail);
+		crc.update(b, off, evicted - fromTail);
+
+		// w buforze zostaje ostatnie tail.length bajtow
+		int keptFromTail = tailLength - fromTail;
+		System.arraycopy(tail, fromTail, tail, 0, keptFromTail);
+		int keptFromChunk = Math.min(n, tail.length - keptFromTail);
+		System.arraycopy(b, off + n - keptFromChunk, tail, keptFromTail, keptFromChunk);
+		tailLength = keptFromTail + keptFromChunk;
+	}
+}
@@ -0,0 +1,44 @@
+package pl.edu.mimuw.forum.io;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+
+/**
+ * Strumien liczacy sume kontrolna zapisywanych danych i dopisujacy ja na koncu
+ * (zob. {@link ChecksumTrailer}).
+ */
+public class ChecksumOutputStream extends FilterOutputStream {
+
+	private final CRC32 crc = new CRC32();
+
+	public ChecksumOutputStream(OutputStream out) {
+		super(out);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		out.write(b);
+		crc.update(b);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		out.write(b, off, len);
+		crc.update(b, off, len);
+	}
+
+	/**
+	 * Dopisuje sume kontrolna dotychczas zapisanych danych. Po wywolaniu tej metody
+	 * nie nalezy juz niczego zapisywac do strumienia.
+	 *
+	 * @return zapisana suma kontrolna
+	 */
+	public long writeTrailer() throws IOException {
+		long checksum = crc.getValue();
+		out.write(ChecksumTrailer.format(checksum));
+		out.flush();
+		return checksum;
+	}
+}
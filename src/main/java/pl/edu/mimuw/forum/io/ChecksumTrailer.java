@@ -0,0 +1,47 @@
+package pl.edu.mimuw.forum.io;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Format sumy kontrolnej dopisywanej na koncu pliku forum. Suma zapisywana jest
+ * w komentarzu XML po elemencie glownym, wiec plik XML pozostaje poprawnym dokumentem
+ * czytelnym rowniez dla starszych wersji programu. Czytnik formatu binarnego konczy
+ * czytanie na ostatnim rekordzie, wiec ten sam zapis sluzy obu formatom. W plikach
+ * skompresowanych suma obejmuje skompresowane dane i wystepuje po strumieniu gzip,
+ * ktory dekompresor konczy na ostatnim bloku.
+ */
+final class ChecksumTrailer {
+
+	private static final String PREFIX = "\n<!--crc32:";
+	private static final String SUFFIX = "-->";
+	private static final int DIGITS = 8;
+
+	static final int LENGTH = PREFIX.length() + DIGITS + SUFFIX.length();
+
+	private ChecksumTrailer() {
+	}
+
+	static byte[] format(long checksum) {
+		return String.format("%s%08x%s", PREFIX, checksum, SUFFIX).getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Odczytuje sume kontrolna z ostatnich {@link #LENGTH} bajtow pliku.
+	 *
+	 * @return suma kontrolna lub -1, gdy plik nie konczy sie suma kontrolna
+	 */
+	static long parse(byte[] tail, int length) {
+		if (length != LENGTH) {
+			return -1;
+		}
+		String text = new String(tail, 0, length, StandardCharsets.US_ASCII);
+		if (!text.startsWith(PREFIX) || !text.endsWith(SUFFIX)) {
+			return -1;
+		}
+		try {
+			return Long.parseLong(text.substring(PREFIX.length(), PREFIX.length() + DIGITS), 16);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+}
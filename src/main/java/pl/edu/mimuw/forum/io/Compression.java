@@ -0,0 +1,63 @@
+package pl.edu.mimuw.forum.io;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Kompresja pliku forum rozpoznawana na podstawie jego poczatku. Dane rozpakowywane sa strumieniowo -
+ * caly rozpakowany dokument nigdy nie jest przechowywany w pamieci.
+ */
+enum Compression {
+
+	NONE, GZIP, DEFLATE;
+
+	/**
+	 * Rozmiar buforow (de)kompresji - domyslne 512 bajtow powoduje wiele drobnych operacji na pliku.
+	 */
+	static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final int GZIP_MAGIC = 0x1f8b;
+
+	/**
+	 * Rozpoznaje kompresje, nie przesuwajac pozycji w strumieniu. Poza gzip rozpoznawany jest
+	 * strumien deflate z naglowkiem zlib (RFC 1950).
+	 *
+	 * @param in strumien wspierajacy {@link InputStream#mark(int)}
+	 */
+	static Compression detect(InputStream in) throws IOException {
+		in.mark(2);
+		int first = in.read();
+		int second = in.read();
+		in.reset();
+		if (first == -1 || second == -1) {
+			return NONE;
+		}
+
+		int header = first << 8 | second;
+		if (header == GZIP_MAGIC) {
+			return GZIP;
+		}
+		// metoda 8 (deflate), okno do 32 KB, suma kontrolna naglowka podzielna przez 31
+		if ((first & 0x0f) == 8 && (first >> 4) <= 7 && header % 31 == 0) {
+			return DEFLATE;
+		}
+		return NONE;
+	}
+
+	/**
+	 * Strumien z rozpakowana zawartoscia (wspierajacy {@link InputStream#mark(int)}).
+	 */
+	InputStream decompress(InputStream in) throws IOException {
+		switch (this) {
+		case GZIP:
+			return new BufferedInputStream(new GZIPInputStream(in, BUFFER_SIZE), BUFFER_SIZE);
+		case DEFLATE:
+			return new BufferedInputStream(new InflaterInputStream(in), BUFFER_SIZE);
+		default:
+			return in;
+		}
+	}
+}
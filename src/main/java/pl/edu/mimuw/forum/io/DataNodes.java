@@ -0,0 +1,70 @@
+package pl.edu.mimuw.forum.io;
+
+import java.util.Date;
+import java.util.List;
+
+import pl.edu.mimuw.forum.data.Node;
+import pl.edu.mimuw.forum.data.Suggestion;
+import pl.edu.mimuw.forum.data.Survey;
+import pl.edu.mimuw.forum.data.Task;
+
+/**
+ * Dostep do pol drzewa {@link Node}.
+ */
+public final class DataNodes implements NodeAccessor<Node> {
+
+	public static final DataNodes INSTANCE = new DataNodes();
+
+	private DataNodes() {
+	}
+
+	@Override
+	public Class<? extends Node> type(Node node) {
+		return node.getClass();
+	}
+
+	@Override
+	public long id(Node node) {
+		return node.getId();
+	}
+
+	@Override
+	public String content(Node node) {
+		return node.getContent();
+	}
+
+	@Override
+	public String author(Node node) {
+		return node.getAuthor();
+	}
+
+	@Override
+	public List<? extends Node> children(Node node) {
+		return node.getChildren();
+	}
+
+	@Override
+	public Date dueDate(Node node) {
+		return ((Task) node).getDueDate();
+	}
+
+	@Override
+	public int likes(Node node) {
+		return ((Survey) node).getLikes();
+	}
+
+	@Override
+	public int dislikes(Node node) {
+		return ((Survey) node).getDislikes();
+	}
+
+	@Override
+	public String response(Node node) {
+		return ((Suggestion) node).getResponse();
+	}
+
+	@Override
+	public Boolean isResponseAccepted(Node node) {
+		return ((Suggestion) node).getIsResponseAccepted();
+	}
+}
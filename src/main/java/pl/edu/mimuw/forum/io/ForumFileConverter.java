@@ -0,0 +1,41 @@
+package pl.edu.mimuw.forum.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import pl.edu.mimuw.forum.data.Node;
+import pl.edu.mimuw.forum.exceptions.ApplicationException;
+
+/**
+ * Konwertuje pliki forum miedzy formatami. Format pliku wejsciowego rozpoznawany jest
+ * na podstawie zawartosci, a wyjsciowego - na podstawie rozszerzenia, np.
+ * <pre>
+ * java pl.edu.mimuw.forum.io.ForumFileConverter forum.xml forum.forum
+ * java pl.edu.mimuw.forum.io.ForumFileConverter forum.forum forum.xml
+ * </pre>
+ * Zmiany zapisane w dzienniku pliku wejsciowego (zob. {@link ForumJournal}) sa uwzgledniane.
+ */
+public class ForumFileConverter {
+
+	public static void convert(File source, File target) throws IOException, ApplicationException {
+		Node root = ForumFiles.read(new FileInputStream(source), null);
+		ForumJournal.open(source, ForumFiles.checksum(source), root);
+		long checksum = ForumFiles.write(target, root, true);
+		ForumJournal.create(target).reset(checksum);
+	}
+
+	public static void main(String[] args) {
+		if (args.length != 2) {
+			System.err.println("Usage: ForumFileConverter <source> <target>");
+			System.exit(2);
+		}
+
+		try {
+			convert(new File(args[0]), new File(args[1]));
+		} catch (IOException | ApplicationException e) {
+			System.err.println("Conversion failed: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+}
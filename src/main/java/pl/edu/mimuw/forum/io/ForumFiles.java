@@ -0,0 +1,81 @@
+package pl.edu.mimuw.forum.io;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+import pl.edu.mimuw.forum.data.Node;
+import pl.edu.mimuw.forum.exceptions.ApplicationException;
+
+/**
+ * Odczyt i zapis plikow forum: rozpoznanie formatu, suma kontrolna i bezpieczny zapis.
+ */
+public class ForumFiles {
+
+	private ForumFiles() {
+	}
+
+	/**
+	 * Czyta forum w dowolnym obslugiwanym formacie, rowniez skompresowane (zob. {@link Compression}),
+	 * sprawdzajac sume kontrolna (o ile plik ja zawiera).
+	 *
+	 * @param in surowa zawartosc pliku (zostanie zamknieta)
+	 * @param listener obserwator czytania lub {@code null}
+	 */
+	public static Node read(InputStream in, ForumReader.Listener listener) throws IOException, ApplicationException {
+		try (ChecksumInputStream checked = new ChecksumInputStream(in);
+				InputStream buffered = new BufferedInputStream(checked)) {
+			InputStream content = Compression.detect(buffered).decompress(buffered);
+			Node root = ForumFormat.detect(content).reader(content).read(listener);
+			checked.verify();
+			return root;
+		}
+	}
+
+	/**
+	 * Zapisuje forum w formacie wynikajacym z rozszerzenia pliku (zob. {@link ForumFormat#forFile(File)}).
+	 *
+	 * @param checksum czy dopisac sume kontrolna
+	 * @return suma kontrolna zapisanego pliku lub -1, gdy nie zostala dopisana
+	 */
+	public static long write(File file, Node root, boolean checksum) throws IOException {
+		return write(file, root, DataNodes.INSTANCE, checksum);
+	}
+
+	/**
+	 * Zapisuje forum czytajac wezly bezposrednio z ich reprezentacji (zob. {@link NodeAccessor}).
+	 * Drzewa nie wolno modyfikowac w trakcie zapisu.
+	 */
+	public static <N> long write(File file, N root, NodeAccessor<N> nodes, boolean checksum) throws IOException {
+		ForumFormat format = ForumFormat.forFile(file);
+		long[] written = { -1 };
+		AtomicFileWriter.write(file, out -> {
+			if (checksum) {
+				ChecksumOutputStream checked = new ChecksumOutputStream(out);
+				format.write(root, nodes, checked);
+				written[0] = checked.writeTrailer();
+			} else {
+				format.write(root, nodes, out);
+			}
+		});
+		return written[0];
+	}
+
+	/**
+	 * Suma kontrolna zapisana na koncu pliku (bez sprawdzania jej poprawnosci) lub -1,
+	 * gdy plik jej nie zawiera.
+	 */
+	public static long checksum(File file) throws IOException {
+		try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+			if (in.length() < ChecksumTrailer.LENGTH) {
+				return -1;
+			}
+			byte[] tail = new byte[ChecksumTrailer.LENGTH];
+			in.seek(in.length() - tail.length);
+			in.readFully(tail);
+			return ChecksumTrailer.parse(tail, tail.length);
+		}
+	}
+}
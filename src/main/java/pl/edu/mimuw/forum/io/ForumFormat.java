@@ -0,0 +1,107 @@
+package pl.edu.mimuw.forum.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+import pl.edu.mimuw.forum.data.Node;
+import pl.edu.mimuw.forum.exceptions.ApplicationException;
+
+/**
+ * Obslugiwane formaty plikow forum.
+ */
+public enum ForumFormat {
+
+	XML("XML file (*.xml)", "xml") {
+		@Override
+		public ForumReader reader(InputStream in) throws ApplicationException {
+			return new ForumXmlReader(in);
+		}
+
+		@Override
+		public <N> void write(N root, NodeAccessor<N> nodes, OutputStream out) throws IOException {
+			new ForumXmlWriter(out).write(root, nodes);
+		}
+	},
+
+	COMPRESSED_XML("Compressed XML file (*.xml.gz)", "xml.gz") {
+		@Override
+		public ForumReader reader(InputStream in) throws ApplicationException {
+			return new ForumXmlReader(in); // rozpakowanie zob. ForumFiles#read
+		}
+
+		@Override
+		public <N> void write(N root, NodeAccessor<N> nodes, OutputStream out) throws IOException {
+			GZIPOutputStream compressed = new GZIPOutputStream(out, Compression.BUFFER_SIZE);
+			new ForumXmlWriter(compressed).write(root, nodes);
+			compressed.finish();
+		}
+	},
+
+	BINARY("Binary forum file (*.forum)", "forum") {
+		@Override
+		public ForumReader reader(InputStream in) {
+			return new BinaryForumReader(in);
+		}
+
+		@Override
+		public <N> void write(N root, NodeAccessor<N> nodes, OutputStream out) throws IOException {
+			new BinaryForumWriter(out).write(root, nodes);
+		}
+	};
+
+	private final String description;
+	private final String extension;
+
+	private ForumFormat(String description, String extension) {
+		this.description = description;
+		this.extension = extension;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	public String getExtension() {
+		return extension;
+	}
+
+	public abstract ForumReader reader(InputStream in) throws ApplicationException;
+
+	public abstract <N> void write(N root, NodeAccessor<N> nodes, OutputStream out) throws IOException;
+
+	public void write(Node root, OutputStream out) throws IOException {
+		write(root, DataNodes.INSTANCE, out);
+	}
+
+	public boolean matches(File file) {
+		return file.getName().toLowerCase().endsWith("." + extension);
+	}
+
+	/**
+	 * Format, w ktorym nalezy zapisac podany plik (na podstawie rozszerzenia, domyslnie XML).
+	 */
+	public static ForumFormat forFile(File file) {
+		return Arrays.stream(values()).filter(format -> format.matches(file)).findFirst().orElse(XML);
+	}
+
+	/**
+	 * Rozpoznaje format (rozpakowanego) pliku na podstawie jego poczatku, nie przesuwajac pozycji w strumieniu.
+	 *
+	 * @param in strumien wspierajacy {@link InputStream#mark(int)}
+	 */
+	public static ForumFormat detect(InputStream in) throws IOException {
+		byte[] magic = new byte[BinaryFormat.MAGIC.length];
+		in.mark(magic.length);
+		int read = 0;
+		int n;
+		while (read < magic.length && (n = in.read(magic, read, magic.length - read)) != -1) {
+			read += n;
+		}
+		in.reset();
+		return Arrays.equals(magic, BinaryFormat.MAGIC) ? BINARY : XML;
+	}
+}
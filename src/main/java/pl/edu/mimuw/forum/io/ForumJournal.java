@@ -0,0 +1,476 @@
+package pl.edu.mimuw.forum.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Deque;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import pl.edu.mimuw.forum.data.LongMap;
+import pl.edu.mimuw.forum.data.Node;
+import pl.edu.mimuw.forum.data.Suggestion;
+import pl.edu.mimuw.forum.data.Survey;
+import pl.edu.mimuw.forum.data.Task;
+import pl.edu.mimuw.forum.exceptions.ApplicationException;
+
+/**
+ * Dziennik zmian forum - plik obok pliku forum ({@code <plik>.journal}), do ktorego zapis dopisuje
+ * jedynie zmiany wprowadzone od poprzedniego zapisu. Przy otwarciu pliku forum wpisy dziennika
+ * stosowane sa do wczytanego drzewa (zob. {@link #open}), a gdy dziennik urosnie, forum zapisywane
+ * jest w calosci i dziennik zaczyna sie od nowa (zob. {@link #needsCompaction()}).
+ *
+ * <pre>
+ * dziennik := MAGIC wersja:u16 suma-kontrolna-pliku:i64 wpis*
+ * wpis     := dlugosc:i32 crc32:i32 tresc[dlugosc]
+ * tresc    := ADD id-rodzica:i64 indeks:i32 dlugosc:i32 poddrzewo    (poddrzewo w formacie binarnym)
+ *           | REMOVE id:i64
+ *           | EDIT id:i64 pole:u8 wartosc
+ * </pre>
+ *
+ * Wezly wskazywane sa trwalymi identyfikatorami ({@link Node#getId()}). Dziennik innej wersji niz
+ * {@link #VERSION} (np. zapisany przez nowsza wersje programu) jest odrzucany - zastapienie go
+ * spowodowaloby utrate zapisanych w nim zmian.
+ *
+ * Dziennik zwiazany jest z plikiem forum jego suma kontrolna (zob. {@link ChecksumOutputStream}) -
+ * po zastapieniu pliku forum stary dziennik przestaje do niego pasowac i jest pomijany, wiec
+ * awaria miedzy zapisem pliku a wyczyszczeniem dziennika nie powoduje podwojnego zastosowania zmian.
+ * Niepelny ostatni wpis (awaria w trakcie dopisywania) rozpoznawany jest po sumie kontrolnej
+ * wpisu i odrzucany.
+ */
+public class ForumJournal {
+
+	/**
+	 * Pola wezla, ktorych zmiany zapisywane sa w dzienniku. Glosy w ankietach zapisywane sa
+	 * jako nowe wartosci licznikow.
+	 */
+	public enum Field {
+		CONTENT, AUTHOR, DUE_DATE, RESPONSE, RESPONSE_ACCEPTED, LIKES, DISLIKES
+	}
+
+	/**
+	 * Pojedyncza zmiana forum. Tresc wpisu kodowana jest przy jego tworzeniu, wiec wpis
+	 * odzwierciedla stan wezla z chwili zmiany.
+	 */
+	public static final class Entry {
+		private final byte operation;
+		private final long node;
+		private final Field field;
+		private final byte[] body;
+
+		private Entry(byte operation, long node, Field field, byte[] body) {
+			this.operation = operation;
+			this.node = node;
+			this.field = field;
+			this.body = body;
+		}
+
+		/**
+		 * Czy wpis czyni zbednym bezposrednio go poprzedzajacy (kolejna zmiana tego samego pola,
+		 * np. przy wpisywaniu tekstu).
+		 */
+		public boolean supersedes(Entry previous) {
+			return operation == EDIT && previous.operation == EDIT && field == previous.field
+					&& node == previous.node;
+		}
+	}
+
+	private static final String SUFFIX = ".journal";
+
+	private static final byte[] MAGIC = { 'P', 'O', 'F', 'J' };
+
+	private static final int VERSION = 2;
+
+	private static final int HEADER_SIZE = MAGIC.length + Short.BYTES + Long.BYTES;
+
+	private static final int ENTRY_HEADER_SIZE = Integer.BYTES + Integer.BYTES;
+
+	/**
+	 * Dziennik mniejszy niz ten rozmiar nigdy nie jest scalany z plikiem forum.
+	 */
+	private static final long MIN_COMPACTION_SIZE = 1 << 20;
+
+	/**
+	 * Dziennik scalany jest z plikiem forum, gdy przekroczy taka czesc jego rozmiaru - koszt
+	 * odtwarzania dziennika przy otwarciu pozostaje maly w porownaniu z czytaniem pliku.
+	 */
+	private static final int COMPACTION_RATIO = 8;
+
+	private static final byte ADD = 1;
+	private static final byte REMOVE = 2;
+	private static final byte EDIT = 3;
+
+	private final File base;
+	private final File file;
+
+	/**
+	 * Suma kontrolna pliku forum, do ktorego odnosi sie dziennik (-1, gdy plik jej nie zawiera).
+	 */
+	private long baseChecksum;
+
+	/**
+	 * Dlugosc poprawnej czesci pliku dziennika (0, gdy dziennik nie zostal jeszcze zalozony).
+	 */
+	private long length;
+
+	private ForumJournal(File base, long baseChecksum, long length) {
+		this.base = base;
+		this.file = fileFor(base);
+		this.baseChecksum = baseChecksum;
+		this.length = length;
+	}
+
+	public static File fileFor(File base) {
+		return new File(base.getPath() + SUFFIX);
+	}
+
+	/**
+	 * Czy obok pliku forum istnieje niepusty dziennik (nie sprawdza, czy dziennik pasuje do pliku).
+	 */
+	public static boolean hasEntries(File base) {
+		return fileFor(base).length() > HEADER_SIZE;
+	}
+
+	/**
+	 * Stosuje do wczytanego forum wpisy dziennika, o ile dziennik istnieje i pasuje do pliku forum.
+	 *
+	 * @param baseChecksum suma kontrolna pliku forum (zob. {@link ForumFiles#checksum(File)})
+	 * @param root korzen forum wczytanego z pliku
+	 * @return dziennik, do ktorego mozna dopisywac kolejne zmiany, lub {@code null}, gdy plik forum
+	 *         nie zawiera sumy kontrolnej (nie da sie wtedy powiazac z nim dziennika)
+	 */
+	public static ForumJournal open(File base, long baseChecksum, Node root) throws IOException, ApplicationException {
+		if (baseChecksum == -1) {
+			return null;
+		}
+
+		File file = fileFor(base);
+		if (!file.exists()) {
+			return new ForumJournal(base, baseChecksum, 0);
+		}
+
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		ByteBuffer journal = ByteBuffer.wrap(bytes);
+		if (!matches(journal, baseChecksum)) {
+			return new ForumJournal(base, baseChecksum, 0); // dziennik nieaktualnego pliku - zostanie zastapiony
+		}
+		Index nodes = null;
+
+		CRC32 crc = new CRC32();
+		while (journal.remaining() >= ENTRY_HEADER_SIZE) {
+			int start = journal.position();
+			int bodyLength = journal.getInt();
+			int expected = journal.getInt();
+			if (bodyLength < 0 || bodyLength > journal.remaining()) {
+				journal.position(start);
+				break;
+			}
+			crc.reset();
+			crc.update(bytes, journal.position(), bodyLength);
+			if ((int) crc.getValue() != expected) {
+				journal.position(start);
+				break;
+			}
+			if (nodes == null) {
+				nodes = new Index(root);
+			}
+			apply(new DataInputStream(new ByteArrayInputStream(bytes, journal.position(), bodyLength)), nodes);
+			journal.position(journal.position() + bodyLength);
+		}
+
+		return new ForumJournal(base, baseChecksum, journal.position());
+	}
+
+	/**
+	 * Tworzy pusty dziennik dla pliku forum, ktory dopiero zostanie zapisany w calosci.
+	 * Przed pierwszym dopisaniem nalezy wywolac {@link #reset(long)}.
+	 */
+	public static ForumJournal create(File base) {
+		return new ForumJournal(base, -1, 0);
+	}
+
+	/**
+	 * @param subtree dodany wezel (wraz z poddrzewem), czytany przez {@code nodes}
+	 */
+	public static <N> Entry added(long parent, int index, N subtree, NodeAccessor<N> nodes) {
+		return entry(ADD, parent, null, body -> {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			new BinaryForumWriter(bytes).write(subtree, nodes);
+			body.writeInt(index);
+			body.writeInt(bytes.size());
+			bytes.writeTo(body);
+		});
+	}
+
+	public static Entry removed(long node) {
+		return entry(REMOVE, node, null, body -> {
+		});
+	}
+
+	/**
+	 * @param value nowa wartosc pola: {@link String}, {@link Date} (termin zadania),
+	 *            {@link Boolean} (akceptacja odpowiedzi) lub {@link Integer} (liczba glosow)
+	 */
+	public static Entry edited(long node, Field field, Object value) {
+		return entry(EDIT, node, field, body -> {
+			body.writeByte(field.ordinal());
+			switch (field) {
+			case DUE_DATE:
+				body.writeLong(value == null ? BinaryFormat.NO_DATE : ((Date) value).getTime());
+				break;
+			case RESPONSE_ACCEPTED:
+				body.writeByte(value == null ? -1 : (Boolean) value ? 1 : 0);
+				break;
+			case LIKES:
+			case DISLIKES:
+				body.writeInt((Integer) value);
+				break;
+			default:
+				writeString(body, (String) value);
+			}
+		});
+	}
+
+	public File getBaseFile() {
+		return base;
+	}
+
+	public synchronized long length() {
+		return length;
+	}
+
+	/**
+	 * Czy dziennik urosl na tyle, ze nalezy zapisac forum w calosci.
+	 */
+	public synchronized boolean needsCompaction() {
+		return length > Math.max(MIN_COMPACTION_SIZE, base.length() / COMPACTION_RATIO);
+	}
+
+	/**
+	 * Oproznia dziennik po zapisaniu calego forum do pliku.
+	 *
+	 * @param baseChecksum suma kontrolna nowo zapisanego pliku forum
+	 */
+	public synchronized void reset(long baseChecksum) throws IOException {
+		Files.deleteIfExists(file.toPath());
+		this.baseChecksum = baseChecksum;
+		length = 0;
+	}
+
+	/**
+	 * Dopisuje wpisy do dziennika i utrwala je na dysku.
+	 */
+	public synchronized void append(List<Entry> entries) throws IOException {
+		if (baseChecksum == -1) {
+			throw new IOException("The forum file has no checksum to bind the journal to.");
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		if (length == 0) {
+			out.write(MAGIC);
+			out.writeShort(VERSION);
+			out.writeLong(baseChecksum);
+		}
+		CRC32 crc = new CRC32();
+		for (Entry entry : entries) {
+			crc.reset();
+			crc.update(entry.body);
+			out.writeInt(entry.body.length);
+			out.writeInt((int) crc.getValue());
+			out.write(entry.body);
+		}
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE)) {
+			channel.truncate(length); // odrzucamy ewentualny niepelny wpis
+			ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+			long position = length;
+			while (buffer.hasRemaining()) {
+				position += channel.write(buffer, position);
+			}
+			channel.force(false);
+			length = position;
+		}
+	}
+
+	/**
+	 * Czy plik jest dziennikiem tego pliku forum.
+	 *
+	 * @throws ApplicationException gdy dziennik ma nieznana wersje
+	 */
+	private static boolean matches(ByteBuffer journal, long baseChecksum) throws ApplicationException {
+		if (journal.remaining() < HEADER_SIZE) {
+			return false;
+		}
+		byte[] magic = new byte[MAGIC.length];
+		journal.get(magic);
+		if (!Arrays.equals(magic, MAGIC)) {
+			return false;
+		}
+		int version = journal.getShort() & 0xffff;
+		if (version != VERSION) {
+			throw new ApplicationException("Unsupported forum journal version " + version + ".");
+		}
+		return journal.getLong() == baseChecksum;
+	}
+
+	private static void apply(DataInputStream body, Index nodes) throws IOException, ApplicationException {
+		try {
+			byte operation = body.readByte();
+			long id = body.readLong();
+			Node node = nodes.nodes.get(id);
+			if (node == null) {
+				throw new ApplicationException("The forum journal does not match the forum file.");
+			}
+
+			switch (operation) {
+			case ADD:
+				int index = body.readInt();
+				byte[] bytes = new byte[body.readInt()];
+				body.readFully(bytes);
+				Node subtree = new BinaryForumReader(new ByteArrayInputStream(bytes)).read();
+				node.addChild(index, subtree);
+				nodes.add(subtree, node);
+				break;
+			case REMOVE:
+				Node parent = nodes.parents.get(id);
+				if (parent == null) {
+					throw new ApplicationException("The forum journal does not match the forum file.");
+				}
+				parent.removeChild(node);
+				nodes.remove(node);
+				break;
+			case EDIT:
+				edit(node, Field.values()[body.readByte()], body);
+				break;
+			default:
+				throw new ApplicationException("Malformed forum journal: unknown operation " + operation + ".");
+			}
+		} catch (EOFException | IndexOutOfBoundsException | ClassCastException e) {
+			throw new ApplicationException("The forum journal does not match the forum file.", e);
+		}
+	}
+
+	private static void edit(Node node, Field field, DataInputStream value) throws IOException {
+		switch (field) {
+		case CONTENT:
+			node.setContent(readString(value));
+			break;
+		case AUTHOR:
+			node.setAuthor(readString(value));
+			break;
+		case DUE_DATE:
+			long dueDate = value.readLong();
+			((Task) node).setDueDate(dueDate == BinaryFormat.NO_DATE ? null : new Date(dueDate));
+			break;
+		case RESPONSE:
+			Suggestion suggestion = (Suggestion) node;
+			Boolean accepted = suggestion.getIsResponseAccepted();
+			suggestion.setResponse(readString(value));
+			suggestion.setIsResponseAccepted(accepted); // akceptacja zapisywana jest osobnym wpisem
+			break;
+		case RESPONSE_ACCEPTED:
+			byte flag = value.readByte();
+			((Suggestion) node).setIsResponseAccepted(flag == -1 ? null : flag == 1);
+			break;
+		case LIKES:
+			((Survey) node).setLikes(value.readInt());
+			break;
+		case DISLIKES:
+			((Survey) node).setDislikes(value.readInt());
+			break;
+		}
+	}
+
+	/**
+	 * Wezly wczytanego forum i ich rodzice wedlug identyfikatorow, uaktualniane przy stosowaniu wpisow.
+	 */
+	private static final class Index {
+		final LongMap<Node> nodes = new LongMap<>();
+		final LongMap<Node> parents = new LongMap<>();
+
+		Index(Node root) {
+			add(root, null);
+		}
+
+		void add(Node subtree, Node parent) {
+			Deque<Node> stack = new ArrayDeque<>();
+			nodes.put(subtree.getId(), subtree);
+			if (parent != null) {
+				parents.put(subtree.getId(), parent);
+			}
+			stack.push(subtree);
+			while (!stack.isEmpty()) {
+				Node node = stack.pop();
+				for (Node child : node.getChildren()) {
+					nodes.put(child.getId(), child);
+					parents.put(child.getId(), node);
+					stack.push(child);
+				}
+			}
+		}
+
+		void remove(Node subtree) {
+			Deque<Node> stack = new ArrayDeque<>();
+			stack.push(subtree);
+			while (!stack.isEmpty()) {
+				Node node = stack.pop();
+				nodes.remove(node.getId());
+				parents.remove(node.getId());
+				node.getChildren().forEach(stack::push);
+			}
+		}
+	}
+
+	@FunctionalInterface
+	private interface BodyWriter {
+		void write(DataOutputStream body) throws IOException;
+	}
+
+	private static Entry entry(byte operation, long node, Field field, BodyWriter writer) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream body = new DataOutputStream(bytes);
+		try {
+			body.writeByte(operation);
+			body.writeLong(node);
+			writer.write(body);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e); // zapis do pamieci nie zglasza bledow
+		}
+		return new Entry(operation, node, field, bytes.toByteArray());
+	}
+
+	private static void writeString(DataOutputStream out, String text) throws IOException {
+		if (text == null) {
+			out.writeInt(BinaryFormat.NULL_LENGTH);
+		} else {
+			byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length == BinaryFormat.NULL_LENGTH) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,50 @@
+package pl.edu.mimuw.forum.io;
+
+import pl.edu.mimuw.forum.data.Node;
+import pl.edu.mimuw.forum.exceptions.ApplicationException;
+
+/**
+ * Czytnik pliku forum w jednym z formatow {@link ForumFormat}.
+ */
+public interface ForumReader {
+
+	/**
+	 * Obserwator czytania dokumentu, pozwalajacy wyswietlac forum zanim caly plik zostanie przeczytany.
+	 * Metody wywolywane sa w watku czytajacym plik.
+	 */
+	interface Listener {
+		/**
+		 * Wywolywana, gdy znana jest tresc i autor korzenia (przed jego pierwszym dzieckiem).
+		 * Przekazany wezel moze byc tymczasowy - pola zapisywane po dzieciach (np. termin zadania w XML)
+		 * moga byc jeszcze nieustawione, kompletny korzen zwraca {@link ForumReader#read(Listener)}.
+		 */
+		void rootStarted(Node root);
+
+		/**
+		 * Wywolywana dla kazdego kompletnie przeczytanego watku najwyzszego poziomu (dziecka korzenia).
+		 * Takie watki nie sa dodawane do korzenia zwracanego przez {@link ForumReader#read(Listener)}.
+		 */
+		void threadRead(Node thread);
+	}
+
+	/**
+	 * Czyta caly dokument i zwraca korzen forum.
+	 *
+	 * @return korzen forum
+	 * @throws ApplicationException gdy plik nie jest poprawnym zapisem forum
+	 */
+	default Node read() throws ApplicationException {
+		return read(null);
+	}
+
+	/**
+	 * Czyta caly dokument, przekazujac watki najwyzszego poziomu obserwatorowi od razu po ich przeczytaniu.
+	 * Przerwanie watku czytajacego ({@link Thread#interrupt()}) konczy czytanie wyjatkiem
+	 * {@link java.util.concurrent.CancellationException}.
+	 *
+	 * @param listener obserwator lub {@code null}
+	 * @return korzen forum (bez watkow przekazanych obserwatorowi)
+	 * @throws ApplicationException gdy plik nie jest poprawnym zapisem forum
+	 */
+	Node read(Listener listener) throws ApplicationException;
+}
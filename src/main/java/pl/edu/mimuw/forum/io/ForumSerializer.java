@@ -0,0 +1,93 @@
+package pl.edu.mimuw.forum.io;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.thoughtworks.xstream.XStreamException;
+import com.thoughtworks.xstream.io.HierarchicalStreamDriver;
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+import com.thoughtworks.xstream.io.xml.XppDriver;
+
+import pl.edu.mimuw.forum.data.Comment;
+import pl.edu.mimuw.forum.data.Node;
+import pl.edu.mimuw.forum.data.Suggestion;
+import pl.edu.mimuw.forum.data.Survey;
+import pl.edu.mimuw.forum.data.Task;
+
+/**
+ * Wspolne, tworzone raz konwertery do zapisu forum w formacie XML. Konwertery nie maja stanu,
+ * wiec moga z nich korzystac rownoczesnie zapisy z wielu watkow, a kolejne zapisy nie powtarzaja
+ * konfiguracji.
+ *
+ * Wezly zapisywane sa konwerterami znajacymi ich pola (zob. {@link NodeConverter}) zamiast
+ * konwertera refleksyjnego XStream - format pliku pozostaje bez zmian. Zapis odbywa sie
+ * bezposrednio pisarzem sterownika XStream, dzieki czemu moze czytac wezly z dowolnej
+ * reprezentacji drzewa (zob. {@link NodeAccessor}). Pliki czyta {@link ForumXmlReader}.
+ */
+public final class ForumSerializer {
+
+	/**
+	 * Sterownik XStream tworzacy pisarza przy zapisie (zob. {@link #toXML(Object, NodeAccessor, Writer)}).
+	 */
+	private static final HierarchicalStreamDriver DRIVER = new XppDriver();
+
+	/**
+	 * Konwertery wszystkich typow wezlow.
+	 */
+	private static final Map<Class<?>, NodeConverter> CONVERTERS = createConverters();
+
+	private ForumSerializer() {
+	}
+
+	/**
+	 * Wymusza utworzenie konwerterow (np. w tle przy starcie programu), tak by pierwszy zapis
+	 * nie ponosil kosztu ladowania klas.
+	 */
+	public static void prepare() {
+		// konfiguracja odbywa sie przy ladowaniu klasy
+	}
+
+	public static void toXML(Node root, Writer out) throws IOException {
+		toXML(root, DataNodes.INSTANCE, out);
+	}
+
+	/**
+	 * Zapisuje forum czytajac wezly bezposrednio z ich reprezentacji (np. modeli widoku),
+	 * bez tworzenia posredniego drzewa {@link Node}.
+	 */
+	public static <N> void toXML(N root, NodeAccessor<N> nodes, Writer out) throws IOException {
+		HierarchicalStreamWriter writer = DRIVER.createWriter(out);
+		try {
+			Class<? extends Node> type = nodes.type(root);
+			writer.startNode(ForumXmlReader.ROOT);
+			writer.startNode(NodeTypes.elementFor(type));
+			converterFor(type).writeTree(root, nodes, writer);
+			writer.endNode();
+			writer.endNode();
+			writer.flush();
+		} catch (XStreamException e) {
+			throw new IOException("Cannot serialize the forum.", e);
+		}
+	}
+
+	private static Map<Class<?>, NodeConverter> createConverters() {
+		Map<Class<?>, NodeConverter> converters = new HashMap<>();
+		converters.put(Node.class, new NodeConverter(converters));
+		converters.put(Comment.class, new NodeConverter(converters));
+		converters.put(Task.class, new TaskConverter(converters));
+		converters.put(Survey.class, new SurveyConverter(converters));
+		converters.put(Suggestion.class, new SuggestionConverter(converters));
+		return Collections.unmodifiableMap(converters);
+	}
+
+	private static NodeConverter converterFor(Class<? extends Node> type) throws IOException {
+		NodeConverter converter = CONVERTERS.get(type);
+		if (converter == null) {
+			throw new IOException("Unsupported node type: " + type.getName());
+		}
+		return converter;
+	}
+}
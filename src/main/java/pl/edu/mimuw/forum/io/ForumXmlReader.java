@@ -0,0 +1,159 @@
+package pl.edu.mimuw.forum.io;
+
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CancellationException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.thoughtworks.xstream.converters.basic.DateConverter;
+
+import pl.edu.mimuw.forum.data.AuthorRegistry;
+import pl.edu.mimuw.forum.data.Node;
+import pl.edu.mimuw.forum.exceptions.ApplicationException;
+
+/**
+ * Strumieniowy (StAX) czytnik plikow forum w formacie zapisywanym przez XStream.
+ * Wezly {@link pl.edu.mimuw.forum.data.Node} tworzone sa w trakcie czytania pliku,
+ * bez budowania posredniej reprezentacji calego dokumentu. Pamiec pomocnicza jest
+ * proporcjonalna do glebokosci drzewa (stos otwartych elementow), a nie do rozmiaru pliku.
+ *
+ * Drzewo przetwarzane jest iteracyjnie, wiec bardzo glebokie watki nie wyczerpia stosu wywolan.
+ */
+public class ForumXmlReader implements ForumReader {
+
+	static final String ROOT = "Forum";
+
+	static final String ID = "id";
+	static final String CONTENT = "content";
+	static final String AUTHOR = "author";
+	static final String DUE_DATE = "dueDate";
+	static final String LIKES = "likes";
+	static final String DISLIKES = "dislikes";
+	static final String RESPONSE = "response";
+	static final String IS_RESPONSE_ACCEPTED = "isResponseAccepted";
+
+	/**
+	 * Konwerter dat uzywany przy zapisie i odczycie (zob. {@link ForumSerializer}) - ten sam format,
+	 * w ktorym daty zapisywal domyslny konwerter XStream.
+	 */
+	static final DateConverter DATE_CONVERTER = new DateConverter();
+
+	private static final XMLInputFactory FACTORY = createFactory();
+
+	/**
+	 * Co tyle elementow sprawdzamy, czy watek czytajacy nie zostal przerwany.
+	 */
+	private static final int INTERRUPT_CHECK_INTERVAL = 1024;
+
+	private final XMLStreamReader reader;
+
+	/**
+	 * Wspolne instancje nazw autorow - parser tworzy nowy napis dla kazdego elementu.
+	 */
+	private final AuthorRegistry authors = new AuthorRegistry();
+
+	public ForumXmlReader(InputStream in) throws ApplicationException {
+		try {
+			reader = FACTORY.createXMLStreamReader(in);
+		} catch (XMLStreamException e) {
+			throw new ApplicationException("Cannot read the forum file.", e);
+		}
+	}
+
+	@Override
+	public Node read(Listener listener) throws ApplicationException {
+		try {
+			try {
+				return readForum(listener);
+			} finally {
+				reader.close();
+			}
+		} catch (XMLStreamException e) {
+			throw new ApplicationException("Malformed forum file.", e);
+		}
+	}
+
+	private Node readForum(Listener listener) throws XMLStreamException, ApplicationException {
+		reader.nextTag();
+		if (!ROOT.equals(reader.getLocalName())) {
+			throw new ApplicationException("Not a forum file: unexpected element <" + reader.getLocalName() + ">.");
+		}
+
+		Node root = null;
+		boolean rootAnnounced = false;
+		Deque<NodeBuilder> stack = new ArrayDeque<>();
+		int elements = 0;
+
+		while (reader.hasNext()) {
+			int event = reader.next();
+
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				if (++elements % INTERRUPT_CHECK_INTERVAL == 0 && Thread.currentThread().isInterrupted()) {
+					throw new CancellationException("Reading the forum file was cancelled.");
+				}
+
+				String name = reader.getLocalName();
+				Class<? extends Node> type = NodeTypes.forElement(name);
+				if (type != null) {
+					if (stack.isEmpty() && root != null) {
+						throw new ApplicationException("Can't have more than one root node.");
+					}
+					if (stack.size() == 1 && listener != null && !rootAnnounced) {
+						listener.rootStarted(stack.peek().build());
+						rootAnnounced = true;
+					}
+					stack.push(new NodeBuilder(type));
+				} else if (stack.isEmpty()) {
+					skipElement();
+				} else if (NodeBuilder.isField(name)) {
+					String text = reader.getElementText();
+					stack.peek().setField(name, AUTHOR.equals(name) ? authors.intern(text) : text);
+				} else {
+					skipElement(); // pola nieznane tej wersji programu pomijamy
+				}
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				if (stack.isEmpty()) {
+					break; // </Forum>
+				}
+				Node node = stack.pop().build();
+				if (stack.isEmpty()) {
+					root = node;
+				} else if (stack.size() == 1 && listener != null) {
+					listener.threadRead(node);
+				} else {
+					stack.peek().children.add(node);
+				}
+			}
+		}
+
+		if (root == null) {
+			throw new ApplicationException("The forum file contains no nodes.");
+		}
+		return root;
+	}
+
+	private void skipElement() throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+	}
+
+	private static XMLInputFactory createFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		return factory;
+	}
+}
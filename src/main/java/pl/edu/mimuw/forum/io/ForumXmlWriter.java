@@ -0,0 +1,30 @@
+package pl.edu.mimuw.forum.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import pl.edu.mimuw.forum.data.Node;
+
+/**
+ * Zapisuje forum w formacie XML (zob. {@link ForumSerializer}).
+ */
+public class ForumXmlWriter {
+
+	private final Writer out;
+
+	public ForumXmlWriter(OutputStream out) {
+		this.out = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+	}
+
+	public void write(Node root) throws IOException {
+		write(root, DataNodes.INSTANCE);
+	}
+
+	public <N> void write(N root, NodeAccessor<N> nodes) throws IOException {
+		ForumSerializer.toXML(root, nodes, out);
+		out.flush();
+	}
+}
@@ -0,0 +1,345 @@
+package pl.edu.mimuw.forum.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import pl.edu.mimuw.forum.data.Node;
+import pl.edu.mimuw.forum.exceptions.ApplicationException;
+
+/**
+ * Plik forum w formacie binarnym z indeksem wezlow (zob. {@link BinaryFormat}), odwzorowany w pamieci.
+ * Wezly dekodowane sa dopiero przy pierwszym dostepie do listy dzieci ich rodzica, wiec zuzycie
+ * sterty zalezy od odwiedzonej czesci forum, a nie od rozmiaru pliku.
+ *
+ * Suma kontrolna pliku nie jest sprawdzana - wymagaloby to przeczytania calego pliku.
+ * Odwzorowanie pozostaje wazne takze po zastapieniu pliku nowym zapisem (zob. {@link AtomicFileWriter}),
+ * o ile system plikow na to pozwala.
+ */
+public class MappedForumFile {
+
+	/**
+	 * Rozmiar pojedynczego odwzorowanego fragmentu pliku ({@link MappedByteBuffer} adresowany jest typem int).
+	 */
+	private static final long SEGMENT_SIZE = 1L << 30;
+
+	private final MappedByteBuffer[] segments;
+	private final long length;
+
+	private final int version;
+	private final long indexOffset;
+	private final int nodeCount;
+	private final String[] authors;
+
+	private byte[] recordBuffer = new byte[256];
+
+	private MappedForumFile(MappedByteBuffer[] segments, long length) throws ApplicationException {
+		this.segments = segments;
+		this.length = length;
+
+		long end = contentEnd();
+		if (end < BinaryFormat.FOOTER_SIZE) {
+			throw new ApplicationException("The forum file has no node index.");
+		}
+		long footer = end - BinaryFormat.FOOTER_SIZE;
+		byte[] magic = read(footer + Long.BYTES + Integer.BYTES, BinaryFormat.INDEX_MAGIC.length);
+		if (!Arrays.equals(magic, BinaryFormat.INDEX_MAGIC)) {
+			throw new ApplicationException("The forum file has no node index.");
+		}
+		indexOffset = getLong(footer);
+		nodeCount = getInt(footer + Long.BYTES);
+
+		version = (get(BinaryFormat.MAGIC.length) & 0xff) << 8 | get(BinaryFormat.MAGIC.length + 1) & 0xff;
+		if (version < BinaryFormat.INDEXED_VERSION || version > BinaryFormat.VERSION) {
+			throw new ApplicationException("Unsupported forum file version " + version + ".");
+		}
+		authors = readAuthors();
+	}
+
+	/**
+	 * Odwzorowuje plik w pamieci.
+	 *
+	 * @throws ApplicationException gdy plik nie jest plikiem binarnym z indeksem (np. jest plikiem XML
+	 *             lub zostal zapisany w pierwszej wersji formatu)
+	 */
+	public static MappedForumFile open(File file) throws IOException, ApplicationException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long length = channel.size();
+			int count = (int) ((length + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+			MappedByteBuffer[] segments = new MappedByteBuffer[count];
+			for (int i = 0; i < count; ++i) {
+				long start = i * SEGMENT_SIZE;
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, length - start));
+			}
+			return new MappedForumFile(segments, length);
+		}
+	}
+
+	/**
+	 * Sprawdza (czytajac jedynie naglowek), czy plik mozna otworzyc przez {@link #open(File)}.
+	 */
+	public static boolean isIndexed(File file) {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(BinaryFormat.MAGIC.length + Short.BYTES);
+			while (header.hasRemaining() && channel.read(header) != -1) {
+				// czytamy caly naglowek
+			}
+			if (header.hasRemaining()) {
+				return false;
+			}
+			byte[] magic = new byte[BinaryFormat.MAGIC.length];
+			header.flip();
+			header.get(magic);
+			return Arrays.equals(magic, BinaryFormat.MAGIC)
+					&& (header.getShort() & 0xffff) >= BinaryFormat.INDEXED_VERSION;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	public int getNodeCount() {
+		return nodeCount;
+	}
+
+	/**
+	 * Korzen forum, ktorego dzieci (i ich dzieci) wczytywane sa przy pierwszym dostepie.
+	 */
+	public Node getRoot() throws ApplicationException {
+		return node(0);
+	}
+
+	/**
+	 * Czy plik zawiera identyfikatory wezlow - w starszych plikach wezly otrzymuja nowe
+	 * identyfikatory przy kazdym dekodowaniu.
+	 */
+	public boolean hasNodeIds() {
+		return version >= BinaryFormat.ID_VERSION;
+	}
+
+	/**
+	 * Korzen forum do jednokrotnego przejscia calego drzewa (np. zbudowania jego kopii): dzieci
+	 * dekodowane sa przy kazdym dostepie i nie sa zapamietywane, wiec przejscie nie zatrzymuje
+	 * w pamieci zdekodowanych wezlow. Takich wezlow nie nalezy modyfikowac. Identyfikatory wezlow
+	 * zgadzaja sie z wezlami {@link #getRoot()} jedynie, gdy {@link #hasNodeIds()}.
+	 */
+	public Node getTransientRoot() throws ApplicationException {
+		return decode(0, false);
+	}
+
+	/**
+	 * Dekoduje wezel o podanym numerze (numery nadawane sa w kolejnosci rekordow w pliku).
+	 */
+	public Node node(int id) throws ApplicationException {
+		return decode(id, true);
+	}
+
+	/**
+	 * @param cached czy dzieci wezla maja byc zapamietane po zdekodowaniu (zob. {@link ChildList})
+	 *            czy dekodowane przy kazdym dostepie (zob. {@link TransientChildList})
+	 */
+	private synchronized Node decode(int id, boolean cached) throws ApplicationException {
+		if (id < 0 || id >= nodeCount) {
+			throw new ApplicationException("Node " + id + " does not exist in the forum file.");
+		}
+		long offset = getLong(indexEntry(id));
+		byte tag = get(offset);
+		int recordLength = getInt(offset + 1);
+		if (recordBuffer.length < recordLength) {
+			recordBuffer = new byte[Math.max(recordLength, recordBuffer.length * 2)];
+		}
+		read(offset + 1 + Integer.BYTES, recordBuffer, recordLength);
+
+		ByteBuffer record = ByteBuffer.wrap(recordBuffer, 0, recordLength);
+		Node node = BinaryRecords.decode(tag, record, authors);
+		int childCount = record.getInt();
+		node.setChildren(cached ? new ChildList(id, childCount) : new TransientChildList(id, childCount));
+		BinaryRecords.decodeTrailer(node, record);
+		return node;
+	}
+
+	/**
+	 * Numery dzieci wezla - wyznaczane z indeksu, bez dekodowania rekordow.
+	 */
+	public int[] childIds(int id, int childCount) {
+		int[] children = new int[childCount];
+		int child = id + 1;
+		for (int i = 0; i < childCount; ++i) {
+			children[i] = child;
+			child += getInt(indexEntry(child) + Long.BYTES);
+		}
+		return children;
+	}
+
+	private long indexEntry(int id) {
+		return indexOffset + (long) id * BinaryFormat.INDEX_ENTRY_SIZE;
+	}
+
+	/**
+	 * Lista dzieci wezla wczytywana z pliku przy pierwszym dostepie. Po wczytaniu
+	 * zachowuje sie jak zwykla lista (mozna ja modyfikowac).
+	 */
+	private class ChildList extends AbstractList<Node> {
+		private final int parentId;
+		private final int childCount;
+		private volatile List<Node> loaded;
+
+		ChildList(int parentId, int childCount) {
+			this.parentId = parentId;
+			this.childCount = childCount;
+		}
+
+		private List<Node> loaded() {
+			if (loaded == null) {
+				List<Node> children = new ArrayList<>(childCount);
+				try {
+					for (int child : childIds(parentId, childCount)) {
+						children.add(node(child));
+					}
+				} catch (ApplicationException e) {
+					throw new IllegalStateException("Cannot read node " + parentId + " from the forum file.", e);
+				}
+				loaded = children;
+			}
+			return loaded;
+		}
+
+		@Override
+		public Node get(int index) {
+			return loaded().get(index);
+		}
+
+		@Override
+		public int size() {
+			return loaded == null ? childCount : loaded.size();
+		}
+
+		@Override
+		public Node set(int index, Node element) {
+			return loaded().set(index, element);
+		}
+
+		@Override
+		public void add(int index, Node element) {
+			loaded().add(index, element);
+			modCount++;
+		}
+
+		@Override
+		public Node remove(int index) {
+			modCount++;
+			return loaded().remove(index);
+		}
+	}
+
+	/**
+	 * Niemodyfikowalna lista dzieci dekodowanych przy kazdym dostepie (zob. {@link #getTransientRoot()}).
+	 */
+	private class TransientChildList extends AbstractList<Node> {
+		private final int parentId;
+		private final int childCount;
+		private volatile int[] childIds;
+
+		TransientChildList(int parentId, int childCount) {
+			this.parentId = parentId;
+			this.childCount = childCount;
+		}
+
+		@Override
+		public Node get(int index) {
+			if (childIds == null) {
+				childIds = childIds(parentId, childCount);
+			}
+			try {
+				return decode(childIds[index], false);
+			} catch (ApplicationException e) {
+				throw new IllegalStateException("Cannot read node " + childIds[index] + " from the forum file.", e);
+			}
+		}
+
+		@Override
+		public int size() {
+			return childCount;
+		}
+	}
+
+	private String[] readAuthors() throws ApplicationException {
+		long position = BinaryFormat.MAGIC.length + Short.BYTES;
+		String[] authors = new String[getInt(position)];
+		position += Integer.BYTES;
+		for (int i = 0; i < authors.length; ++i) {
+			int length = getInt(position);
+			position += Integer.BYTES;
+			if (length == BinaryFormat.NULL_LENGTH) {
+				continue;
+			}
+			authors[i] = new String(read(position, length), StandardCharsets.UTF_8);
+			position += length;
+		}
+		return authors;
+	}
+
+	/**
+	 * Koniec danych pliku - bez sumy kontrolnej, jesli plik sie nia konczy.
+	 */
+	private long contentEnd() {
+		if (length >= ChecksumTrailer.LENGTH) {
+			byte[] tail = read(length - ChecksumTrailer.LENGTH, ChecksumTrailer.LENGTH);
+			if (ChecksumTrailer.parse(tail, tail.length) != -1) {
+				return length - ChecksumTrailer.LENGTH;
+			}
+		}
+		return length;
+	}
+
+	private byte get(long position) {
+		return segments[(int) (position / SEGMENT_SIZE)].get((int) (position % SEGMENT_SIZE));
+	}
+
+	private int getInt(long position) {
+		int segment = (int) (position / SEGMENT_SIZE);
+		int offset = (int) (position % SEGMENT_SIZE);
+		if (offset + Integer.BYTES <= segments[segment].limit()) {
+			return segments[segment].getInt(offset);
+		}
+		return ByteBuffer.wrap(read(position, Integer.BYTES)).getInt();
+	}
+
+	private long getLong(long position) {
+		int segment = (int) (position / SEGMENT_SIZE);
+		int offset = (int) (position % SEGMENT_SIZE);
+		if (offset + Long.BYTES <= segments[segment].limit()) {
+			return segments[segment].getLong(offset);
+		}
+		return ByteBuffer.wrap(read(position, Long.BYTES)).getLong();
+	}
+
+	private byte[] read(long position, int count) {
+		byte[] bytes = new byte[count];
+		read(position, bytes, count);
+		return bytes;
+	}
+
+	/**
+	 * Kopiuje bajty z odwzorowania, rowniez gdy przekraczaja granice fragmentow.
+	 */
+	private void read(long position, byte[] target, int count) {
+		int done = 0;
+		while (done < count) {
+			int segment = (int) ((position + done) / SEGMENT_SIZE);
+			int offset = (int) ((position + done) % SEGMENT_SIZE);
+			ByteBuffer view = segments[segment].duplicate();
+			view.position(offset);
+			int chunk = Math.min(count - done, view.remaining());
+			view.get(target, done, chunk);
+			done += chunk;
+		}
+	}
+}
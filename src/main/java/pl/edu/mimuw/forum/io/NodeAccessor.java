@@ -0,0 +1,59 @@
+package pl.edu.mimuw.forum.io;
+
+import java.util.Date;
+import java.util.List;
+
+import pl.edu.mimuw.forum.data.Node;
+
+/**
+ * Dostep do pol wezlow dowolnej reprezentacji drzewa forum. Dzieki niemu zapis (XML, binarny, dziennik)
+ * czyta bezposrednio z reprezentacji, w ktorej forum jest przechowywane, bez kopiowania go do
+ * drzewa {@link Node}.
+ *
+ * Pola podklas czytane sa jedynie dla wezlow odpowiedniego typu (zob. {@link #type}).
+ *
+ * @param <N> typ wezla
+ */
+public interface NodeAccessor<N> {
+
+	/**
+	 * Klasa wezla forum odpowiadajaca wezlowi (wyznacza nazwe elementu i zestaw pol).
+	 */
+	Class<? extends Node> type(N node);
+
+	/**
+	 * Trwaly identyfikator wezla (zob. {@link Node#getId()}).
+	 */
+	long id(N node);
+
+	String content(N node);
+
+	String author(N node);
+
+	List<? extends N> children(N node);
+
+	/**
+	 * Termin zadania ({@link pl.edu.mimuw.forum.data.Task}).
+	 */
+	Date dueDate(N node);
+
+	/**
+	 * Liczba glosow za w ankiecie ({@link pl.edu.mimuw.forum.data.Survey}).
+	 */
+	int likes(N node);
+
+	/**
+	 * Liczba glosow przeciw w ankiecie ({@link pl.edu.mimuw.forum.data.Survey}).
+	 */
+	int dislikes(N node);
+
+	/**
+	 * Odpowiedz na sugestie ({@link pl.edu.mimuw.forum.data.Suggestion}).
+	 */
+	String response(N node);
+
+	/**
+	 * Akceptacja odpowiedzi na sugestie ({@link pl.edu.mimuw.forum.data.Suggestion}).
+	 */
+	Boolean isResponseAccepted(N node);
+}
@@ -0,0 +1,144 @@
+package pl.edu.mimuw.forum.io;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import com.thoughtworks.xstream.converters.ConversionException;
+
+import pl.edu.mimuw.forum.data.Comment;
+import pl.edu.mimuw.forum.data.Node;
+import pl.edu.mimuw.forum.data.NodeIds;
+import pl.edu.mimuw.forum.data.Suggestion;
+import pl.edu.mimuw.forum.data.Survey;
+import pl.edu.mimuw.forum.data.Task;
+import pl.edu.mimuw.forum.exceptions.ApplicationException;
+
+/**
+ * Stan elementu XML reprezentujacego wezel, ktorego znacznik zamykajacy nie zostal jeszcze przeczytany.
+ * Pola podklas (np. dueDate) zapisywane sa po dzieciach, dlatego wezel tworzony jest dopiero
+ * przy znaczniku zamykajacym (zob. {@link #build()}).
+ */
+final class NodeBuilder {
+
+	final Class<? extends Node> type;
+	final List<Node> children = new ArrayList<>();
+	private long id;
+	private boolean hasId;
+	private String content;
+	private String author;
+	private Date dueDate;
+	private int likes;
+	private int dislikes;
+	private String response;
+	private Boolean isResponseAccepted;
+
+	NodeBuilder(Class<? extends Node> type) {
+		this.type = type;
+	}
+
+	/**
+	 * Czy element o podanej nazwie jest polem wezla znanym tej wersji programu.
+	 */
+	static boolean isField(String name) {
+		switch (name) {
+		case ForumXmlReader.ID:
+		case ForumXmlReader.CONTENT:
+		case ForumXmlReader.AUTHOR:
+		case ForumXmlReader.DUE_DATE:
+		case ForumXmlReader.LIKES:
+		case ForumXmlReader.DISLIKES:
+		case ForumXmlReader.RESPONSE:
+		case ForumXmlReader.IS_RESPONSE_ACCEPTED:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Ustawia pole wezla na podstawie tresci elementu; pola nieznane sa pomijane.
+	 */
+	void setField(String name, String text) throws ApplicationException {
+		switch (name) {
+		case ForumXmlReader.ID:
+			id = parseLong(text);
+			if (!NodeIds.isValid(id)) {
+				throw new ApplicationException("Malformed forum file: node id " + id + " is out of range.");
+			}
+			hasId = true;
+			break;
+		case ForumXmlReader.CONTENT:
+			content = text;
+			break;
+		case ForumXmlReader.AUTHOR:
+			author = text;
+			break;
+		case ForumXmlReader.DUE_DATE:
+			dueDate = parseDate(text);
+			break;
+		case ForumXmlReader.LIKES:
+			likes = parseInt(text);
+			break;
+		case ForumXmlReader.DISLIKES:
+			dislikes = parseInt(text);
+			break;
+		case ForumXmlReader.RESPONSE:
+			response = text;
+			break;
+		case ForumXmlReader.IS_RESPONSE_ACCEPTED:
+			isResponseAccepted = Boolean.valueOf(text.trim());
+			break;
+		default:
+			break;
+		}
+	}
+
+	Node build() {
+		Node node;
+		if (type == Comment.class) {
+			node = new Comment(content, author);
+		} else if (type == Task.class) {
+			node = new Task(dueDate, content, author);
+		} else if (type == Survey.class) {
+			node = new Survey(content, author, likes, dislikes);
+		} else if (type == Suggestion.class) {
+			Suggestion suggestion = new Suggestion(content, author, response);
+			suggestion.setIsResponseAccepted(isResponseAccepted);
+			node = suggestion;
+		} else {
+			node = new Node(content, author);
+		}
+		if (hasId) {
+			node.setId(id); // wezel z pliku sprzed wprowadzenia identyfikatorow zachowuje nowy
+		}
+		if (!children.isEmpty()) {
+			node.setChildren(new ArrayList<>(children)); // kopia bez zapasu pojemnosci
+		}
+		return node;
+	}
+
+	private static Date parseDate(String text) throws ApplicationException {
+		try {
+			return (Date) ForumXmlReader.DATE_CONVERTER.fromString(text);
+		} catch (ConversionException e) {
+			throw new ApplicationException("Malformed date in the forum file.", e);
+		}
+	}
+
+	private static int parseInt(String text) throws ApplicationException {
+		try {
+			return Integer.parseInt(text.trim());
+		} catch (NumberFormatException e) {
+			throw new ApplicationException("Malformed number in the forum file.", e);
+		}
+	}
+
+	private static long parseLong(String text) throws ApplicationException {
+		try {
+			return Long.parseLong(text.trim());
+		} catch (NumberFormatException e) {
+			throw new ApplicationException("Malformed number in the forum file.", e);
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package pl.edu.mimuw.forum.io;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+
+import com.thoughtworks.xstream.converters.ConversionException;
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+
+import pl.edu.mimuw.forum.data.Node;
+
+/**
+ * Konwerter wezlow forum, zapisujacy pola wezla bez uzycia refleksji. Format jest taki sam,
+ * jak przy zapisie refleksyjnym: pola {@code id}, {@code content} i {@code author}, dzieci (kolekcja
+ * niejawna - elementy nazwane klasa wezla), a nastepnie pola podklasy (zob. {@link #writeTypeFields}).
+ * Identyfikator poprzedza dzieci, wiec czytnik zna go juz przy pierwszym dziecku wezla.
+ *
+ * Poddrzewo wezla przetwarzane jest iteracyjnie, z konwerterem dobieranym dla kazdego dziecka
+ * ze wspolnej tablicy (zob. {@link ForumSerializer}), wiec glebokie watki nie wyczerpia stosu wywolan.
+ */
+class NodeConverter {
+
+	/**
+	 * Konwertery wszystkich typow wezlow, wspolne dla konwerterow jednego {@link ForumSerializer}.
+	 */
+	private final Map<Class<?>, NodeConverter> converters;
+
+	/**
+	 * Wezel, ktorego dzieci sa w trakcie zapisu.
+	 */
+	private static class Frame<N> {
+		final N node;
+		final NodeConverter converter;
+		final Iterator<? extends N> children;
+
+		Frame(N node, NodeConverter converter, NodeAccessor<N> nodes) {
+			this.node = node;
+			this.converter = converter;
+			this.children = nodes.children(node).iterator();
+		}
+	}
+
+	NodeConverter(Map<Class<?>, NodeConverter> converters) {
+		this.converters = converters;
+	}
+
+	/**
+	 * Zapisuje zawartosc elementu wezla wraz z poddrzewem (element otwiera i zamyka wywolujacy).
+	 */
+	<N> void writeTree(N root, NodeAccessor<N> nodes, HierarchicalStreamWriter writer) {
+		Deque<Frame<N>> stack = new ArrayDeque<>();
+		writeFields(root, nodes, writer);
+		stack.push(new Frame<>(root, this, nodes));
+
+		while (!stack.isEmpty()) {
+			Frame<N> frame = stack.peek();
+			if (frame.children.hasNext()) {
+				N child = frame.children.next();
+				Class<? extends Node> type = nodes.type(child);
+				NodeConverter converter = converterFor(type);
+				writer.startNode(NodeTypes.elementFor(type));
+				converter.writeFields(child, nodes, writer);
+				stack.push(new Frame<>(child, converter, nodes));
+			} else {
+				stack.pop();
+				frame.converter.writeTypeFields(frame.node, nodes, writer);
+				if (!stack.isEmpty()) {
+					writer.endNode();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Zapisuje pola poprzedzajace dzieci wezla.
+	 */
+	<N> void writeFields(N node, NodeAccessor<N> nodes, HierarchicalStreamWriter writer) {
+		writeField(writer, ForumXmlReader.ID, Long.toString(nodes.id(node)));
+		writeField(writer, ForumXmlReader.CONTENT, nodes.content(node));
+		writeField(writer, ForumXmlReader.AUTHOR, nodes.author(node));
+	}
+
+	/**
+	 * Zapisuje pola podklasy - wystepuja po dzieciach wezla.
+	 */
+	<N> void writeTypeFields(N node, NodeAccessor<N> nodes, HierarchicalStreamWriter writer) {
+	}
+
+	/**
+	 * Zapisuje element z wartoscia pola, pomijajac pola puste (tak jak zapis refleksyjny).
+	 */
+	static void writeField(HierarchicalStreamWriter writer, String name, String value) {
+		if (value != null) {
+			writer.startNode(name);
+			writer.setValue(value);
+			writer.endNode();
+		}
+	}
+
+	private NodeConverter converterFor(Class<? extends Node> type) {
+		NodeConverter converter = converters.get(type);
+		if (converter == null) {
+			throw new ConversionException("Unsupported node type: " + type.getName());
+		}
+		return converter;
+	}
+}
@@ -0,0 +1,58 @@
+package pl.edu.mimuw.forum.io;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import pl.edu.mimuw.forum.data.Comment;
+import pl.edu.mimuw.forum.data.Node;
+import pl.edu.mimuw.forum.data.Suggestion;
+import pl.edu.mimuw.forum.data.Survey;
+import pl.edu.mimuw.forum.data.Task;
+
+/**
+ * Odwzorowanie klas wezlow forum na nazwy elementow XML i znaczniki typu formatu binarnego.
+ * XStream zapisuje wezly pod pelna nazwa klasy, np. {@code pl.edu.mimuw.forum.data.Comment}.
+ */
+final class NodeTypes {
+
+	static final byte NODE = 0;
+	static final byte COMMENT = 1;
+	static final byte TASK = 2;
+	static final byte SURVEY = 3;
+	static final byte SUGGESTION = 4;
+
+	private static final Map<String, Class<? extends Node>> BY_ELEMENT = new HashMap<>();
+	private static final Map<Class<? extends Node>, Byte> TAGS = new HashMap<>();
+
+	static {
+		register(Node.class, NODE);
+		register(Comment.class, COMMENT);
+		register(Task.class, TASK);
+		register(Survey.class, SURVEY);
+		register(Suggestion.class, SUGGESTION);
+	}
+
+	private NodeTypes() {
+	}
+
+	private static void register(Class<? extends Node> type, byte tag) {
+		BY_ELEMENT.put(elementFor(type), type);
+		TAGS.put(type, tag);
+	}
+
+	static byte tagFor(Class<? extends Node> type) {
+		Byte tag = TAGS.get(type);
+		if (tag == null) {
+			throw new IllegalArgumentException("Unsupported node type: " + type.getName());
+		}
+		return tag;
+	}
+
+	static String elementFor(Class<? extends Node> type) {
+		return type.getName();
+	}
+
+	static Class<? extends Node> forElement(String name) {
+		return BY_ELEMENT.get(name);
+	}
+}
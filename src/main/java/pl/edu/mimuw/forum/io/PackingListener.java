@@ -0,0 +1,84 @@
+package pl.edu.mimuw.forum.io;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import pl.edu.mimuw.forum.data.ForumStore;
+import pl.edu.mimuw.forum.data.Node;
+
+/**
+ * Obserwator czytania, ktory pakuje przeczytane watki do magazynow {@link ForumStore}, zanim przekaze
+ * je dalej - wczytane forum nie przechowuje obiektu {@link Node} dla kazdego postu. Watki pakowane
+ * sa partiami (po co najmniej {@link #BATCH_SIZE} wezlow), wiec obserwator docelowy otrzymuje je
+ * z opoznieniem; ostatnia partie przekazuje {@link #finish()}.
+ *
+ * Przekazywane watki maja niemodyfikowalne listy dzieci, dekodowane przy kazdym dostepie.
+ */
+public final class PackingListener implements ForumReader.Listener {
+
+	/**
+	 * Najmniejsza liczba wezlow partii watkow pakowanej do jednego magazynu.
+	 */
+	static final int BATCH_SIZE = 4096;
+
+	private final ForumReader.Listener target;
+
+	private final List<Node> batch = new ArrayList<>();
+	private int batchSize;
+
+	public PackingListener(ForumReader.Listener target) {
+		this.target = target;
+	}
+
+	/**
+	 * Korzen forum o polach i dzieciach {@code root}, spakowany do magazynu (np. po zastosowaniu
+	 * dziennika zmian do wczytanego drzewa).
+	 */
+	public static Node pack(Node root) {
+		List<Node> roots = new ArrayList<>();
+		roots.add(root);
+		return ForumStore.of(roots).getRoots().get(0);
+	}
+
+	@Override
+	public void rootStarted(Node root) {
+		target.rootStarted(root);
+	}
+
+	@Override
+	public void threadRead(Node thread) {
+		batch.add(thread);
+		batchSize += count(thread);
+		if (batchSize >= BATCH_SIZE) {
+			flush();
+		}
+	}
+
+	/**
+	 * Przekazuje obserwatorowi docelowemu ostatnia partie watkow (po przeczytaniu pliku).
+	 */
+	public void finish() {
+		flush();
+	}
+
+	private void flush() {
+		if (!batch.isEmpty()) {
+			ForumStore.of(batch).getRoots().forEach(target::threadRead);
+			batch.clear();
+			batchSize = 0;
+		}
+	}
+
+	private static int count(Node subtree) {
+		int count = 0;
+		Deque<Node> pending = new ArrayDeque<>();
+		pending.push(subtree);
+		while (!pending.isEmpty()) {
+			count++;
+			pending.pop().getChildren().forEach(pending::push);
+		}
+		return count;
+	}
+}
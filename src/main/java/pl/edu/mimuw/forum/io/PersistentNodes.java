@@ -0,0 +1,94 @@
+package pl.edu.mimuw.forum.io;
+
+import java.util.Date;
+import java.util.List;
+
+import pl.edu.mimuw.forum.data.Node;
+import pl.edu.mimuw.forum.data.PersistentNode;
+import pl.edu.mimuw.forum.data.VersionedForum;
+
+/**
+ * Dostep do pol wezlow niezmiennej wersji forum ({@link VersionedForum}) - migawka forum zapisywana
+ * jest w tle, podczas gdy forum jest dalej edytowane.
+ */
+public final class PersistentNodes implements NodeAccessor<PersistentNode> {
+
+	public static final PersistentNodes INSTANCE = new PersistentNodes();
+
+	private PersistentNodes() {
+	}
+
+	/**
+	 * Wezel {@code node} z nowa wartoscia pola (wartosci jak w {@link ForumJournal#edited}).
+	 */
+	public static PersistentNode edited(PersistentNode node, ForumJournal.Field field, Object value) {
+		switch (field) {
+		case CONTENT:
+			return node.withContent((String) value);
+		case AUTHOR:
+			return node.withAuthor((String) value);
+		case DUE_DATE:
+			return node.withDueDate((Date) value);
+		case RESPONSE:
+			return node.withResponse((String) value);
+		case RESPONSE_ACCEPTED:
+			return node.withIsResponseAccepted((Boolean) value);
+		case LIKES:
+			return node.withLikes((Integer) value);
+		case DISLIKES:
+			return node.withDislikes((Integer) value);
+		default:
+			throw new IllegalArgumentException("Unsupported field " + field + ".");
+		}
+	}
+
+	@Override
+	public Class<? extends Node> type(PersistentNode node) {
+		return node.getType();
+	}
+
+	@Override
+	public long id(PersistentNode node) {
+		return node.getId();
+	}
+
+	@Override
+	public String content(PersistentNode node) {
+		return node.getContent();
+	}
+
+	@Override
+	public String author(PersistentNode node) {
+		return node.getAuthor();
+	}
+
+	@Override
+	public List<? extends PersistentNode> children(PersistentNode node) {
+		return node.getChildren();
+	}
+
+	@Override
+	public Date dueDate(PersistentNode node) {
+		return node.getDueDate();
+	}
+
+	@Override
+	public int likes(PersistentNode node) {
+		return node.getLikes();
+	}
+
+	@Override
+	public int dislikes(PersistentNode node) {
+		return node.getDislikes();
+	}
+
+	@Override
+	public String response(PersistentNode node) {
+		return node.getResponse();
+	}
+
+	@Override
+	public Boolean isResponseAccepted(PersistentNode node) {
+		return node.getIsResponseAccepted();
+	}
+}
@@ -0,0 +1,60 @@
+package pl.edu.mimuw.forum.io;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.LongConsumer;
+
+/**
+ * Strumien zliczajacy przeczytane bajty i informujacy o nich obserwatora
+ * (np. w celu aktualizacji paska postepu).
+ */
+public class ProgressInputStream extends FilterInputStream {
+
+	private final LongConsumer listener;
+	private long count;
+
+	public ProgressInputStream(InputStream in, LongConsumer listener) {
+		super(in);
+		this.listener = listener;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = super.read();
+		if (b != -1) {
+			advance(1);
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int n = super.read(b, off, len);
+		if (n > 0) {
+			advance(n);
+		}
+		return n;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = super.skip(n);
+		advance(skipped);
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	private void advance(long n) {
+		count += n;
+		listener.accept(count);
+	}
+}
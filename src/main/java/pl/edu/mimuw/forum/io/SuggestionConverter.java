@@ -0,0 +1,23 @@
+package pl.edu.mimuw.forum.io;
+
+import java.util.Map;
+
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+
+
+/**
+ * Konwerter sugestii - dopisuje odpowiedz i jej akceptacje.
+ */
+class SuggestionConverter extends NodeConverter {
+
+	SuggestionConverter(Map<Class<?>, NodeConverter> converters) {
+		super(converters);
+	}
+
+	@Override
+	<N> void writeTypeFields(N node, NodeAccessor<N> nodes, HierarchicalStreamWriter writer) {
+		Boolean accepted = nodes.isResponseAccepted(node);
+		writeField(writer, ForumXmlReader.RESPONSE, nodes.response(node));
+		writeField(writer, ForumXmlReader.IS_RESPONSE_ACCEPTED, accepted == null ? null : accepted.toString());
+	}
+}
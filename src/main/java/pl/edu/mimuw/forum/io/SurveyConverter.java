@@ -0,0 +1,22 @@
+package pl.edu.mimuw.forum.io;
+
+import java.util.Map;
+
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+
+
+/**
+ * Konwerter ankiet - dopisuje liczby glosow.
+ */
+class SurveyConverter extends NodeConverter {
+
+	SurveyConverter(Map<Class<?>, NodeConverter> converters) {
+		super(converters);
+	}
+
+	@Override
+	<N> void writeTypeFields(N node, NodeAccessor<N> nodes, HierarchicalStreamWriter writer) {
+		writeField(writer, ForumXmlReader.LIKES, Integer.toString(nodes.likes(node)));
+		writeField(writer, ForumXmlReader.DISLIKES, Integer.toString(nodes.dislikes(node)));
+	}
+}
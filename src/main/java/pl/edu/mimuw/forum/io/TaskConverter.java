@@ -0,0 +1,23 @@
+package pl.edu.mimuw.forum.io;
+
+import java.util.Date;
+import java.util.Map;
+
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+
+
+/**
+ * Konwerter zadan - dopisuje termin wykonania.
+ */
+class TaskConverter extends NodeConverter {
+
+	TaskConverter(Map<Class<?>, NodeConverter> converters) {
+		super(converters);
+	}
+
+	@Override
+	<N> void writeTypeFields(N node, NodeAccessor<N> nodes, HierarchicalStreamWriter writer) {
+		Date dueDate = nodes.dueDate(node);
+		writeField(writer, ForumXmlReader.DUE_DATE, dueDate == null ? null : ForumXmlReader.DATE_CONVERTER.toString(dueDate));
+	}
+}
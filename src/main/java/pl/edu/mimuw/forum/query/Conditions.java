@@ -0,0 +1,134 @@
+package pl.edu.mimuw.forum.query;
+
+import java.util.Date;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+import pl.edu.mimuw.forum.data.Node;
+import pl.edu.mimuw.forum.data.PersistentNode;
+
+/**
+ * Warunki zapytan o wezly forum (zob. {@link Query}). Warunki sprawdzaja pojedynczy wezel i nie
+ * zmieniaja stanu, wiec mozna je sprawdzac z wielu watkow. Warunki dotyczace poddrzewa korzystaja
+ * z {@link PersistentNode#getStats()} - w czasie stalym dla wezlow o znanym podsumowaniu, a dla
+ * pozostalych (np. czytanych z wczytanego drzewa) w czasie proporcjonalnym do rozmiaru poddrzewa.
+ * Laczy sie je metodami {@link Predicate#and}, {@link Predicate#or} i {@link Predicate#negate}.
+ */
+public final class Conditions {
+
+	private Conditions() {
+	}
+
+	/**
+	 * Spelniany przez kazdy wezel.
+	 */
+	public static Predicate<PersistentNode> any() {
+		return node -> true;
+	}
+
+	/**
+	 * Wezly typu {@code type} (lub jego podtypow).
+	 */
+	public static Predicate<PersistentNode> type(Class<? extends Node> type) {
+		return node -> type.isAssignableFrom(node.getType());
+	}
+
+	public static Predicate<PersistentNode> author(String author) {
+		return node -> author.equals(node.getAuthor());
+	}
+
+	/**
+	 * Wezly, ktorych tresc zawiera {@code text} (bez uwzgledniania wielkosci liter).
+	 */
+	public static Predicate<PersistentNode> contentContains(String text) {
+		return node -> containsIgnoreCase(node.getContent(), text);
+	}
+
+	/**
+	 * Zadania o terminie z przedzialu [{@code from}, {@code to}) - {@code null} oznacza przedzial
+	 * nieograniczony z danej strony.
+	 */
+	public static Predicate<PersistentNode> dueBetween(Date from, Date to) {
+		long start = from == null ? Long.MIN_VALUE : from.getTime();
+		long end = to == null ? Long.MAX_VALUE : to.getTime();
+		return node -> {
+			Date due = node.getDueDate();
+			return due != null && due.getTime() >= start && due.getTime() < end;
+		};
+	}
+
+	/**
+	 * Wezly, dla ktorych {@code votes} (np. {@code PersistentNode::getLikes}) jest co najmniej
+	 * {@code min} i co najwyzej {@code max}. Glosy maja jedynie ankiety - pozostale wezly maja 0.
+	 */
+	public static Predicate<PersistentNode> votes(ToIntFunction<PersistentNode> votes, int min, int max) {
+		return node -> {
+			int value = votes.applyAsInt(node);
+			return value >= min && value <= max;
+		};
+	}
+
+	/**
+	 * Ankiety z wieksza liczba glosow na nie niz na tak.
+	 */
+	public static Predicate<PersistentNode> moreDislikes() {
+		return node -> node.getDislikes() > node.getLikes();
+	}
+
+	/**
+	 * Ankiety z wieksza liczba glosow na tak niz na nie.
+	 */
+	public static Predicate<PersistentNode> moreLikes() {
+		return node -> node.getLikes() > node.getDislikes();
+	}
+
+	/**
+	 * Wezly, w ktorych poddrzewie (wraz z nimi) jest sugestia bez przyjetej ani odrzuconej odpowiedzi.
+	 */
+	public static Predicate<PersistentNode> hasPendingSuggestion() {
+		return node -> node.getStats().getPendingSuggestions() > 0;
+	}
+
+	/**
+	 * Wezly, w ktorych poddrzewie (wraz z nimi) jest sugestia z przyjeta odpowiedzia.
+	 */
+	public static Predicate<PersistentNode> hasAcceptedSuggestion() {
+		return node -> node.getStats().getAcceptedSuggestions() > 0;
+	}
+
+	/**
+	 * Wezly, w ktorych poddrzewie (wraz z nimi) jest sugestia z odrzucona odpowiedzia.
+	 */
+	public static Predicate<PersistentNode> hasRejectedSuggestion() {
+		return node -> node.getStats().getRejectedSuggestions() > 0;
+	}
+
+	/**
+	 * Wezly majace odpowiedzi (dzieci).
+	 */
+	public static Predicate<PersistentNode> hasReplies() {
+		return node -> node.getChildCount() > 0;
+	}
+
+	/**
+	 * Czy {@code text} zawiera {@code part} bez uwzgledniania wielkosci liter (bez tworzenia kopii
+	 * napisow dla kazdego wezla).
+	 */
+	static boolean containsIgnoreCase(String text, String part) {
+		if (text == null) {
+			return false;
+		}
+		if (part.isEmpty()) {
+			return true;
+		}
+		char lower = Character.toLowerCase(part.charAt(0));
+		char upper = Character.toUpperCase(part.charAt(0));
+		for (int i = 0; i + part.length() <= text.length(); i++) {
+			char c = text.charAt(i);
+			if ((c == lower || c == upper) && text.regionMatches(true, i + 1, part, 1, part.length() - 1)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,211 @@
+package pl.edu.mimuw.forum.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+
+import pl.edu.mimuw.forum.analytics.Aggregator;
+import pl.edu.mimuw.forum.analytics.TreeReduction;
+import pl.edu.mimuw.forum.data.PersistentNode;
+import pl.edu.mimuw.forum.io.PersistentNodes;
+
+/**
+ * Zapytanie o wezly forum: warunek (zob. {@link Conditions}) i zakres - cale forum lub poddrzewo
+ * wezla o podanym identyfikatorze. Zapytanie mozna zbudowac z warunkow, np.
+ *
+ * <pre>
+ * Query.where(Conditions.type(Survey.class).and(Conditions.moreDislikes()).and(Conditions.author("Y")))
+ * </pre>
+ *
+ * albo zapisac tekstem (zob. {@link #parse(String)}), np.
+ * {@code type:task due:2024-05-06..2024-05-12 under:123 has:pending}.
+ *
+ * Zapytanie wykonywane jest na niezmiennej wersji forum ({@link PersistentNode}) - wezly sprawdzane
+ * sa rownolegle (zob. {@link TreeReduction}), a wyniki zwracane w kolejnosci dokumentu.
+ * Zapytania sa niezmienne.
+ */
+public final class Query {
+
+	/**
+	 * Zakres obejmujacy cale forum.
+	 */
+	private static final long WHOLE_FORUM = Long.MIN_VALUE;
+
+	private final Predicate<PersistentNode> condition;
+
+	private final long scope;
+
+	private Query(Predicate<PersistentNode> condition, long scope) {
+		this.condition = condition;
+		this.scope = scope;
+	}
+
+	/**
+	 * Zapytanie o wezly calego forum spelniajace {@code condition}.
+	 */
+	public static Query where(Predicate<PersistentNode> condition) {
+		return new Query(condition, WHOLE_FORUM);
+	}
+
+	/**
+	 * Zapytanie zapisane tekstem. Zapytanie to ciag warunkow oddzielonych spacjami - wezel musi spelniac
+	 * wszystkie. Ciagi warunkow mozna laczyc slowem {@code OR}, a warunek poprzedzony znakiem '-'
+	 * jest zaprzeczany. Warunki:
+	 * <ul>
+	 * <li>{@code type:comment}, {@code type:task}, {@code type:survey}, {@code type:suggestion},</li>
+	 * <li>{@code author:Jan} lub {@code author:"Jan Kowalski"},</li>
+	 * <li>{@code content:tekst}, {@code "fraza"} lub samo slowo - tresc zawiera tekst,</li>
+	 * <li>{@code due:2024-05-06..2024-05-12} - termin w podanych dniach (wlacznie); jeden z koncow
+	 * mozna pominac, a pojedyncza data oznacza jeden dzien,</li>
+	 * <li>{@code likes>10}, {@code dislikes<=3} itp. (operatory {@code < <= = >= >}) oraz
+	 * {@code dislikes>likes}, {@code likes>dislikes},</li>
+	 * <li>{@code has:pending}, {@code has:accepted}, {@code has:rejected} - sugestia o danym stanie
+	 * odpowiedzi w poddrzewie wezla, {@code has:replies} - wezel ma odpowiedzi,</li>
+	 * <li>{@code under:123} - zakres: poddrzewo wezla o identyfikatorze 123 (najwyzej raz, bez '-').</li>
+	 * </ul>
+	 *
+	 * @throws IllegalArgumentException gdy zapytanie jest niepoprawne
+	 */
+	public static Query parse(String text) {
+		return new QueryParser(text).parse();
+	}
+
+	/**
+	 * Czy tekst zawiera warunki inne niz slowa tresci (tzn. nie jest zwyklym wyszukiwaniem
+	 * pelnotekstowym).
+	 */
+	public static boolean isStructured(String text) {
+		return QueryParser.isStructured(text);
+	}
+
+	/**
+	 * To samo zapytanie ograniczone do poddrzewa wezla {@code id} (wraz z nim).
+	 */
+	public Query under(long id) {
+		return new Query(condition, id);
+	}
+
+	/**
+	 * To samo zapytanie z dodatkowym warunkiem.
+	 */
+	public Query and(Predicate<PersistentNode> other) {
+		return new Query(condition.and(other), scope);
+	}
+
+	public Predicate<PersistentNode> getCondition() {
+		return condition;
+	}
+
+	/**
+	 * Wezel zakresu zapytania (korzen przeszukiwanego poddrzewa) w wersji forum {@code root}. Wezel
+	 * zakresu wyszukiwany jest w calym forum, wiec metode nalezy wywolywac w tle (np. przed
+	 * {@link #evaluate(PersistentNode, int, BooleanSupplier)}). Mozna wywolywac z dowolnego watku.
+	 *
+	 * @throws IllegalArgumentException gdy wezla zakresu nie ma w forum
+	 */
+	public PersistentNode scopeIn(PersistentNode root) {
+		if (scope == WHOLE_FORUM) {
+			return root;
+		}
+		PersistentNode node = root.findAll(Collections.singleton(scope)).get(scope);
+		if (node == null) {
+			throw new IllegalArgumentException("No node " + scope + ".");
+		}
+		return node;
+	}
+
+	/**
+	 * Wezly poddrzewa {@code root} (wraz z nim) spelniajace warunek zapytania, w kolejnosci
+	 * dokumentu (zakres zapytania jest pomijany). Mozna wywolywac z dowolnego watku.
+	 */
+	public List<PersistentNode> evaluate(PersistentNode root) {
+		return evaluate(root, Integer.MAX_VALUE, () -> false);
+	}
+
+	/**
+	 * Najwyzej {@code limit} pierwszych w kolejnosci dokumentu wezlow poddrzewa {@code root}
+	 * spelniajacych warunek zapytania (zakres zapytania jest pomijany). Po znalezieniu {@code limit}
+	 * wezlow dalsze wezly nie sa sprawdzane. Mozna wywolywac z dowolnego watku.
+	 *
+	 * @param cancelled sprawdzane co pewien czas - gdy zwroci {@code true}, zapytanie jest przerywane
+	 * @throws CancellationException gdy zapytanie zostalo przerwane
+	 */
+	public List<PersistentNode> evaluate(PersistentNode root, int limit, BooleanSupplier cancelled) {
+		Matches matches = TreeReduction.reduce(root, PersistentNodes.INSTANCE,
+				new Aggregator<PersistentNode, Matches>() {
+					@Override
+					public Matches create() {
+						return new Matches();
+					}
+
+					@Override
+					public void add(Matches result, PersistentNode node, int depth) {
+						if (condition.test(node)) {
+							result.add(node);
+						}
+					}
+
+					@Override
+					public Matches merge(Matches left, Matches right) {
+						return left.merge(right);
+					}
+
+					@Override
+					public boolean isComplete(Matches result) {
+						return result.size >= limit || cancelled.getAsBoolean();
+					}
+				});
+		if (cancelled.getAsBoolean()) {
+			throw new CancellationException("Query cancelled.");
+		}
+		return matches.toList(limit);
+	}
+
+	/**
+	 * Wezly spelniajace warunek we fragmencie drzewa, w kolejnosci dokumentu. Wyniki fragmentow
+	 * laczone sa bez kopiowania wezlow (zadania redukcji sa zagniezdzone, wiec kopiowanie list
+	 * powtarzaloby sie na kazdym poziomie) - wezly kopiowane sa raz, do wyniku zapytania.
+	 */
+	private static final class Matches {
+		final List<List<PersistentNode>> parts = new ArrayList<>();
+		List<PersistentNode> last = new ArrayList<>();
+		int size;
+
+		Matches() {
+			parts.add(last);
+		}
+
+		void add(PersistentNode node) {
+			last.add(node);
+			size++;
+		}
+
+		Matches merge(Matches right) {
+			parts.addAll(right.parts);
+			last = right.last;
+			size += right.size;
+			return this;
+		}
+
+		/**
+		 * Najwyzej {@code limit} pierwszych wezlow.
+		 */
+		List<PersistentNode> toList(int limit) {
+			if (parts.size() == 1 && size <= limit) {
+				return last;
+			}
+			List<PersistentNode> list = new ArrayList<>(Math.min(size, limit));
+			for (List<PersistentNode> part : parts) {
+				if (list.size() + part.size() > limit) {
+					list.addAll(part.subList(0, limit - list.size()));
+					break;
+				}
+				list.addAll(part);
+			}
+			return list;
+		}
+	}
+}
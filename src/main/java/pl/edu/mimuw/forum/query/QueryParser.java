@@ -0,0 +1,357 @@
+package pl.edu.mimuw.forum.query;
+
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+import pl.edu.mimuw.forum.data.Comment;
+import pl.edu.mimuw.forum.data.Node;
+import pl.edu.mimuw.forum.data.PersistentNode;
+import pl.edu.mimuw.forum.data.Suggestion;
+import pl.edu.mimuw.forum.data.Survey;
+import pl.edu.mimuw.forum.data.Task;
+
+/**
+ * Parser tekstowej postaci zapytan (skladnia opisana w {@link Query#parse(String)}). Nieznane
+ * klucze (np. {@code re:}) traktowane sa jak slowa tresci.
+ */
+class QueryParser {
+
+	private static final String DATE_FORMAT = "yyyy-MM-dd";
+
+	private final String text;
+
+	private int position;
+
+	private Long scope;
+
+	/**
+	 * Czy przeczytano warunek inny niz slowo tresci.
+	 */
+	private boolean structured;
+
+	QueryParser(String text) {
+		this.text = text;
+	}
+
+	static boolean isStructured(String text) {
+		QueryParser parser = new QueryParser(text);
+		try {
+			parser.parse();
+		} catch (IllegalArgumentException e) {
+			return parser.structured;
+		}
+		return parser.structured;
+	}
+
+	Query parse() {
+		Predicate<PersistentNode> condition = clause();
+		while (keyword("OR")) {
+			structured = true;
+			condition = condition.or(clause());
+		}
+		skipSpaces();
+		if (position < text.length()) {
+			throw error("Unexpected '" + text.charAt(position) + "'");
+		}
+		Query query = Query.where(condition);
+		return scope == null ? query : query.under(scope);
+	}
+
+	/**
+	 * Ciag warunkow, ktore wezel musi spelniac jednoczesnie. Warunki tresci (najwolniejsze)
+	 * sprawdzane sa na koncu.
+	 */
+	private Predicate<PersistentNode> clause() {
+		List<Predicate<PersistentNode>> fields = new ArrayList<>();
+		List<Predicate<PersistentNode>> content = new ArrayList<>();
+		int terms = 0;
+		skipSpaces();
+		while (position < text.length() && !lookingAt("OR")) {
+			boolean wasStructured = structured;
+			structured = false;
+			Predicate<PersistentNode> term = term();
+			if (term != null) {
+				(structured ? fields : content).add(term);
+			}
+			structured |= wasStructured;
+			terms++;
+			skipSpaces();
+		}
+		if (terms == 0) {
+			throw error("Expected a condition");
+		}
+		fields.addAll(content);
+		return fields.stream().reduce(Predicate::and).orElse(Conditions.any());
+	}
+
+	/**
+	 * Pojedynczy warunek lub {@code null} dla zakresu ({@code under:}).
+	 */
+	private Predicate<PersistentNode> term() {
+		boolean negated = false;
+		if (text.charAt(position) == '-' && position + 1 < text.length()
+				&& !Character.isWhitespace(text.charAt(position + 1))) {
+			negated = true;
+			structured = true;
+			position++;
+		}
+		int start = position;
+		Predicate<PersistentNode> term = keyedTerm();
+		if (term == null && position == start) {
+			term = Conditions.contentContains(value());
+		} else if (term == null && negated) {
+			throw error("Scope can't be negated");
+		}
+		return negated ? term.negate() : term;
+	}
+
+	/**
+	 * Warunek postaci {@code klucz:wartosc} lub {@code glosy operator wartosc}. Gdy w biezacym
+	 * miejscu nie ma takiego warunku, zwraca {@code null}, nie przesuwajac pozycji.
+	 */
+	private Predicate<PersistentNode> keyedTerm() {
+		int start = position;
+		while (position < text.length() && Character.isLetter(text.charAt(position))) {
+			position++;
+		}
+		String key = text.substring(start, position).toLowerCase(Locale.ROOT);
+		if (position < text.length() && text.charAt(position) == ':' && isKey(key)) {
+			position++;
+			structured = true;
+			return keyed(key, value());
+		}
+		if (position < text.length() && "<>=".indexOf(text.charAt(position)) >= 0 && votes(key) != null) {
+			structured = true;
+			return comparison(votes(key));
+		}
+		position = start;
+		return null;
+	}
+
+	private static boolean isKey(String key) {
+		switch (key) {
+		case "type":
+		case "author":
+		case "content":
+		case "due":
+		case "has":
+		case "under":
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	private Predicate<PersistentNode> keyed(String key, String value) {
+		switch (key) {
+		case "type":
+			return Conditions.type(type(value));
+		case "author":
+			return Conditions.author(value);
+		case "content":
+			return Conditions.contentContains(value);
+		case "due":
+			return due(value);
+		case "has":
+			return has(value);
+		case "under":
+			if (scope != null) {
+				throw error("Scope given twice");
+			}
+			try {
+				scope = Long.parseLong(value);
+			} catch (NumberFormatException e) {
+				throw error("Invalid node id '" + value + "'");
+			}
+			return null;
+		default:
+			throw new IllegalStateException(key);
+		}
+	}
+
+	private Class<? extends Node> type(String value) {
+		switch (value.toLowerCase(Locale.ROOT)) {
+		case "comment":
+			return Comment.class;
+		case "task":
+			return Task.class;
+		case "survey":
+			return Survey.class;
+		case "suggestion":
+			return Suggestion.class;
+		default:
+			throw error("Unknown node type '" + value + "'");
+		}
+	}
+
+	private Predicate<PersistentNode> has(String value) {
+		switch (value.toLowerCase(Locale.ROOT)) {
+		case "pending":
+			return Conditions.hasPendingSuggestion();
+		case "accepted":
+			return Conditions.hasAcceptedSuggestion();
+		case "rejected":
+			return Conditions.hasRejectedSuggestion();
+		case "replies":
+			return Conditions.hasReplies();
+		default:
+			throw error("Unknown property '" + value + "'");
+		}
+	}
+
+	/**
+	 * Przedzial dni {@code od..do} (wlacznie z oboma dniami) albo pojedynczy dzien.
+	 */
+	private Predicate<PersistentNode> due(String value) {
+		int separator = value.indexOf("..");
+		if (separator < 0) {
+			Date day = date(value);
+			return Conditions.dueBetween(day, nextDay(day));
+		}
+		String from = value.substring(0, separator);
+		String to = value.substring(separator + 2);
+		return Conditions.dueBetween(from.isEmpty() ? null : date(from), to.isEmpty() ? null : nextDay(date(to)));
+	}
+
+	private Date date(String value) {
+		SimpleDateFormat format = new SimpleDateFormat(DATE_FORMAT);
+		format.setLenient(false);
+		ParsePosition parsed = new ParsePosition(0);
+		Date date = format.parse(value, parsed);
+		if (date == null || parsed.getIndex() != value.length()) {
+			throw error("Invalid date '" + value + "' (expected " + DATE_FORMAT + ")");
+		}
+		return date;
+	}
+
+	private static Date nextDay(Date day) {
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTime(day);
+		calendar.add(Calendar.DAY_OF_MONTH, 1);
+		return calendar.getTime();
+	}
+
+	private static ToIntFunction<PersistentNode> votes(String name) {
+		switch (name.toLowerCase(Locale.ROOT)) {
+		case "likes":
+			return PersistentNode::getLikes;
+		case "dislikes":
+			return PersistentNode::getDislikes;
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Porownanie liczby glosow z liczba lub z liczba glosow drugiego rodzaju.
+	 */
+	private Predicate<PersistentNode> comparison(ToIntFunction<PersistentNode> left) {
+		String operator = operator();
+		int start = position;
+		while (position < text.length() && !Character.isWhitespace(text.charAt(position))) {
+			position++;
+		}
+		String operand = text.substring(start, position);
+
+		ToIntFunction<PersistentNode> right = votes(operand);
+		if (right != null) {
+			switch (operator) {
+			case "<":
+				return node -> left.applyAsInt(node) < right.applyAsInt(node);
+			case "<=":
+				return node -> left.applyAsInt(node) <= right.applyAsInt(node);
+			case "=":
+				return node -> left.applyAsInt(node) == right.applyAsInt(node);
+			case ">=":
+				return node -> left.applyAsInt(node) >= right.applyAsInt(node);
+			default:
+				return node -> left.applyAsInt(node) > right.applyAsInt(node);
+			}
+		}
+
+		int value;
+		try {
+			value = Integer.parseInt(operand);
+		} catch (NumberFormatException e) {
+			throw error("Expected a number or votes instead of '" + operand + "'");
+		}
+		switch (operator) {
+		case "<":
+			return value == Integer.MIN_VALUE ? node -> false : Conditions.votes(left, Integer.MIN_VALUE, value - 1);
+		case "<=":
+			return Conditions.votes(left, Integer.MIN_VALUE, value);
+		case "=":
+			return Conditions.votes(left, value, value);
+		case ">=":
+			return Conditions.votes(left, value, Integer.MAX_VALUE);
+		default:
+			return value == Integer.MAX_VALUE ? node -> false : Conditions.votes(left, value + 1, Integer.MAX_VALUE);
+		}
+	}
+
+	private String operator() {
+		int start = position;
+		char first = text.charAt(position++);
+		if (first != '=' && position < text.length() && text.charAt(position) == '=') {
+			position++;
+		}
+		return text.substring(start, position);
+	}
+
+	/**
+	 * Wartosc - napis w cudzyslowie albo ciag znakow do najblizszego bialego znaku.
+	 */
+	private String value() {
+		if (position < text.length() && text.charAt(position) == '"') {
+			int end = text.indexOf('"', position + 1);
+			if (end < 0) {
+				throw error("Unterminated quote");
+			}
+			String value = text.substring(position + 1, end);
+			position = end + 1;
+			return value;
+		}
+		int start = position;
+		while (position < text.length() && !Character.isWhitespace(text.charAt(position))) {
+			position++;
+		}
+		if (start == position) {
+			throw error("Expected a value");
+		}
+		return text.substring(start, position);
+	}
+
+	/**
+	 * Czy w biezacym miejscu jest slowo kluczowe {@code keyword} (oddzielone bialymi znakami).
+	 */
+	private boolean lookingAt(String keyword) {
+		int end = position + keyword.length();
+		return text.startsWith(keyword, position) && (end == text.length() || Character.isWhitespace(text.charAt(end)));
+	}
+
+	private boolean keyword(String keyword) {
+		skipSpaces();
+		if (lookingAt(keyword)) {
+			position += keyword.length();
+			return true;
+		}
+		return false;
+	}
+
+	private void skipSpaces() {
+		while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+			position++;
+		}
+	}
+
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException(message + " at position " + position + " of query: " + text);
+	}
+}
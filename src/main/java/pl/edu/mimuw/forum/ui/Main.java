@@ -12,6 +12,7 @@ import javafx.stage.Stage;
 import pl.edu.mimuw.forum.ui.controllers.ApplicationController;
 import pl.edu.mimuw.forum.ui.helpers.DialogHelper;
 import pl.edu.mimuw.forum.ui.helpers.TextInputControlBindingWorkaround;
+import pl.edu.mimuw.forum.ui.tree.ExpansionPolicy;
 
 public class Main extends Application {
 	@Override
@@ -24,6 +25,16 @@ public class Main extends Application {
 
 		TextInputControlBindingWorkaround.DeactivateUndoRedoShortcuts();
 
+		// Wezly rozwijane po otwarciu forum, np. --expand=depth:3 (zob. ExpansionPolicy#parse)
+		String expansion = getParameters().getNamed().get("expand");
+		if (expansion != null) {
+			try {
+				ExpansionPolicy.setDefault(ExpansionPolicy.parse(expansion));
+			} catch (IllegalArgumentException e) {
+				DialogHelper.ShowError("Invalid --expand parameter.", e);
+			}
+		}
+
 		FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/application.fxml"));
 
 		Parent root = null;
@@ -19,6 +19,7 @@ public class MainPaneBindings {
 	private final BooleanProperty redoAvailable;
 	private final BooleanProperty nodeAdditionAvailable;
 	private final BooleanProperty nodeRemovalAvailable;
+	private final BooleanProperty loading;
 
 	public MainPaneBindings() {
 		this.file = new SimpleObjectProperty<>();
@@ -27,6 +28,7 @@ public class MainPaneBindings {
 		this.redoAvailable = new SimpleBooleanProperty();
 		this.nodeAdditionAvailable = new SimpleBooleanProperty();
 		this.nodeRemovalAvailable = new SimpleBooleanProperty();
+		this.loading = new SimpleBooleanProperty();
 	}
 
 	public ObservableBooleanValue hasChanges() {
@@ -49,6 +51,10 @@ public class MainPaneBindings {
 		return nodeRemovalAvailable;
 	}
 
+	public ObservableBooleanValue loading() {
+		return loading;
+	}
+
 	public ObservableStringValue fileName() {
 		return Bindings.createStringBinding(() -> file.get() == null ? "Untitled" : file.get().getName(), file);
 	}
@@ -81,4 +87,8 @@ public class MainPaneBindings {
 		return nodeRemovalAvailable;
 	}
 
+	public BooleanProperty loadingProperty() {
+		return loading;
+	}
+
 }
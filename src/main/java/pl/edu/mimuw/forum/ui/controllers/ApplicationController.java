@@ -15,6 +15,8 @@ import javafx.beans.binding.Bindings;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.value.ObservableBooleanValue;
+import javafx.concurrent.Task;
+import javafx.concurrent.WorkerStateEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
@@ -25,14 +27,20 @@ import javafx.scene.control.*;
 import javafx.scene.control.Dialog;
 import javafx.scene.control.Label;
 import javafx.scene.control.TextField;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyCodeCombination;
+import javafx.scene.input.KeyCombination;
 import javafx.scene.layout.GridPane;
 import javafx.stage.FileChooser;
 import javafx.util.Pair;
 import pl.edu.mimuw.forum.exceptions.ApplicationException;
+import pl.edu.mimuw.forum.io.ForumFormat;
+import pl.edu.mimuw.forum.io.ForumSerializer;
 import pl.edu.mimuw.forum.ui.bindings.MainPaneBindings;
 import pl.edu.mimuw.forum.ui.bindings.ToolbarBindings;
 import pl.edu.mimuw.forum.ui.helpers.AcceleratorHelper;
 import pl.edu.mimuw.forum.ui.helpers.DialogHelper;
+import pl.edu.mimuw.forum.ui.helpers.TaskHelper;
 import pl.edu.mimuw.forum.ui.models.*;
 
 import javax.swing.*;
@@ -71,6 +79,19 @@ public class ApplicationController implements Initializable {
 
 	public void postInitialize() {
 		AcceleratorHelper.SetUpAccelerators(mainPane.getScene(), bindings);
+		mainPane.getScene().getAccelerators().put(new KeyCodeCombination(KeyCode.G, KeyCombination.SHORTCUT_DOWN),
+				this::goToNode);
+		mainPane.getScene().getAccelerators().put(new KeyCodeCombination(KeyCode.I, KeyCombination.SHORTCUT_DOWN),
+				() -> getPaneController().ifPresent(MainPaneController::showReport));
+
+		// Serializator przygotowujemy w tle, by pierwszy zapis nie czekal na jego inicjalizacje
+		TaskHelper.RunInBackground("Preparing serializer", new Task<Void>() {
+			@Override
+			protected Void call() {
+				ForumSerializer.prepare();
+				return null;
+			}
+		});
 	}
 
 	/**
@@ -166,6 +187,25 @@ public class ApplicationController implements Initializable {
 		addView(view, controller);
 	}
 
+	/**
+	 * Pokazuje postep wczytywania pliku w naglowku zakladki i zamyka zakladke,
+	 * jesli wczytywanie sie nie powiedzie.
+	 */
+	private void trackLoading(Tab tab, MainPaneController controller) {
+		controller.getLoadingTask().ifPresent(task -> {
+			ProgressIndicator indicator = new ProgressIndicator();
+			indicator.progressProperty().bind(task.progressProperty());
+			indicator.setPrefSize(16, 16);
+			tab.graphicProperty().bind(Bindings.when(controller.getPaneBindings().loading())
+					.then((Node) indicator).otherwise((Node) null));
+
+			task.addEventHandler(WorkerStateEvent.WORKER_STATE_FAILED, evt -> {
+				tabPane.getTabs().remove(tab);
+				DialogHelper.ShowError("Error opening the file.", task.getException());
+			});
+		});
+	}
+
 	/**
 	 * Zapisuje stan forum z wybranej zakladki do pliku.
 	 */
@@ -184,7 +224,7 @@ public class ApplicationController implements Initializable {
 							return;
 						}
 						
-						fileProperty.set(file);
+						fileProperty.set(withSelectedExtension(fileChooser, file));
 					}
 					
 					
@@ -232,6 +272,20 @@ public class ApplicationController implements Initializable {
 				.ifPresent(controller -> tryExecute("Error redoing the command.", controller::deleteNode)));
 	}
 
+	/**
+	 * Pyta o identyfikator wezla i zaznacza ten wezel w drzewie wybranej zakladki.
+	 */
+	private void goToNode() {
+		getPaneController().ifPresent(controller -> DialogHelper.ShowTextInput("Go to node", "Node id:")
+				.ifPresent(text -> tryExecute("Error selecting the node.", () -> {
+					try {
+						controller.goTo(Long.parseLong(text.trim()));
+					} catch (NumberFormatException e) {
+						throw new ApplicationException("Not a node id: " + text + ".", e);
+					}
+				})));
+	}
+
 	private boolean tryExecute(String message, Action action) {
 		try {
 			action.execute();
@@ -256,6 +310,7 @@ public class ApplicationController implements Initializable {
 						() -> new Tooltip(
 								Optional.ofNullable(paneBindings.file().get()).map(File::getAbsolutePath).orElse("")),
 						paneBindings.file()));
+		tab.setOnClosed(evt -> controller.close());
 		tab.setOnCloseRequest(evt -> {
 			/*
 			 * Obsluga zamkniecia zakladki w przypadku, gdy sa na niej niezapisane zmiany
@@ -267,6 +322,7 @@ public class ApplicationController implements Initializable {
 					save();
 					break;
 				case NO:
+					controller.discardRecovery();
 					break;
 				case CANCEL_CLOSE:
 				default:
@@ -285,6 +341,8 @@ public class ApplicationController implements Initializable {
 		Tab tab = createTab(view, controller);
 		tabPane.getTabs().add(tab);
 		tabPane.getSelectionModel().select(tab);
+
+		trackLoading(tab, controller);
 	}
 
 	private Dialog<NodeViewModel> createAddDialog() throws ApplicationException {
@@ -369,8 +427,23 @@ public class ApplicationController implements Initializable {
 	}
 
 	private void setUpFileChooser(FileChooser fileChooser) {
-		fileChooser.setTitle("Select an XML file");
-		fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("XML file (*.xml)", "*.xml"));
+		fileChooser.setTitle("Select a forum file");
+		for (ForumFormat format : ForumFormat.values()) {
+			fileChooser.getExtensionFilters()
+					.add(new FileChooser.ExtensionFilter(format.getDescription(), "*." + format.getExtension()));
+		}
+	}
+
+	/**
+	 * Dopisuje do nazwy pliku rozszerzenie wybranego w oknie dialogowym formatu,
+	 * jesli uzytkownik go nie podal (format zapisu wynika z rozszerzenia).
+	 */
+	private File withSelectedExtension(FileChooser fileChooser, File file) {
+		FileChooser.ExtensionFilter filter = fileChooser.getSelectedExtensionFilter();
+		if (filter == null || Arrays.stream(ForumFormat.values()).anyMatch(format -> format.matches(file))) {
+			return file;
+		}
+		return new File(file.getPath() + filter.getExtensions().get(0).substring(1));
 	}
 
 	private void when(ObservableBooleanValue condition, Action action) {
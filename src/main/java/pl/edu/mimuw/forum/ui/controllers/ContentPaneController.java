@@ -1,12 +1,16 @@
 package pl.edu.mimuw.forum.ui.controllers;
 
 import java.net.URL;
+import java.util.Collections;
+import java.util.List;
 import java.util.ResourceBundle;
+import java.util.function.Function;
 
 import javafx.beans.property.StringProperty;
 import javafx.fxml.FXML;
 import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
+import pl.edu.mimuw.forum.ui.helpers.CompletionHelper;
 import pl.edu.mimuw.forum.ui.models.NodeViewModel;
 
 public class ContentPaneController extends BasePaneController {
@@ -18,6 +22,21 @@ public class ContentPaneController extends BasePaneController {
 
 	@FXML
 	private TextArea commentField;
+
+	/**
+	 * Podpowiedzi nazw autorow dla wpisanego poczatku nazwy.
+	 */
+	private Function<String, List<String>> authorCompletions = prefix -> Collections.emptyList();
+
+	@Override
+	public void initialize(URL location, ResourceBundle resources) {
+		super.initialize(location, resources);
+		CompletionHelper.CompleteText(userField, prefix -> authorCompletions.apply(prefix));
+	}
+
+	public void setAuthorCompletions(Function<String, List<String>> authorCompletions) {
+		this.authorCompletions = authorCompletions;
+	}
 	
 	public void setModel(NodeViewModel model) {
 		if (this.model != null) {
@@ -35,19 +54,6 @@ public class ContentPaneController extends BasePaneController {
 		setHasModel(this.model != null);
 	}
 	
-	@Override
-	public void initialize(URL location, ResourceBundle resources) {
-		super.initialize(location, resources);
-		
-		userProperty().addListener((observable, oldValue, newValue) -> {
-			System.out.println("Changing user name: " + oldValue + "->" + newValue);
-		});
-		
-		commentProperty().addListener((observable, oldValue, newValue) -> {
-			System.out.println("Changing comment: " + oldValue + "->" + newValue);
-		});
-	}
-	
 	public StringProperty userProperty() {
 		return userField.textProperty();
 	}
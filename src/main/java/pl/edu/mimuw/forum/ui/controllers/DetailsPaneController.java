@@ -1,7 +1,9 @@
 package pl.edu.mimuw.forum.ui.controllers;
 
 import java.net.URL;
+import java.util.List;
 import java.util.ResourceBundle;
+import java.util.function.Function;
 
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
@@ -47,6 +49,13 @@ public class DetailsPaneController implements Initializable {
 		}
 	}
 	
+	/**
+	 * Ustawia podpowiedzi nazw autorow w polu autora.
+	 */
+	public void setAuthorCompletions(Function<String, List<String>> authorCompletions) {
+		contentController.setAuthorCompletions(authorCompletions);
+	}
+
 	public void present(NodeViewModel model) {
 		contentController.setModel(model);
 	}
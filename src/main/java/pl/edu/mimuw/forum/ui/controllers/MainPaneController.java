@@ -3,35 +3,76 @@ package pl.edu.mimuw.forum.ui.controllers;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
-import com.thoughtworks.xstream.io.xml.StaxDriver;
+import javafx.animation.Animation;
+import javafx.animation.AnimationTimer;
+import javafx.animation.KeyFrame;
+import javafx.animation.PauseTransition;
+import javafx.animation.Timeline;
+import javafx.application.Platform;
 import javafx.beans.binding.Bindings;
 import javafx.beans.binding.BooleanBinding;
+import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
 import javafx.scene.Node;
+import javafx.scene.Parent;
+import javafx.scene.control.ButtonType;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.TextField;
 import javafx.scene.control.TreeItem;
 import javafx.scene.control.TreeView;
-import pl.edu.mimuw.forum.data.Container;
+import javafx.util.Duration;
+import pl.edu.mimuw.forum.analytics.ForumReport;
+import pl.edu.mimuw.forum.analytics.Histogram;
+import pl.edu.mimuw.forum.data.AuthorNames;
 import pl.edu.mimuw.forum.data.Comment;
+import pl.edu.mimuw.forum.data.ContentIndex;
+import pl.edu.mimuw.forum.data.DueDateIndex;
+import pl.edu.mimuw.forum.data.LongMap;
+import pl.edu.mimuw.forum.data.PersistentNode;
+import pl.edu.mimuw.forum.data.SubtreeStats;
 import pl.edu.mimuw.forum.data.Suggestion;
 import pl.edu.mimuw.forum.data.Survey;
-import pl.edu.mimuw.forum.data.Task;
+import pl.edu.mimuw.forum.data.VersionedForum;
 import pl.edu.mimuw.forum.example.Dummy;
 import pl.edu.mimuw.forum.exceptions.ApplicationException;
+import pl.edu.mimuw.forum.io.ForumFiles;
+import pl.edu.mimuw.forum.io.ForumFormat;
+import pl.edu.mimuw.forum.io.ForumJournal;
+import pl.edu.mimuw.forum.io.ForumReader;
+import pl.edu.mimuw.forum.io.MappedForumFile;
+import pl.edu.mimuw.forum.io.PackingListener;
+import pl.edu.mimuw.forum.io.PersistentNodes;
+import pl.edu.mimuw.forum.io.ProgressInputStream;
+import pl.edu.mimuw.forum.query.Query;
 import pl.edu.mimuw.forum.ui.bindings.MainPaneBindings;
+import pl.edu.mimuw.forum.ui.helpers.CompletionHelper;
 import pl.edu.mimuw.forum.ui.helpers.DialogHelper;
+import pl.edu.mimuw.forum.ui.helpers.TaskHelper;
 import pl.edu.mimuw.forum.ui.models.CommentViewModel;
 import pl.edu.mimuw.forum.ui.models.NodeViewModel;
+import pl.edu.mimuw.forum.ui.models.TaskViewModel;
+import pl.edu.mimuw.forum.ui.models.ViewModelNodes;
+import pl.edu.mimuw.forum.ui.tree.ExpansionPolicy;
 import pl.edu.mimuw.forum.ui.tree.ForumTreeItem;
+import pl.edu.mimuw.forum.ui.tree.TreeFilter;
 import pl.edu.mimuw.forum.ui.tree.TreeLabel;
 
 
 import java.io.*;
-import com.thoughtworks.xstream.XStream;
-import com.thoughtworks.xstream.io.xml.DomDriver;
 import sun.misc.JavaIOFileDescriptorAccess;
 
 /**
@@ -47,6 +88,16 @@ public class MainPaneController implements Initializable {
 	 */
 	private NodeViewModel document;
 
+	/**
+	 * Utworzone elementy drzewa widoku (a przez nie modele wezlow) wedlug identyfikatora wezla.
+	 */
+	private final LongMap<ForumTreeItem> itemsById = new LongMap<>();
+
+	/**
+	 * Okresla, ktore wezly sa rozwijane po otwarciu forum.
+	 */
+	private final ExpansionPolicy expansionPolicy = ExpansionPolicy.getDefault();
+
 	/**
 	 * Wiazania stosowane do komunikacji z {@link pl.edu.mimuw.forum.ui.controllers.ApplicationController }.
 	 */
@@ -64,6 +115,244 @@ public class MainPaneController implements Initializable {
 	@FXML
 	private DetailsPaneController detailsController;
 
+	/**
+	 * Panel z polami do edycji wybranego wezla (nieaktywny w trakcie wczytywania pliku).
+	 */
+	@FXML
+	private Parent details;
+
+	/**
+	 * Budzet czasu na klatke przeznaczony na dodawanie wczytanych watkow do drzewa.
+	 * Polowa z 16 ms pozostawia czas na uklad i rysowanie sceny.
+	 */
+	private static final long FRAME_BUDGET = TimeUnit.MILLISECONDS.toNanos(8);
+
+	/**
+	 * Zadanie wczytujace plik ({@code null}, gdy nic nie jest wczytywane).
+	 */
+	private Task<NodeViewModel> loadingTask;
+
+	/**
+	 * Watki najwyzszego poziomu przeczytane w tle i oczekujace na dodanie do drzewa.
+	 */
+	private final Queue<NodeViewModel> pendingThreads = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Kompletny korzen forum, dostepny po przeczytaniu calego pliku.
+	 */
+	private NodeViewModel loadedRoot;
+
+	private final AnimationTimer threadAppender = new AnimationTimer() {
+		@Override
+		public void handle(long now) {
+			appendPendingThreads();
+		}
+	};
+
+	/**
+	 * Wykonawca zapisow - zapisy wykonywane sa w kolejnosci zlecenia, wiec starsza migawka
+	 * nigdy nie nadpisze nowszej.
+	 */
+	private static final ExecutorService SAVE_EXECUTOR = TaskHelper.CreateSerialExecutor("Saving");
+
+	/**
+	 * Dziennik zmian pliku forum ({@code null}, gdy nastepny zapis musi zapisac cale forum,
+	 * np. forum nie zostalo jeszcze zapisane albo dopisanie do dziennika sie nie powiodlo).
+	 * Ustawiany takze przez zadanie wczytujace plik.
+	 */
+	private volatile ForumJournal journal;
+
+	/**
+	 * Niezmienne wersje forum - zapisy czytaja migawke forum, ktore w tym czasie moze byc dalej
+	 * edytowane. Uaktualniane wraz z dziennikiem zmian (zob. {@link #createViewNode}).
+	 */
+	private VersionedForum versions;
+
+	/**
+	 * Zadania forum wedlug terminu (uaktualniane wraz z {@link #versions}).
+	 */
+	private DueDateIndex dueDates;
+
+	/**
+	 * Indeksy tresci i autorow postow (uaktualniane wraz z {@link #versions}). Tworzone sa w tle przy
+	 * pierwszym wyszukiwaniu lub podpowiedzi (zob. {@link #getTextIndexes()}) - do tego czasu
+	 * {@code null}.
+	 */
+	private TextIndexes textIndexes;
+
+	/**
+	 * Zadanie tworzace indeksy tresci i autorow ({@code null}, gdy zadne nie trwa).
+	 */
+	private Task<TextIndexes> textIndexTask;
+
+	/**
+	 * Zmiany forum wprowadzone w trakcie tworzenia indeksow tresci i autorow - indeksy tworzone sa
+	 * z wczesniejszej wersji forum, wiec zmiany stosowane sa do nich po utworzeniu.
+	 */
+	private final List<Consumer<TextIndexes>> pendingIndexChanges = new ArrayList<>();
+
+	/**
+	 * Wersje forum i indeks zadan tworzone w tle po wczytaniu pliku (zob. {@link #useIndexes}).
+	 * Pierwsza wersja forum nie kopiuje drzewa (zob. {@link VersionedForum}), a indeks zadan
+	 * przechowuje jedynie zadania.
+	 */
+	private static final class ForumIndexes {
+		final VersionedForum versions;
+		final DueDateIndex dueDates;
+
+		ForumIndexes(pl.edu.mimuw.forum.data.Node root) {
+			versions = new VersionedForum(root);
+			dueDates = DueDateIndex.of(versions.snapshot());
+		}
+	}
+
+	/**
+	 * Posty forum wedlug slow tresci i autorzy postow (zob. {@link #textIndexes}).
+	 */
+	private static final class TextIndexes {
+		final ContentIndex contents;
+		final AuthorNames authors;
+
+		TextIndexes(PersistentNode root) {
+			contents = ContentIndex.of(root);
+			authors = AuthorNames.of(root);
+		}
+	}
+
+	/**
+	 * Elementy drzewa oczekujace na podsumowanie poddrzewa wraz z wezlami wersji forum, dla ktorych
+	 * zostanie obliczone (zob. {@link #requestStats}).
+	 */
+	private final Map<TreeItem<NodeViewModel>, PersistentNode> pendingStats = new LinkedHashMap<>();
+
+	/**
+	 * Zadanie obliczajace w tle podsumowania poddrzew ({@code null}, gdy zadne nie trwa).
+	 */
+	private Task<List<SubtreeStats>> statsTask;
+
+	/**
+	 * Elementy utworzone od ostatniego zlecenia podsumowan - element otrzymuje rodzica dopiero po
+	 * utworzeniu, wiec podsumowania zlecane sa pozniej (zob. {@link #requestNewStats()}).
+	 */
+	private final List<ForumTreeItem> newItems = new ArrayList<>();
+
+	/**
+	 * Liczba wynikow wyszukiwania pokazywanych pod polem wyszukiwania.
+	 */
+	private static final int SEARCH_RESULTS = 50;
+
+	/**
+	 * Liczba podpowiedzi pokazywanych przy polach wyszukiwania, filtra i autora.
+	 */
+	private static final int COMPLETIONS = 8;
+
+	@FXML
+	private TextField searchField;
+
+	/**
+	 * Posty pasujace do tekstu z pola wyszukiwania - wyniki wyszukiwania pelnotekstowego
+	 * (zob. {@link ContentIndex#search}), od najlepiej dopasowanych, albo zapytania
+	 * (zob. {@link Query#parse}), w kolejnosci dokumentu. Widoczne, gdy pole nie jest puste.
+	 */
+	@FXML
+	private ListView<PersistentNode> searchResults;
+
+	/**
+	 * Odracza odswiezenie wynikow wyszukiwania po zmianie tekstu wyszukiwania, tresci postu lub
+	 * dzieci wezla - zapytania sprawdzaja cale forum, wiec nie sa powtarzane przy kazdym wpisanym
+	 * znaku ani kazdej zmianie.
+	 */
+	private final PauseTransition searchRefreshTimer = new PauseTransition(Duration.millis(300));
+
+	/**
+	 * Zadanie wyszukujace w tle posty dla tekstu z pola wyszukiwania ({@code null}, gdy zadne nie trwa).
+	 * Zadanie jest anulowane, gdy wyniki zostana odswiezone przed jego zakonczeniem.
+	 */
+	private Task<List<PersistentNode>> searchTask;
+
+	/**
+	 * Filtr drzewa - zapytanie (zob. {@link Query#parse}, zakres {@code under:} jest pomijany).
+	 * Drzewo pokazuje jedynie pasujace wezly i ich przodkow. Filtr wyznaczany jest przy zmianie
+	 * jego tekstu - posty dodane pozniej sa widoczne, a edycja postu go nie ukrywa.
+	 */
+	@FXML
+	private TextField filterField;
+
+	/**
+	 * Aktualnie zastosowany filtr drzewa ({@code null}, gdy drzewo nie jest filtrowane).
+	 */
+	private TreeFilter treeFilter;
+
+	/**
+	 * Zadanie wyznaczajace filtr w tle ({@code null}, gdy zadne nie trwa). Zadanie jest anulowane,
+	 * gdy filtr zmieni sie przed jego zakonczeniem.
+	 */
+	private Task<TreeFilter> filterTask;
+
+	/**
+	 * Liczba pierwszych pasujacych wezlow, ktorych przodkowie sa rozwijani po zastosowaniu filtra.
+	 */
+	private static final int FILTER_EXPANDED_MATCHES = 100;
+
+
+	/**
+	 * Liczba zadan pokazywanych w panelu najblizszych zadan.
+	 */
+	private static final int UPCOMING_TASKS = 20;
+
+	/**
+	 * Najblizsze zadania (od biezacej chwili), odswiezane przy zmianach zadan i co minute.
+	 */
+	@FXML
+	private ListView<PersistentNode> upcomingTasks;
+
+	/**
+	 * Wezly zadan z panelu najblizszych zadan wedlug identyfikatora. Indeks zadan przechowuje jedynie
+	 * identyfikatory - brakujace wezly wyszukiwane sa w tle (zob. {@link #refreshUpcomingTasks()}).
+	 */
+	private LongMap<PersistentNode> upcomingTaskNodes = new LongMap<>();
+
+	/**
+	 * Zadanie wyszukujace w tle wezly najblizszych zadan ({@code null}, gdy zadne nie trwa).
+	 */
+	private Task<LongMap<PersistentNode>> upcomingTasksTask;
+
+	private final Timeline upcomingTasksTimer = new Timeline(
+			new KeyFrame(Duration.minutes(1), evt -> refreshUpcomingTasks()));
+
+	/**
+	 * Format terminow w panelu najblizszych zadan (jak w polu terminu zadania).
+	 */
+	private final SimpleDateFormat dueDateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+
+	/**
+	 * Zadanie obliczajace podsumowanie forum ({@code null}, gdy zadne nie trwa, zob. {@link #showReport()}).
+	 */
+	private Task<ForumReport> reportTask;
+
+	/**
+	 * Liczba pierwszych wartosci histogramow pokazywanych w podsumowaniu forum.
+	 */
+	private static final int REPORT_HISTOGRAM_VALUES = 12;
+
+	/**
+	 * Zmiany wprowadzone od ostatniego zapisu, w kolejnosci ich wykonania.
+	 */
+	private final List<ForumJournal.Entry> pendingChanges = new ArrayList<>();
+
+	/**
+	 * Czas bez zmian, po ktorym forum zapisywane jest do pliku odzyskiwania (zob. {@link #autosave()}).
+	 * Kazda zmiana odracza zapis, wiec szybkie pisanie nie powoduje kolejnych zapisow.
+	 */
+	private static final Duration AUTOSAVE_DELAY = Duration.seconds(2);
+
+	private final PauseTransition autosaveTimer = new PauseTransition(AUTOSAVE_DELAY);
+
+	/**
+	 * Czy zapis do pliku odzyskiwania jest w toku.
+	 */
+	private boolean autosaving;
+
 	private Stack undoList;
 	private Stack redoList;
 
@@ -74,16 +363,17 @@ public class MainPaneController implements Initializable {
 	@Override
 	public void initialize(URL location, ResourceBundle resources) {
 		BooleanBinding nodeSelectedBinding = Bindings.isNotNull(treePane.getSelectionModel().selectedItemProperty());
-		bindings.nodeAdditionAvailableProperty().bind(nodeSelectedBinding);
+		BooleanBinding editableBinding = nodeSelectedBinding.and(bindings.loadingProperty().not());
+		bindings.nodeAdditionAvailableProperty().bind(editableBinding);
 		bindings.nodeRemovaleAvailableProperty()
-				.bind(nodeSelectedBinding.and(
+				.bind(editableBinding.and(
 						Bindings.createBooleanBinding(() -> getCurrentTreeItem().orElse(null) != treePane.getRoot(),
 								treePane.rootProperty(), nodeSelectedBinding)));
 
-		bindings.hasChangesProperty().set(true);        // TODO Nalezy ustawic na true w przypadku, gdy w widoku sa zmiany do
-		// zapisania i false wpp, w odpowiednim miejscu kontrolera (niekoniecznie tutaj)
-		// Spowoduje to dodanie badz usuniecie znaku '*' z tytulu zakladki w ktorej
-		// otwarty jest plik - '*' oznacza niezapisane zmiany
+		// Znak '*' w tytule zakladki (niezapisane zmiany) ustawiany jest przy kazdej zmianie modelu
+		// (zob. recordChange) i zdejmowany przy zapisie
+		autosaveTimer.setOnFinished(evt -> autosave());
+
 		bindings.undoAvailableProperty().set(false);
 		bindings.redoAvailableProperty().set(false);        // Podobnie z undo i redo
 	}
@@ -92,71 +382,526 @@ public class MainPaneController implements Initializable {
 		return bindings;
 	}
 
-	private XStream setupXStream() {
-		XStream xstream = new XStream();
-		xstream.autodetectAnnotations(true);
-		xstream.alias("Forum", Container.class);
-		xstream.addImplicitCollection(pl.edu.mimuw.forum.data.Node.class, "children");
-		xstream.addImplicitCollection(Container.class, "children");
-	return xstream;
-	}
-
 	/**
 	 * Otwiera plik z zapisem forum i tworzy reprezentacje graficzna wezlow forum.
+	 * Plik czytany jest w tle (zob. {@link #getLoadingTask()}), a watki najwyzszego poziomu
+	 * pojawiaja sie w drzewie w miare ich wczytywania.
 	 *
 	 * @param file
 	 * @return
 	 * @throws ApplicationException
 	 */
 	public Node open(File file) throws ApplicationException {
-		if (file != null) {
-			try {
-				XStream xstream = setupXStream();
-				Reader rdr = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
-				Container forum = (Container) xstream.fromXML(rdr);
-				document = new NodeViewModel(forum.getRoot());
-				//document = Dummy.Create().getModel();
-			} catch (java.io.IOException e) {
-				e.printStackTrace();
-			}
-		} else {
-			document = new CommentViewModel("Welcome to a new forum", "Admin");
-		}
+		Node view = openInView();
+
 		/** Dzieki temu kontroler aplikacji bedzie mogl wyswietlic nazwe pliku jako tytul zakladki.
 		 * Obsluga znajduje sie w {@link pl.edu.mimuw.forum.ui.controller.ApplicationController#createTab }
 		 */
 		getPaneBindings().fileProperty().set(file);
 		bindings.hasChangesProperty().set(false);
-		return openInView(document);
+
+		if (file != null) {
+			startLoading(file, recoverySource(file));
+		} else {
+			NodeViewModel welcome = new CommentViewModel("Welcome to a new forum", "Admin");
+			useIndexes(new ForumIndexes(welcome.toNode()));
+			showDocument(welcome);
+		}
+		return view;
+	}
+
+	/**
+	 * Zadanie wczytujace plik forum lub pusty {@link Optional}, gdy wczytywanie sie zakonczylo
+	 * (badz forum nie pochodzi z pliku).
+	 */
+	public Optional<Task<NodeViewModel>> getLoadingTask() {
+		return Optional.ofNullable(loadingTask);
+	}
+
+	/**
+	 * Przerywa wczytywanie pliku (np. gdy uzytkownik zamknie zakladke).
+	 */
+	public void cancelLoading() {
+		if (loadingTask != null) {
+			loadingTask.cancel();
+		}
+	}
+
+	/**
+	 * Plik, z ktorego nalezy wczytac forum - plik odzyskiwania, jesli jest nowszy od pliku forum
+	 * i uzytkownik zechce odzyskac niezapisane zmiany. Odrzucony plik odzyskiwania jest usuwany.
+	 */
+	private File recoverySource(File file) {
+		File recovery = recoveryFileFor(file);
+		if (!recovery.exists()) {
+			return file;
+		}
+		if (recovery.lastModified() >= file.lastModified() && DialogHelper.ShowDialogYesNo("Recover",
+				"Unsaved changes to " + file.getName() + " were found. Do you want to recover them?") == ButtonType.YES) {
+			return recovery;
+		}
+		recovery.delete();
+		return file;
+	}
+
+	/**
+	 * @param source plik, z ktorego czytane jest forum (plik forum lub jego plik odzyskiwania)
+	 */
+	private void startLoading(File file, File source) {
+		bindings.loadingProperty().set(true);
+
+		boolean recovered = !source.equals(file);
+		long length = source.length();
+		ForumIndexes[] loadedIndexes = new ForumIndexes[1];
+		loadingTask = new Task<NodeViewModel>() {
+			@Override
+			protected NodeViewModel call() throws Exception {
+				try {
+					// Wpisy dziennika odnosza sie do calego drzewa, wiec gdy sa, watki nie sa pokazywane
+					// w trakcie czytania pliku
+					boolean replay = !recovered && ForumJournal.hasEntries(file);
+
+					pl.edu.mimuw.forum.data.Node root;
+					// Drzewo, z ktorego budowane sa indeksy - kompletne forum
+					pl.edu.mimuw.forum.data.Node indexed;
+					if (MappedForumFile.isIndexed(source)) {
+						// Wezly dekodowane sa z odwzorowanego pliku dopiero przy pierwszym dostepie
+						MappedForumFile mapped = MappedForumFile.open(source);
+						root = mapped.getRoot();
+						// Wersje forum i indeksy przegladaja cale forum - wezly zdekodowane na ich potrzeby
+						// nie sa zapamietywane w drzewie widoku (o ile maja trwale identyfikatory,
+						// a dziennik nie zmienia drzewa)
+						indexed = !replay && mapped.hasNodeIds() ? mapped.getTransientRoot() : root;
+					} else {
+						List<pl.edu.mimuw.forum.data.Node> threads = new ArrayList<>();
+						InputStream in = new ProgressInputStream(new FileInputStream(source),
+								read -> updateProgress(read, length));
+						// Przeczytane watki pakowane sa do magazynow kolumnowych, zanim trafia do drzewa
+						PackingListener packing = replay ? null : new PackingListener(new ForumReader.Listener() {
+							@Override
+							public void rootStarted(pl.edu.mimuw.forum.data.Node root) {
+								// Modele widoku budujemy w tle, watek JavaFX jedynie podpina je do drzewa
+								NodeViewModel model = root.getModel();
+								Platform.runLater(() -> {
+									if (!isCancelled()) {
+										showDocument(model);
+										threadAppender.start();
+									}
+								});
+							}
+
+							@Override
+							public void threadRead(pl.edu.mimuw.forum.data.Node thread) {
+								threads.add(thread);
+								pendingThreads.add(thread.getModel());
+							}
+						});
+						root = ForumFiles.read(in, packing);
+						if (packing != null) {
+							packing.finish();
+						}
+						// Czytnik nie dolacza zgloszonych watkow do korzenia - modele watkow zostaja
+						// wspoldzielone z modelem korzenia (zob. finishLoading)
+						threads.forEach(root::addChild);
+						indexed = root;
+					}
+					// Odzyskane forum rozni sie od pliku - nastepny zapis obejmie cale forum
+					journal = recovered ? null : ForumJournal.open(file, ForumFiles.checksum(file), root);
+					if (replay) {
+						// Dziennik zmienil cale wczytane drzewo - pakujemy je dopiero teraz
+						root = PackingListener.pack(root);
+						indexed = root;
+					}
+					loadedIndexes[0] = new ForumIndexes(indexed);
+					return root.getModel();
+				} catch (IOException e) {
+					throw new ApplicationException("Cannot read the forum file.", e);
+				}
+			}
+		};
+		loadingTask.setOnSucceeded(evt -> {
+			loadedRoot = loadingTask.getValue();
+			useIndexes(loadedIndexes[0]);
+			if (recovered) {
+				bindings.hasChangesProperty().set(true);
+			}
+			if (document == null) {
+				// Korzen bez dzieci - obserwator nie zostal powiadomiony
+				showDocument(loadedRoot);
+				threadAppender.start();
+			}
+		});
+		loadingTask.setOnCancelled(evt -> stopLoading());
+		loadingTask.setOnFailed(evt -> stopLoading());
+
+		TaskHelper.RunInBackground("Loading " + file.getName(), loadingTask);
+	}
+
+	/**
+	 * Wywolywana raz na klatke w trakcie wczytywania pliku. Dodaje do drzewa oczekujace watki,
+	 * dopoki nie wyczerpie sie budzet czasu na klatke, a po dodaniu wszystkich konczy wczytywanie.
+	 */
+	private void appendPendingThreads() {
+		long deadline = System.nanoTime() + FRAME_BUDGET;
+		TreeItem<NodeViewModel> root = treePane.getRoot();
+
+		NodeViewModel thread;
+		while (System.nanoTime() < deadline && (thread = pendingThreads.poll()) != null) {
+			document.getChildren().add(thread);
+			List<TreeItem<NodeViewModel>> threads = ((ForumTreeItem) root).getItems();
+			expansionPolicy.expandThread(threads.get(threads.size() - 1));
+		}
+
+		if (loadedRoot != null && pendingThreads.isEmpty()) {
+			finishLoading(loadedRoot);
+		}
+	}
+
+	/**
+	 * Zastepuje tymczasowy korzen (zob. {@link ForumReader.Listener#rootStarted}) kompletnym,
+	 * przenoszac do niego wczytane watki.
+	 */
+	private void finishLoading(NodeViewModel root) {
+		if (root != document) {
+			ForumTreeItem oldRoot = (ForumTreeItem) treePane.getRoot();
+			detach(oldRoot);
+
+			root.getChildren().setAll(document.getChildren());
+			document = root;
+
+			ForumTreeItem newRoot = createViewNode(root);
+			newRoot.adoptChildren(oldRoot);
+			newRoot.setExpanded(true);
+			treePane.setRoot(newRoot);
+		}
+		stopLoading();
+	}
+
+	private void stopLoading() {
+		if (versions == null && document != null) {
+			// Wczytywanie przerwane - mozna dalej edytowac (i zapisac) wczytane watki
+			useIndexes(new ForumIndexes(document.toNode()));
+		}
+		threadAppender.stop();
+		pendingThreads.clear();
+		loadedRoot = null;
+		loadingTask = null;
+		bindings.loadingProperty().set(false);
+
+		if (versions != null && treePane.getRoot() != null) {
+			// elementom dodanym w trakcie wczytywania brakuje podsumowan poddrzew
+			refreshStats((ForumTreeItem) treePane.getRoot());
+		}
 	}
 
 	/**
 	 * Zapisuje aktualny stan forum do pliku.
+	 * Jesli plik ma dziennik zmian (zob. {@link ForumJournal}), dopisywane sa do niego jedynie zmiany
+	 * od ostatniego zapisu. W przeciwnym razie (lub gdy dziennik urosl) zapisywane jest cale forum:
+	 * serializacja i zapis odbywaja sie w tle (zob. {@link ForumFiles#write}) - przerwany zapis
+	 * nie uszkadza pliku. Zapisywane pliki zawsze maja sume kontrolna - wiaze sie z nia dziennik.
 	 *
 	 * @throws ApplicationException
 	 */
 	public void save() throws ApplicationException {
+		File file = getPaneBindings().fileProperty().get();
 
-		try {
-			XStream xstream = setupXStream();
-			Container forum = new Container();
-			forum.setRoot(document.toNode());
-			PrintWriter pw = new PrintWriter(getPaneBindings().fileProperty().get(), "UTF-8");
-			xstream.toXML(forum, pw);
-			pw.close();
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
-		} catch (UnsupportedEncodingException e) {
-			e.printStackTrace();
+		ForumJournal target = journal;
+		if (target != null && target.getBaseFile().equals(file) && !target.needsCompaction()) {
+			saveChanges(target);
+		} else {
+			saveAll(file);
 		}
+		bindings.hasChangesProperty().set(false);
+	}
 
-		if(document != null) {
-			System.out.println("On save " + document.toNode());    //Tak tworzymy drzewo do zapisu z modelu aplikacji
+	/**
+	 * Dopisuje oczekujace zmiany do dziennika. Gdy dziennik przekroczy dopuszczalny rozmiar,
+	 * forum jest nastepnie zapisywane w calosci.
+	 */
+	private void saveChanges(ForumJournal target) {
+		if (pendingChanges.isEmpty()) {
+			return;
 		}
-		bindings.hasChangesProperty().set(false);
+		List<ForumJournal.Entry> changes = new ArrayList<>(pendingChanges);
+		pendingChanges.clear();
+
+		Task<Void> saving = new Task<Void>() {
+			@Override
+			protected Void call() throws Exception {
+				try {
+					target.append(changes);
+					Files.deleteIfExists(recoveryFileFor(target.getBaseFile()).toPath());
+				} catch (IOException e) {
+					throw new ApplicationException("Cannot write the forum journal.", e);
+				}
+				return null;
+			}
+		};
+		saving.setOnSucceeded(evt -> {
+			if (journal == target && target.needsCompaction()) {
+				saveAll(target.getBaseFile());
+			}
+		});
+		saving.setOnFailed(evt -> {
+			if (journal == target) {
+				journal = null; // dziennik moze konczyc sie niepelnym wpisem - nastepny zapis obejmie cale forum
+			}
+			bindings.hasChangesProperty().set(true);
+			DialogHelper.ShowError("Error saving the file.", saving.getException());
+		});
+		SAVE_EXECUTOR.execute(saving);
 	}
 
+	/**
+	 * Zapisuje cale forum i rozpoczyna nowy dziennik zmian. Zapisywana jest migawka forum
+	 * (zob. {@link VersionedForum}), wiec forum mozna edytowac w trakcie zapisu - zmiany trafia
+	 * do nowego dziennika.
+	 */
+	private void saveAll(File file) {
+		PersistentNode root = versions.snapshot();
+		pendingChanges.clear();
+
+		ForumJournal target = ForumJournal.create(file);
+		journal = target;
+
+		Task<Void> saving = new Task<Void>() {
+			@Override
+			protected Void call() throws Exception {
+				try {
+					target.reset(ForumFiles.write(file, root, PersistentNodes.INSTANCE, true));
+					Files.deleteIfExists(recoveryFileFor(file).toPath());
+				} catch (IOException e) {
+					throw new ApplicationException("Cannot write the forum file.", e);
+				}
+				return null;
+			}
+		};
+		saving.setOnFailed(evt -> {
+			if (journal == target) {
+				journal = null;
+			}
+			bindings.hasChangesProperty().set(true);
+			DialogHelper.ShowError("Error saving the file.", saving.getException());
+		});
+		SAVE_EXECUTOR.execute(saving);
+	}
+
+	/**
+	 * Zapisuje forum do pliku odzyskiwania (w tle), jesli ma niezapisane zmiany. Plik odzyskiwania
+	 * usuwany jest po udanym zapisie forum, a przy ponownym otwarciu pliku forum uzytkownik moze
+	 * odzyskac z niego zmiany (zob. {@link #recoverySource(File)}).
+	 * Forum bez pliku (jeszcze niezapisane) nie ma pliku odzyskiwania.
+	 */
+	private void autosave() {
+		File file = getPaneBindings().fileProperty().get();
+		if (file == null || document == null || !bindings.hasChangesProperty().get()) {
+			return;
+		}
+		if (autosaving) {
+			autosaveTimer.playFromStart(); // poprzedni zapis jeszcze trwa
+			return;
+		}
+
+		PersistentNode root = versions.snapshot();
+		File recovery = recoveryFileFor(file);
+
+		Task<Void> saving = new Task<Void>() {
+			@Override
+			protected Void call() throws Exception {
+				ForumFiles.write(recovery, root, PersistentNodes.INSTANCE, true);
+				return null;
+			}
+		};
+		// Nieudany zapis awaryjny nie przerywa pracy - kolejna zmiana ponowi probe
+		saving.setOnSucceeded(evt -> autosaving = false);
+		saving.setOnFailed(evt -> autosaving = false);
+		autosaving = true;
+		SAVE_EXECUTOR.execute(saving);
+	}
+
+	/**
+	 * Usuwa plik odzyskiwania (np. gdy uzytkownik zamyka forum, rezygnujac z zapisania zmian).
+	 */
+	public void discardRecovery() {
+		autosaveTimer.stop();
+		File file = getPaneBindings().fileProperty().get();
+		if (file != null) {
+			File recovery = recoveryFileFor(file);
+			SAVE_EXECUTOR.execute(recovery::delete); // po ewentualnym zapisie awaryjnym w toku
+		}
+	}
+
+	/**
+	 * Konczy prace z forum po zamknieciu zakladki.
+	 */
+	public void close() {
+		autosaveTimer.stop();
+		upcomingTasksTimer.stop();
+		searchRefreshTimer.stop();
+		if (searchTask != null) {
+			searchTask.cancel();
+		}
+		if (filterTask != null) {
+			filterTask.cancel();
+		}
+		stopBackgroundTasks();
+		if (reportTask != null) {
+			reportTask.cancel();
+		}
+		cancelLoading();
+	}
+
+	/**
+	 * Plik odzyskiwania obok pliku forum - w formacie binarnym, najszybszym do zapisania.
+	 */
+	private static File recoveryFileFor(File file) {
+		return new File(file.getPath() + ".recovery." + ForumFormat.BINARY.getExtension());
+	}
+
+	/**
+	 * Zapamietuje zmiane do zapisania w dzienniku. Kolejne zmiany tego samego pola
+	 * (np. wpisywanie tekstu) zastepuja sie nawzajem.
+	 */
+	private void recordChange(ForumJournal.Entry change) {
+		if (bindings.loadingProperty().get()) {
+			return; // wezly dodawane w trakcie wczytywania pliku nie sa zmianami
+		}
+		int last = pendingChanges.size() - 1;
+		if (last >= 0 && change.supersedes(pendingChanges.get(last))) {
+			pendingChanges.set(last, change);
+		} else {
+			pendingChanges.add(change);
+		}
+		bindings.hasChangesProperty().set(true);
+		autosaveTimer.playFromStart();
+	}
+
+	/**
+	 * Zaznacza w drzewie wezel o podanym identyfikatorze (rozwijajac jego przodkow) i przewija
+	 * do niego widok.
+	 */
+	public void goTo(long id) throws ApplicationException {
+		if (treeFilter != null && !treeFilter.isVisible(id)) {
+			filterField.clear(); // wezel ukryty przez filtr
+		}
+		ForumTreeItem item = itemsById.get(id);
+		if (item == null) {
+			item = createPath(id);
+		}
+		for (TreeItem<NodeViewModel> parent = item.getParent(); parent != null; parent = parent.getParent()) {
+			parent.setExpanded(true);
+		}
+		treePane.getSelectionModel().select(item);
+		treePane.scrollTo(treePane.getRow(item));
+	}
 	
+	/**
+	 * Jak {@link #goTo}, ale bledy pokazywane sa uzytkownikowi (np. przy wyborze wezla z listy).
+	 */
+	private void show(long id) {
+		try {
+			goTo(id);
+		} catch (ApplicationException e) {
+			DialogHelper.ShowError("Error going to the post.", e);
+		}
+	}
+
+	/**
+	 * Tworzy elementy drzewa na sciezce od korzenia do wezla o podanym identyfikatorze, ktory nie ma
+	 * jeszcze elementu. Wezel wyszukiwany jest w calym forum, bez tworzenia modeli
+	 * (zob. {@link NodeViewModel#peekChildren()}).
+	 */
+	private ForumTreeItem createPath(long id) throws ApplicationException {
+		ViewModelNodes nodes = ViewModelNodes.INSTANCE;
+
+		// Przeszukiwanie w glab bez rekurencji - watki moga byc bardzo glebokie. Dla kazdego
+		// poziomu sciezki pamietamy liste rodzenstwa i pozycje na niej.
+		List<List<?>> siblings = new ArrayList<>();
+		List<Integer> path = new ArrayList<>();
+		siblings.add(nodes.children(document));
+		path.add(-1);
+		while (!path.isEmpty()) {
+			int level = path.size() - 1;
+			int position = path.get(level) + 1;
+			if (position == siblings.get(level).size()) {
+				siblings.remove(level);
+				path.remove(level);
+				continue;
+			}
+			path.set(level, position);
+
+			Object node = siblings.get(level).get(position);
+			if (nodes.id(node) == id) {
+				ForumTreeItem item = (ForumTreeItem) treePane.getRoot();
+				for (int index : path) {
+					item.loadChildren();
+					item = (ForumTreeItem) item.getItems().get(index);
+				}
+				return item;
+			}
+			siblings.add(nodes.children(node));
+			path.add(-1);
+		}
+		throw new ApplicationException("There is no node with id " + id + ".");
+	}
+
+	/**
+	 * Oblicza w tle podsumowanie aktualnej wersji forum (zob. {@link ForumReport}) i pokazuje je
+	 * uzytkownikowi. Forum mozna w tym czasie edytowac.
+	 */
+	public void showReport() {
+		if (versions == null || reportTask != null) {
+			return;
+		}
+		PersistentNode root = versions.snapshot();
+		Task<ForumReport> task = new Task<ForumReport>() {
+			@Override
+			protected ForumReport call() throws Exception {
+				return ForumReport.of(root, PersistentNodes.INSTANCE);
+			}
+		};
+		task.setOnSucceeded(evt -> {
+			reportTask = null;
+			DialogHelper.ShowInformation("Forum report", describe(task.getValue()));
+		});
+		task.setOnFailed(evt -> {
+			reportTask = null;
+			DialogHelper.ShowError("Error computing the forum report.", task.getException());
+		});
+		reportTask = task;
+		TaskHelper.RunInBackground("Computing report", task);
+	}
+
+	private static String describe(ForumReport report) {
+		StringBuilder text = new StringBuilder();
+		text.append("Posts: ").append(report.getPosts()).append('\n');
+		report.getTypeCounts().forEach(
+				(type, count) -> text.append("  ").append(type.getSimpleName()).append(": ").append(count).append('\n'));
+		text.append("Survey votes: ").append(report.getLikes()).append(" likes, ").append(report.getDislikes())
+				.append(" dislikes\n");
+		text.append("Maximum depth: ").append(report.getMaxDepth()).append('\n');
+		text.append("Posts by depth: ").append(describe(report.getDepths())).append('\n');
+		text.append("Posts by number of replies: ").append(describe(report.getBranching()));
+		return text.toString();
+	}
+
+	/**
+	 * Pierwsze niezerowe wartosci histogramu (np. {@code 0: 1, 1: 25, 2: 140}).
+	 */
+	private static String describe(Histogram histogram) {
+		StringBuilder text = new StringBuilder();
+		for (int value = 0; value <= histogram.max() && value < REPORT_HISTOGRAM_VALUES; value++) {
+			if (histogram.get(value) != 0) {
+				text.append(text.length() > 0 ? ", " : "").append(value).append(": ").append(histogram.get(value));
+			}
+		}
+		if (histogram.max() >= REPORT_HISTOGRAM_VALUES) {
+			text.append(", ... (up to ").append(histogram.max()).append(')');
+		}
+		return text.toString();
+	}
+
 	/**
 	 * Cofa ostatnio wykonana operacje na forum.
 	 * @throws ApplicationException
@@ -183,8 +928,9 @@ public class MainPaneController implements Initializable {
 		if (redoList != null) {
 			redoList.clear();
 		}
-		getCurrentNode().ifPresent(currentlySelected -> {
-			currentlySelected.getChildren().add(node);		// Zmieniamy jedynie model, widok (TreeView) jest aktualizowany z poziomu
+		getCurrentTreeItem().ifPresent(currentlySelectedItem -> {
+			((ForumTreeItem) currentlySelectedItem).loadChildren(); // elementy dzieci musza odpowiadac modelom przed zmiana
+			currentlySelectedItem.getValue().getChildren().add(node);		// Zmieniamy jedynie model, widok (TreeView) jest aktualizowany z poziomu
 															// funkcji nasluchujacej na zmiany w modelu (zob. metode createViewNode ponizej)
 		});
 	}
@@ -213,7 +959,7 @@ public class MainPaneController implements Initializable {
 		});
 	}
 
-	private Node openInView(NodeViewModel document) throws ApplicationException {
+	private Node openInView() throws ApplicationException {
 		Node view = loadFXML();
 
 		treePane.setCellFactory(tv -> {
@@ -226,34 +972,79 @@ public class MainPaneController implements Initializable {
 			}
 		});
 
-		ForumTreeItem root = createViewNode(document);
-		root.addEventHandler(TreeItem.<NodeViewModel> childrenModificationEvent(), event -> {
-			//TODO Moze przydac sie do wykrywania usuwania/dodawania wezlow w drzewie (widoku)
-			if (event.wasAdded()) {
-				bindings.hasChangesProperty().set(true);
-				System.out.println("Adding to " + event.getSource());
+		details.disableProperty().bind(bindings.loadingProperty());
+
+		upcomingTasks.setCellFactory(list -> new ListCell<PersistentNode>() {
+			@Override
+			protected void updateItem(PersistentNode task, boolean empty) {
+				super.updateItem(task, empty);
+				setText(empty || task == null ? null
+						: dueDateFormat.format(task.getDueDate()) + "  " + task.getContent());
 			}
-			
-			if (event.wasRemoved()) {
-				bindings.hasChangesProperty().set(true);
-				System.out.println("Removing from " + event.getSource());
+		});
+		upcomingTasks.setOnMouseClicked(evt -> {
+			PersistentNode task = upcomingTasks.getSelectionModel().getSelectedItem();
+			if (evt.getClickCount() == 2 && task != null) {
+				show(task.getId());
 			}
 		});
+		upcomingTasksTimer.setCycleCount(Animation.INDEFINITE);
+		upcomingTasksTimer.play();
 
-		treePane.setRoot(root);
+		searchField.disableProperty().bind(bindings.loadingProperty());
+		searchField.textProperty().addListener((observable, oldValue, newValue) -> searchRefreshTimer.playFromStart());
+		searchField.setOnAction(evt -> {
+			if (searchRefreshTimer.getStatus() == Animation.Status.RUNNING) {
+				refreshSearchResults();
+			}
+			if (!searchResults.getItems().isEmpty()) {
+				show(searchResults.getItems().get(0).getId());
+			}
+		});
+		searchResults.visibleProperty().bind(searchField.textProperty().isNotEmpty());
+		searchResults.managedProperty().bind(searchResults.visibleProperty());
+		searchRefreshTimer.setOnFinished(evt -> refreshSearchResults());
 
-		for (NodeViewModel w : document.getChildren()) {
-			addToTree(w, root);
-		}
+		filterField.disableProperty().bind(bindings.loadingProperty());
+		filterField.textProperty().addListener((observable, oldValue, newValue) -> startFiltering());
 
-		expandAll(root);
+		CompletionHelper.CompleteWords(searchField, this::completeQueryWord);
+		CompletionHelper.CompleteWords(filterField, this::completeQueryWord);
+		detailsController.setAuthorCompletions(prefix -> {
+			TextIndexes indexes = getTextIndexes();
+			return indexes == null ? Collections.emptyList() : indexes.authors.complete(prefix, COMPLETIONS);
+		});
+
+		searchResults.setCellFactory(list -> new ListCell<PersistentNode>() {
+			@Override
+			protected void updateItem(PersistentNode node, boolean empty) {
+				super.updateItem(node, empty);
+				setText(empty || node == null ? null
+						: node.getContent().replace('\n', ' ') + "  (" + node.getAuthor() + ")");
+			}
+		});
+		searchResults.setOnMouseClicked(evt -> {
+			PersistentNode node = searchResults.getSelectionModel().getSelectedItem();
+			if (evt.getClickCount() == 2 && node != null) {
+				show(node.getId());
+			}
+		});
 
 		treePane.getSelectionModel().selectedItemProperty()
 				.addListener((observable, oldValue, newValue) -> onItemSelected(oldValue, newValue));
 
 		return view;
 	}
-	
+
+	private void showDocument(NodeViewModel document) {
+		this.document = document;
+
+		ForumTreeItem root = createViewNode(document);
+		treePane.setRoot(root);
+
+		expansionPolicy.expand(root);
+	}
+
 	private Node loadFXML() throws ApplicationException {
 		FXMLLoader loader = new FXMLLoader();
 		loader.setController(this);
@@ -274,33 +1065,114 @@ public class MainPaneController implements Initializable {
 		return Optional.ofNullable(treePane.getSelectionModel().getSelectedItem());
 	}
 
+	/**
+	 * Dodaje do widoku element wezla - elementy jego dzieci utworzone zostana przy rozwinieciu.
+	 */
 	private void addToTree(NodeViewModel node, ForumTreeItem parentViewNode, int position) {
-		ForumTreeItem viewNode = createViewNode(node);
-
-		List<TreeItem<NodeViewModel>> siblings = parentViewNode.getChildren();
-		siblings.add(position == -1 ? siblings.size() : position, viewNode);
+		parentViewNode.getItems().add(position, createViewNode(node));
+	}
 
-		node.getChildren().forEach(child -> addToTree(child, viewNode));
+	/**
+	 * Usuwa z widoku {@code count} kolejnych dzieci wezla, poczynajac od pozycji {@code from}
+	 * (jedna operacja na liscie dzieci zamiast przesuwania jej przy kazdym usuwanym elemencie).
+	 */
+	private void removeFromTree(ForumTreeItem parent, int from, int count) {
+		List<TreeItem<NodeViewModel>> removed = parent.getItems().subList(from, from + count);
+		removed.forEach(child -> removeListeners((ForumTreeItem) child));
+		parent.getItems().remove(from, from + count);
 	}
 
-	private void addToTree(NodeViewModel node, ForumTreeItem parentViewNode) {
-		addToTree(node, parentViewNode, -1);
+	/**
+	 * Odlacza obserwatorow od modeli poddrzewa usuwanego z widoku. Model moze wrocic
+	 * do drzewa (np. przy undo) - otrzyma wtedy nowe elementy widoku.
+	 */
+	private void removeListeners(ForumTreeItem viewNode) {
+		detach(viewNode);
+		viewNode.getItems().forEach(child -> removeListeners((ForumTreeItem) child));
 	}
 
-	private void removeFromTree(ForumTreeItem viewNode) {
+	private void detach(ForumTreeItem viewNode) {
 		viewNode.removeChildListener();
-		TreeItem<NodeViewModel> parent = viewNode.getParent();
-		if (parent != null) {
-			viewNode.getParent().getChildren().remove(viewNode);
-		} else {
-			treePane.setRoot(null);
+		viewNode.removeFieldListener();
+		if (itemsById.get(viewNode.getValue().getId()) == viewNode) {
+			itemsById.remove(viewNode.getValue().getId());
 		}
 	}
 
 	private ForumTreeItem createViewNode(NodeViewModel node) {
-		ForumTreeItem viewNode = new ForumTreeItem(node);
+		ForumTreeItem viewNode = new ForumTreeItem(node, this::createViewNode);
+		itemsById.put(node.getId(), viewNode);
+		if (versions != null && !bindings.loadingProperty().get()) {
+			if (newItems.isEmpty()) {
+				Platform.runLater(this::requestNewStats);
+			}
+			newItems.add(viewNode);
+		}
+		viewNode.setFieldListener((field, oldValue, value) -> {
+			if (!bindings.loadingProperty().get()) {
+				versions.reveal(idPath(viewNode));
+				versions.update(node.getId(), version -> PersistentNodes.edited(version, field, value));
+				if (field == ForumJournal.Field.AUTHOR) {
+					changeTextIndexes(indexes -> indexes.authors.move((String) oldValue, (String) value));
+				}
+				if (field == ForumJournal.Field.CONTENT) {
+					changeTextIndexes(indexes -> indexes.contents.update(node.getId(), (String) oldValue, (String) value));
+					searchRefreshTimer.playFromStart();
+				}
+				if (field == ForumJournal.Field.DUE_DATE) {
+					dueDates.put(node.getId(), (Date) value);
+				}
+				if (node instanceof TaskViewModel) {
+					upcomingTaskNodes.put(node.getId(), versions.get(node.getId()));
+					refreshUpcomingTasks();
+				}
+				if (field == ForumJournal.Field.RESPONSE_ACCEPTED || field == ForumJournal.Field.LIKES
+						|| field == ForumJournal.Field.DISLIKES) {
+					updateStats(viewNode);
+				}
+			}
+			recordChange(ForumJournal.edited(node.getId(), field, value));
+		});
 		viewNode.setChildListener(change -> {	// wywolywane, gdy w modelu dla tego wezla zmieni sie zawartosc kolekcji dzieci
 			while (change.next()) {
+				if (!bindings.loadingProperty().get()) {
+					long[] path = idPath(viewNode);
+					versions.reveal(path);
+					long[] childPath = Arrays.copyOf(path, path.length + 1);
+					for (NodeViewModel child : change.getRemoved()) {
+						childPath[path.length] = child.getId();
+						versions.reveal(childPath);
+						PersistentNode removed = versions.remove(child.getId());
+						dueDates.removeAll(removed);
+						changeTextIndexes(indexes -> {
+							indexes.contents.removeAll(removed);
+							indexes.authors.removeAll(removed);
+						});
+						recordChange(ForumJournal.removed(child.getId()));
+					}
+					int i = change.getFrom();
+					for (NodeViewModel child : change.getAddedSubList()) {
+						PersistentNode added = versions.add(node.getId(), i, child.toNode());
+						dueDates.addAll(added);
+						changeTextIndexes(indexes -> {
+							indexes.contents.addAll(added);
+							indexes.authors.addAll(added);
+						});
+						recordChange(ForumJournal.added(node.getId(), i++, child, ViewModelNodes.INSTANCE));
+					}
+					refreshUpcomingTasks();
+					searchRefreshTimer.playFromStart();
+					updateStats(viewNode);
+				}
+
+				// Usuniete wezly zajmowaly pozycje od getFrom() - najpierw je usuwamy, dopiero potem
+				// wstawiamy dodane (przy zastapieniu elementu zmiana zawiera oba rodzaje)
+				if (change.wasRemoved()) {
+					// TODO Tutaj byc moze nalezy dodac zapisywanie jaka operacja jest wykonywana
+					// by mozna bylo ja odtworzyc przy undo/redo
+					removeFromTree(viewNode, change.getFrom(), change.getRemovedSize()); // usuwamy wezly modelu z widoku
+				}
+
 				if (change.wasAdded()) {
 					int i = change.getFrom();
 					for (NodeViewModel child : change.getAddedSubList()) {
@@ -310,23 +1182,451 @@ public class MainPaneController implements Initializable {
 						i++;
 					}
 				}
+			}
+		});
 
-				if (change.wasRemoved()) {
-					for (int i = change.getFrom(); i <= change.getTo(); ++i) {
-						// TODO Tutaj byc moze nalezy dodac zapisywanie jaka operacja jest wykonywana
-						// by mozna bylo ja odtworzyc przy undo/redo
-						removeFromTree((ForumTreeItem) viewNode.getChildren().get(i)); // usuwamy wezel modelu z widoku
+		return viewNode;
+	}
+
+	/**
+	 * Zastepuje wersje forum i indeksy (np. po wczytaniu pliku).
+	 */
+	private void useIndexes(ForumIndexes indexes) {
+		stopBackgroundTasks();
+		versions = indexes.versions;
+		dueDates = indexes.dueDates;
+		refreshUpcomingTasks();
+		refreshSearchResults();
+	}
+
+	/**
+	 * Przerywa zadania wykonywane w tle na wersjach forum i zapomina ich wyniki (np. przy zastapieniu
+	 * wersji forum).
+	 */
+	private void stopBackgroundTasks() {
+		if (statsTask != null) {
+			statsTask.cancel();
+			statsTask = null;
+		}
+		pendingStats.clear();
+		newItems.clear();
+		if (textIndexTask != null) {
+			textIndexTask.cancel();
+			textIndexTask = null;
+		}
+		textIndexes = null;
+		pendingIndexChanges.clear();
+		if (upcomingTasksTask != null) {
+			upcomingTasksTask.cancel();
+			upcomingTasksTask = null;
+		}
+		upcomingTaskNodes = new LongMap<>();
+	}
+
+	/**
+	 * Identyfikatory wezlow od korzenia do wezla elementu {@code item} (zob. {@link VersionedForum#reveal}).
+	 */
+	private static long[] idPath(ForumTreeItem item) {
+		int depth = 0;
+		for (ForumTreeItem ancestor = item; ancestor != null; ancestor = ancestor.getParentItem()) {
+			depth++;
+		}
+		long[] ids = new long[depth];
+		for (ForumTreeItem ancestor = item; ancestor != null; ancestor = ancestor.getParentItem()) {
+			ids[--depth] = ancestor.getValue().getId();
+		}
+		return ids;
+	}
+
+	/**
+	 * Uaktualnia podsumowania poddrzew wezla i jego przodkow (jedynie one zmieniaja sie przy
+	 * zmianie wezla).
+	 */
+	private void updateStats(ForumTreeItem item) {
+		PersistentNode[] path = versions.path(item.getValue().getId());
+		for (int i = path.length - 1; i >= 0; i--, item = item.getParentItem()) {
+			requestStats(item, path[i]);
+		}
+	}
+
+	/**
+	 * Zleca podsumowania poddrzew wszystkich utworzonych elementow drzewa (np. po wczytaniu pliku).
+	 */
+	private void refreshStats(ForumTreeItem root) {
+		Deque<ForumTreeItem> pending = new ArrayDeque<>();
+		pending.push(root);
+		while (!pending.isEmpty()) {
+			ForumTreeItem item = pending.pop();
+			requestStats(item);
+			item.getItems().forEach(child -> pending.push((ForumTreeItem) child));
+		}
+	}
+
+	/**
+	 * Zleca podsumowania poddrzew elementow utworzonych od ostatniego wywolania.
+	 */
+	private void requestNewStats() {
+		List<ForumTreeItem> items = new ArrayList<>(newItems);
+		newItems.clear();
+		items.forEach(this::requestStats);
+	}
+
+	/**
+	 * Zleca podsumowanie poddrzewa elementu {@code item}. Element bez odpowiednika w aktualnej wersji
+	 * forum (np. juz usuniety) pozostaje bez podsumowania.
+	 */
+	private void requestStats(ForumTreeItem item) {
+		long[] ids = idPath(item);
+		PersistentNode node;
+		try {
+			versions.reveal(ids);
+			node = versions.get(ids[ids.length - 1]);
+		} catch (IllegalArgumentException e) {
+			item.getValue().getStats().set(null);
+			return;
+		}
+		requestStats(item, node);
+	}
+
+	/**
+	 * Zleca obliczenie w tle podsumowania poddrzewa elementu {@code item}, ktoremu odpowiada wezel
+	 * {@code node} aktualnej wersji forum. Podsumowanie poddrzewa, ktore nie zostalo skopiowane,
+	 * wymaga przejrzenia calego poddrzewa (zob. {@link PersistentNode#getStats()}). Podsumowania
+	 * obliczane sa po kolei partiami, a nowsze zlecenie dla elementu zastepuje poprzednie.
+	 */
+	private void requestStats(TreeItem<NodeViewModel> item, PersistentNode node) {
+		pendingStats.put(item, node);
+		if (statsTask == null) {
+			startStats();
+		}
+	}
+
+	private void startStats() {
+		List<TreeItem<NodeViewModel>> items = new ArrayList<>(pendingStats.keySet());
+		List<PersistentNode> nodes = new ArrayList<>(pendingStats.values());
+		pendingStats.clear();
+
+		Task<List<SubtreeStats>> task = new Task<List<SubtreeStats>>() {
+			@Override
+			protected List<SubtreeStats> call() throws Exception {
+				List<SubtreeStats> stats = new ArrayList<>(nodes.size());
+				for (int i = 0; i < nodes.size() && !isCancelled(); i++) {
+					stats.add(nodes.get(i).getStats());
+				}
+				return stats;
+			}
+		};
+		task.setOnSucceeded(evt -> {
+			if (statsTask == task) {
+				statsTask = null;
+				List<SubtreeStats> stats = task.getValue();
+				for (int i = 0; i < stats.size(); i++) {
+					if (!pendingStats.containsKey(items.get(i))) { // wynik nowszego zlecenia zastapi ten
+						items.get(i).getValue().getStats().set(stats.get(i));
 					}
 				}
+				if (!pendingStats.isEmpty()) {
+					startStats();
+				}
+			}
+		});
+		task.setOnFailed(evt -> {
+			if (statsTask == task) {
+				statsTask = null;
+				pendingStats.clear();
+				DialogHelper.ShowError("Error computing the forum statistics.", task.getException());
 			}
 		});
+		statsTask = task;
+		TaskHelper.RunInBackground("Computing statistics", task);
+	}
 
-		return viewNode;
+	/**
+	 * Indeksy tresci i autorow postow lub {@code null}, gdy jeszcze nie zostaly utworzone - wtedy
+	 * rozpoczyna ich tworzenie w tle (po jego zakonczeniu wyniki wyszukiwania sa odswiezane).
+	 */
+	private TextIndexes getTextIndexes() {
+		if (textIndexes == null && textIndexTask == null && versions != null) {
+			startIndexing();
+		}
+		return textIndexes;
+	}
+
+	private void startIndexing() {
+		PersistentNode root = versions.snapshot();
+		Task<TextIndexes> task = new Task<TextIndexes>() {
+			@Override
+			protected TextIndexes call() throws Exception {
+				return new TextIndexes(root);
+			}
+		};
+		task.setOnSucceeded(evt -> {
+			if (textIndexTask == task) {
+				textIndexTask = null;
+				textIndexes = task.getValue();
+				pendingIndexChanges.forEach(change -> change.accept(textIndexes));
+				pendingIndexChanges.clear();
+				refreshSearchResults();
+			}
+		});
+		task.setOnFailed(evt -> {
+			if (textIndexTask == task) {
+				textIndexTask = null;
+				pendingIndexChanges.clear();
+				DialogHelper.ShowError("Error indexing the forum.", task.getException());
+			}
+		});
+		textIndexTask = task;
+		TaskHelper.RunInBackground("Indexing", task);
+	}
+
+	/**
+	 * Wprowadza zmiane forum do indeksow tresci i autorow - takze tworzonych (po ich utworzeniu).
+	 * Indeksy, ktorych tworzenie sie nie rozpoczelo, powstana z wersji forum zawierajacej zmiane.
+	 */
+	private void changeTextIndexes(Consumer<TextIndexes> change) {
+		if (textIndexes != null) {
+			change.accept(textIndexes);
+		} else if (textIndexTask != null) {
+			pendingIndexChanges.add(change);
+		}
+	}
+
+	/**
+	 * Pokazuje najblizsze zadania. Zadania, ktorych wezlow jeszcze nie znamy, wyszukiwane sa w tle na
+	 * migawce forum - pojawiaja sie w panelu po ich znalezieniu.
+	 */
+	private void refreshUpcomingTasks() {
+		if (dueDates == null) {
+			return;
+		}
+		LongMap<PersistentNode> known = new LongMap<>();
+		List<PersistentNode> shown = new ArrayList<>();
+		List<Long> missing = new ArrayList<>();
+		for (DueDateIndex.Entry task : dueDates.next(System.currentTimeMillis(), UPCOMING_TASKS)) {
+			PersistentNode node = upcomingTaskNodes.get(task.getId());
+			if (node == null) {
+				missing.add(task.getId());
+			} else {
+				known.put(task.getId(), node);
+				shown.add(node);
+			}
+		}
+		upcomingTaskNodes = known;
+		upcomingTasks.getItems().setAll(shown);
+		if (!missing.isEmpty() && upcomingTasksTask == null) {
+			findUpcomingTasks(missing);
+		}
+	}
+
+	private void findUpcomingTasks(List<Long> ids) {
+		PersistentNode root = versions.snapshot();
+		Task<LongMap<PersistentNode>> task = new Task<LongMap<PersistentNode>>() {
+			@Override
+			protected LongMap<PersistentNode> call() throws Exception {
+				return root.findAll(ids);
+			}
+		};
+		task.setOnSucceeded(evt -> {
+			if (upcomingTasksTask == task) {
+				upcomingTasksTask = null;
+				LongMap<PersistentNode> found = task.getValue();
+				for (long id : ids) {
+					// zadanie zmienione w trakcie wyszukiwania ma juz nowszy wezel
+					if (found.containsKey(id) && !upcomingTaskNodes.containsKey(id)) {
+						upcomingTaskNodes.put(id, found.get(id));
+					}
+				}
+				if (found.size() > 0) {
+					refreshUpcomingTasks();
+				}
+			}
+		});
+		task.setOnFailed(evt -> {
+			if (upcomingTasksTask == task) {
+				upcomingTasksTask = null;
+				DialogHelper.ShowError("Error finding the upcoming tasks.", task.getException());
+			}
+		});
+		upcomingTasksTask = task;
+		TaskHelper.RunInBackground("Finding tasks", task);
 	}
 
-	private void expandAll(TreeItem<NodeViewModel> item) {
-		item.setExpanded(true);
-		item.getChildren().forEach(this::expandAll);
+	/**
+	 * Wyszukuje tekst z pola wyszukiwania - zapytanie, jesli zawiera warunki (np. {@code type:task}),
+	 * a w przeciwnym razie slowa w tresci postow. Niepoprawne (np. niedokonczone) zapytanie nie ma wynikow.
+	 */
+	private void refreshSearchResults() {
+		searchRefreshTimer.stop();
+		if (searchTask != null) {
+			searchTask.cancel();
+			searchTask = null;
+		}
+		String text = searchField.getText();
+		if (versions == null || text == null || text.isEmpty()) {
+			searchResults.getItems().clear();
+			return;
+		}
+		PersistentNode root = versions.snapshot();
+		if (Query.isStructured(text)) {
+			Query query;
+			try {
+				query = Query.parse(text);
+			} catch (IllegalArgumentException e) {
+				searchResults.getItems().clear();
+				return;
+			}
+			startSearch(cancelled -> {
+				try {
+					return query.evaluate(query.scopeIn(root), SEARCH_RESULTS, cancelled);
+				} catch (IllegalArgumentException e) {
+					return Collections.emptyList(); // nie ma wezla zakresu
+				}
+			});
+			return;
+		}
+		TextIndexes indexes = getTextIndexes();
+		if (indexes == null) {
+			searchResults.getItems().clear(); // wyniki pojawia sie po utworzeniu indeksow
+			return;
+		}
+		// Indeks tresci odpowiada szybko, ale jest zmieniany w watku JavaFX - przeszukujemy go tutaj,
+		// a wezly trafien wyszukujemy w tle na migawce forum
+		List<Long> ids = new ArrayList<>();
+		indexes.contents.search(text, SEARCH_RESULTS).forEach(hit -> ids.add(hit.getId()));
+		startSearch(cancelled -> {
+			LongMap<PersistentNode> found = root.findAll(ids);
+			List<PersistentNode> nodes = new ArrayList<>(ids.size());
+			for (long id : ids) {
+				if (found.containsKey(id)) {
+					nodes.add(found.get(id));
+				}
+			}
+			return nodes;
+		});
+	}
+
+	/**
+	 * Wykonuje w tle wyszukiwanie {@code search} (na migawce forum). Do jego zakonczenia widoczne
+	 * sa poprzednie wyniki.
+	 *
+	 * @param search zwraca znalezione posty; otrzymuje funkcje sprawdzajaca, czy wyszukiwanie anulowano
+	 */
+	private void startSearch(Function<BooleanSupplier, List<PersistentNode>> search) {
+		Task<List<PersistentNode>> task = new Task<List<PersistentNode>>() {
+			@Override
+			protected List<PersistentNode> call() throws Exception {
+				return search.apply(this::isCancelled);
+			}
+		};
+		task.setOnSucceeded(evt -> {
+			if (searchTask == task) {
+				searchTask = null;
+				searchResults.getItems().setAll(task.getValue());
+			}
+		});
+		task.setOnFailed(evt -> {
+			if (searchTask == task) {
+				searchTask = null;
+				DialogHelper.ShowError("Error searching the forum.", task.getException());
+			}
+		});
+		searchTask = task;
+		TaskHelper.RunInBackground("Searching", task);
+	}
+
+	/**
+	 * Podpowiedzi dla slowa zapytania w polu wyszukiwania lub filtra - nazwy autorow dla
+	 * {@code author:}, a dla zwyklych slow najczestsze slowa tresci postow.
+	 */
+	private List<String> completeQueryWord(String word) {
+		List<String> completions = new ArrayList<>();
+		TextIndexes indexes = getTextIndexes();
+		if (indexes == null) {
+			return completions;
+		}
+		String key = "author:";
+		if (word.regionMatches(true, 0, key, 0, key.length())) {
+			String name = word.substring(key.length());
+			for (String author : indexes.authors.complete(name.startsWith("\"") ? name.substring(1) : name, COMPLETIONS)) {
+				boolean quoted = author.chars().anyMatch(Character::isWhitespace);
+				completions.add(word.substring(0, key.length()) + (quoted ? '"' + author + '"' : author));
+			}
+		} else if (word.codePoints().allMatch(Character::isLetterOrDigit)) {
+			completions.addAll(indexes.contents.complete(word, COMPLETIONS));
+		}
+		return completions;
+	}
+
+	/**
+	 * Wyznacza w tle filtr drzewa dla tekstu z pola filtra (na migawce forum), anulujac wyznaczanie
+	 * poprzedniego. Niepoprawne (np. niedokonczone) zapytanie pozostawia dotychczasowy filtr.
+	 */
+	private void startFiltering() {
+		if (filterTask != null) {
+			filterTask.cancel();
+			filterTask = null;
+		}
+		String text = filterField.getText();
+		if (text == null || text.trim().isEmpty()) {
+			useFilter(null);
+			return;
+		}
+		Predicate<PersistentNode> condition;
+		try {
+			condition = Query.parse(text).getCondition();
+		} catch (IllegalArgumentException e) {
+			return;
+		}
+
+		PersistentNode root = versions.snapshot();
+		Task<TreeFilter> task = new Task<TreeFilter>() {
+			@Override
+			protected TreeFilter call() throws Exception {
+				return TreeFilter.compute(root, condition, FILTER_EXPANDED_MATCHES, this::isCancelled);
+			}
+		};
+		task.setOnSucceeded(evt -> {
+			if (filterTask == task) {
+				filterTask = null;
+				useFilter(task.getValue());
+			}
+		});
+		task.setOnFailed(evt -> {
+			if (filterTask == task) {
+				filterTask = null;
+				DialogHelper.ShowError("Error filtering the forum.", task.getException());
+			}
+		});
+		filterTask = task;
+		TaskHelper.RunInBackground("Filtering", task);
+	}
+
+	/**
+	 * Stosuje filtr do utworzonych elementow drzewa i rozwija przodkow pierwszych pasujacych wezlow.
+	 */
+	private void useFilter(TreeFilter filter) {
+		if (filter == treeFilter) {
+			return;
+		}
+		treeFilter = filter;
+		ForumTreeItem root = (ForumTreeItem) treePane.getRoot();
+		if (root == null) {
+			return;
+		}
+		root.applyFilter(filter);
+		if (filter == null) {
+			return;
+		}
+		for (long[] path : filter.getFirstMatches()) {
+			// elementy dzieci tworzone sa przy rozwinieciu elementu; wezel mogl zostac usuniety
+			// po wyznaczeniu filtra
+			ForumTreeItem item = root;
+			for (int i = 1; i < path.length && item != null; i++) {
+				item.setExpanded(true);
+				item = itemsById.get(path[i]);
+			}
+		}
 	}
 
 	private void onItemSelected(TreeItem<NodeViewModel> oldItem, TreeItem<NodeViewModel> newItem) {
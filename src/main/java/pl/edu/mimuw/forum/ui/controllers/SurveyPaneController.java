@@ -1,7 +1,7 @@
 package pl.edu.mimuw.forum.ui.controllers;
 
 import javafx.beans.binding.Bindings;
-import javafx.beans.property.IntegerProperty;
+import javafx.beans.property.ReadOnlyIntegerProperty;
 import javafx.beans.property.StringProperty;
 import javafx.fxml.FXML;
 import javafx.scene.control.Button;
@@ -26,15 +26,16 @@ public class SurveyPaneController extends BasePaneController {
 		this.model = model;
 
 		if (this.model != null) {
-			bind(upVoteButton.textProperty(), upVoteButton, this.model.getLikes());
-			bind(downVoteButton.textProperty(), downVoteButton, this.model.getDislikes());
+			bind(upVoteButton.textProperty(), this.model.getLikes());
+			bind(downVoteButton.textProperty(), this.model.getDislikes());
+			upVoteButton.setOnAction(evt -> model.vote(1, 0));
+			downVoteButton.setOnAction(evt -> model.vote(0, 1));
 		}
 
 		setHasModel(model != null);
 	}
 
-	private void bind(StringProperty stringProperty, Button button, IntegerProperty property) {
+	private void bind(StringProperty stringProperty, ReadOnlyIntegerProperty property) {
 		stringProperty.bind(Bindings.createStringBinding(() -> String.valueOf(property.get()), property));
-		button.setOnAction(evt -> property.set(property.get() + 1));
 	}
 }
@@ -0,0 +1,102 @@
+package pl.edu.mimuw.forum.ui.helpers;
+
+import java.util.List;
+import java.util.function.Function;
+
+import javafx.application.Platform;
+import javafx.geometry.Side;
+import javafx.scene.control.ContextMenu;
+import javafx.scene.control.MenuItem;
+import javafx.scene.control.TextField;
+
+public class CompletionHelper {
+	/**
+	 * Podpowiada tekst pola w menu pod polem w trakcie pisania. {@code completions} zwraca
+	 * podpowiedzi dla wpisanego tekstu (najlepsze pierwsze) i jest wywolywane przy kazdej zmianie
+	 * tekstu, wiec powinno byc szybkie. Wybrana podpowiedz zastepuje tekst pola.
+	 */
+	public static void CompleteText(TextField field, Function<String, List<String>> completions) {
+		Attach(field, completions, false);
+	}
+
+	/**
+	 * Jak {@link #CompleteText}, ale podpowiada jedynie slowo konczace sie na pozycji kursora (ciag
+	 * znakow bez bialych znakow poza cudzyslowami, np. {@code author:"Jan K}). Wybrana podpowiedz
+	 * zastepuje to slowo.
+	 */
+	public static void CompleteWords(TextField field, Function<String, List<String>> completions) {
+		Attach(field, completions, true);
+	}
+
+	private static void Attach(TextField field, Function<String, List<String>> completions, boolean words) {
+		ContextMenu menu = new ContextMenu();
+		boolean[] completing = new boolean[1];
+		field.textProperty().addListener((observable, oldValue, newValue) -> {
+			if (!completing[0]) {
+				// Kursor jest przesuwany dopiero po zmianie tekstu
+				Platform.runLater(() -> Refresh(field, menu, completions, words, completing));
+			}
+		});
+		field.focusedProperty().addListener((observable, wasFocused, focused) -> {
+			if (!focused) {
+				menu.hide();
+			}
+		});
+	}
+
+	private static void Refresh(TextField field, ContextMenu menu, Function<String, List<String>> completions,
+			boolean words, boolean[] completing) {
+		String text = field.getText() == null ? "" : field.getText();
+		int end = field.getCaretPosition();
+		int start = words ? WordStart(text, end) : 0;
+		if (!field.isFocused() || start == end
+				|| (words && end < text.length() && !Character.isWhitespace(text.charAt(end)))) {
+			menu.hide();
+			return;
+		}
+
+		String prefix = text.substring(start, end);
+		menu.getItems().clear();
+		for (String completion : completions.apply(prefix)) {
+			if (completion.equals(prefix)) {
+				continue;
+			}
+			MenuItem item = new MenuItem(completion);
+			item.setMnemonicParsing(false);
+			item.setOnAction(evt -> {
+				completing[0] = true;
+				try {
+					String replacement = words ? completion + " " : completion;
+					field.replaceText(start, end, replacement);
+					field.positionCaret(start + replacement.length());
+				} finally {
+					completing[0] = false;
+				}
+			});
+			menu.getItems().add(item);
+		}
+		if (menu.getItems().isEmpty()) {
+			menu.hide();
+		} else if (!menu.isShowing()) {
+			menu.show(field, Side.BOTTOM, 0, 0);
+		}
+	}
+
+	/**
+	 * Poczatek slowa konczacego sie na pozycji {@code end} - pozycja za ostatnim bialym znakiem spoza
+	 * cudzyslowow.
+	 */
+	private static int WordStart(String text, int end) {
+		int start = 0;
+		boolean quoted = false;
+		for (int i = 0; i < end; i++) {
+			char c = text.charAt(i);
+			if (c == '"') {
+				quoted = !quoted;
+			} else if (!quoted && Character.isWhitespace(c)) {
+				start = i + 1;
+			}
+		}
+		return start;
+	}
+}
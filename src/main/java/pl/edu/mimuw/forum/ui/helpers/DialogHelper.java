@@ -2,12 +2,14 @@ package pl.edu.mimuw.forum.ui.helpers;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.Optional;
 
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.ButtonType;
 import javafx.scene.control.Label;
 import javafx.scene.control.TextArea;
+import javafx.scene.control.TextInputDialog;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.Priority;
 
@@ -70,6 +72,24 @@ public class DialogHelper {
 		return dialog.showAndWait().orElse(ButtonType.CANCEL);
 	}
 	
+	public static ButtonType ShowDialogYesNo(String title, String message) {
+		Alert dialog = new Alert(AlertType.CONFIRMATION);
+		dialog.setTitle(title);
+		dialog.setHeaderText(message);
+
+		dialog.getButtonTypes().setAll(ButtonType.YES, ButtonType.NO);
+
+		return dialog.showAndWait().orElse(ButtonType.NO);
+	}
+	
+	public static Optional<String> ShowTextInput(String title, String message) {
+		TextInputDialog dialog = new TextInputDialog();
+		dialog.setTitle(title);
+		dialog.setHeaderText(message);
+
+		return dialog.showAndWait();
+	}
+
 	public static void ShowInformation(String title, String message) {
 		Alert dialog = new Alert(AlertType.INFORMATION);
 		dialog.setTitle(title);
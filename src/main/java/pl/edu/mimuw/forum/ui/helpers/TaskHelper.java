@@ -0,0 +1,31 @@
+package pl.edu.mimuw.forum.ui.helpers;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javafx.concurrent.Task;
+
+public class TaskHelper {
+	/**
+	 * Uruchamia zadanie w osobnym watku (demonie), tak by nie blokowalo zamkniecia aplikacji.
+	 */
+	public static void RunInBackground(String name, Task<?> task) {
+		Thread thread = new Thread(task, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Tworzy wykonawce uruchamiajacego zadania pojedynczo, w kolejnosci zlecenia.
+	 * Watek wykonawcy nie jest demonem (zamkniecie aplikacji zaczeka na zakonczenie
+	 * rozpoczetych zadan), ale konczy sie po chwili bezczynnosci.
+	 */
+	public static ExecutorService CreateSerialExecutor(String name) {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+				runnable -> new Thread(runnable, name));
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+}
@@ -18,9 +18,14 @@ public class CommentViewModel extends NodeViewModel {
 
 	@Override
 	protected Node createDocument() {
-		return new Comment(getContent().get(), getAuthor().get());
+		return new Comment(getContent().get(), getAuthorName());
 	}
 	
+	@Override
+	public Class<? extends Node> getNodeType() {
+		return Comment.class;
+	}
+
 	@Override
 	public String getName() {
 		return NAME;
@@ -1,58 +1,174 @@
 package pl.edu.mimuw.forum.ui.models;
 
-import java.util.stream.Collectors;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
 
 import javafx.beans.property.ListProperty;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.property.SimpleListProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
+import javafx.beans.value.ObservableValue;
 import javafx.collections.FXCollections;
 import pl.edu.mimuw.forum.data.Node;
+import pl.edu.mimuw.forum.data.SubtreeStats;
+import pl.edu.mimuw.forum.io.ForumJournal;
 import pl.edu.mimuw.forum.ui.controllers.DetailsPaneController;
 
+/**
+ * Model widoku wezla forum. Modele dzieci tworzone sa dopiero przy pierwszym dostepie do listy dzieci
+ * (zob. {@link #getChildren()}) - do tego czasu dzieci przechowywane sa jedynie jako wezly forum,
+ * z ktorych utworzono model (zob. {@link #peekChildren()}).
+ */
 public class NodeViewModel {
 
 	public static final String NAME = "";
 
-	final private StringProperty authorProperty;
+	final private long id;
+
+	/**
+	 * Autor wezla - wspolna instancja napisu z wezla forum. Wlasciwosc tworzona jest dopiero przy
+	 * pierwszym dostepie (zob. {@link #getAuthor()}), np. gdy wezel pojawi sie w drzewie.
+	 */
+	final private String author;
+	private volatile StringProperty authorProperty;
+
 	final private StringProperty contentProperty;
-	final private ListProperty<NodeViewModel> childrenProperty;
+
+	/**
+	 * Podsumowanie poddrzewa wezla ({@code null}, dopoki nie jest znane) - ustawiane przez kontroler
+	 * forum przy kazdej zmianie poddrzewa.
+	 */
+	final private ObjectProperty<SubtreeStats> statsProperty = new SimpleObjectProperty<>();
+
+	/**
+	 * Lista modeli dzieci ({@code null} do pierwszego dostepu).
+	 */
+	private volatile ListProperty<NodeViewModel> childrenProperty;
+
+	/**
+	 * Wezel, z ktorego utworzono model - zrodlo dzieci do czasu utworzenia ich modeli.
+	 */
+	private volatile Node source;
 
 	public NodeViewModel(String content, String author) {
 		this(new Node(content, author));
 	}
 
 	public NodeViewModel(Node node) {
-		authorProperty = new SimpleStringProperty(node.getAuthor());
+		id = node.getId();
+
+		author = node.getAuthor();
 
 		contentProperty = new SimpleStringProperty(node.getContent());
 
-		childrenProperty = new SimpleListProperty<NodeViewModel>(FXCollections.observableArrayList(node.getChildren() != null
-				? node.getChildren().stream().map(Node::getModel).collect(Collectors.toList()).toArray(new NodeViewModel[0])
-				: new NodeViewModel[0]));
+		source = node;
+	}
 
+	/**
+	 * Trwaly identyfikator wezla (zob. {@link Node#getId()}).
+	 */
+	public long getId() {
+		return id;
 	}
 
+	/**
+	 * Wlasciwosc autora (tworzona przy pierwszym wywolaniu). Wywolywac tylko w watku JavaFX.
+	 */
 	public StringProperty getAuthor() {
+		if (authorProperty == null) {
+			authorProperty = new SimpleStringProperty(author);
+		}
 		return authorProperty;
 	}
 
+	/**
+	 * Aktualny autor wezla bez tworzenia wlasciwosci {@link #getAuthor()}.
+	 */
+	public String getAuthorName() {
+		StringProperty property = authorProperty;
+		return property != null ? property.get() : author;
+	}
+
 	public StringProperty getContent() {
 		return contentProperty;
 	}
 
+	public ObjectProperty<SubtreeStats> getStats() {
+		return statsProperty;
+	}
+
+	/**
+	 * Lista modeli dzieci; przy pierwszym wywolaniu tworzone sa modele dzieci (ale nie ich dzieci).
+	 * Wywolywac tylko w watku JavaFX.
+	 */
 	public ListProperty<NodeViewModel> getChildren() {
+		if (childrenProperty == null) {
+			List<? extends Node> children = source.getChildren();
+			List<NodeViewModel> models = new ArrayList<>(children.size());
+			for (Node child : children) {
+				models.add(child.getModel());
+			}
+			childrenProperty = new SimpleListProperty<>(FXCollections.observableList(models));
+			source = null;
+		}
 		return childrenProperty;
 	}
 
+	/**
+	 * Czy modele dzieci zostaly juz utworzone.
+	 */
+	public boolean hasChildModels() {
+		return childrenProperty != null;
+	}
+
+	/**
+	 * Dzieci wezla bez tworzenia ich modeli: lista modeli ({@link NodeViewModel}), jesli zostaly juz
+	 * utworzone, a w przeciwnym razie lista wezlow forum ({@link Node}). Wezly forum, dla ktorych
+	 * nie utworzono modeli, nie byly edytowane. Mozna wywolywac z innych watkow, o ile forum nie jest
+	 * w tym czasie modyfikowane (np. przy zapisie).
+	 */
+	public List<?> peekChildren() {
+		Node node = source;
+		if (node != null) {
+			return node.getChildren();
+		}
+		return childrenProperty; // zrodlo usuwane jest dopiero po ustawieniu listy modeli
+	}
+
+	/**
+	 * Edytowalne pola wezla (bez listy dzieci), ktorych zmiany zapisywane sa w dzienniku zmian
+	 * (zob. {@link ForumJournal}).
+	 */
+	public Map<ForumJournal.Field, ObservableValue<?>> getFields() {
+		Map<ForumJournal.Field, ObservableValue<?>> fields = new EnumMap<>(ForumJournal.Field.class);
+		fields.put(ForumJournal.Field.CONTENT, contentProperty);
+		fields.put(ForumJournal.Field.AUTHOR, getAuthor());
+		return fields;
+	}
+
 	public Node toNode() {
 		Node w = createDocument();
-		childrenProperty.forEach(childModel -> w.addChild(childModel.toNode()));
+		w.setId(id);
+		for (Object child : peekChildren()) {
+			// wezly bez modeli nie sa modyfikowane, wiec kopia moze je wspoldzielic z modelem
+			w.addChild(child instanceof NodeViewModel ? ((NodeViewModel) child).toNode() : (Node) child);
+		}
 		return w;
 	}
 
 	protected Node createDocument() {
-		return new Node(contentProperty.get(), authorProperty.get());
+		return new Node(contentProperty.get(), getAuthorName());
+	}
+
+	/**
+	 * Klasa wezla forum, ktory reprezentuje model (zob. {@link #toNode()}).
+	 */
+	public Class<? extends Node> getNodeType() {
+		return Node.class;
 	}
 
 	@Override
@@ -1,13 +1,16 @@
 package pl.edu.mimuw.forum.ui.models;
 
+import java.util.Map;
 import java.util.Optional;
 
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
+import javafx.beans.value.ObservableValue;
 import pl.edu.mimuw.forum.data.Suggestion;
 import pl.edu.mimuw.forum.data.Node;
+import pl.edu.mimuw.forum.io.ForumJournal;
 import pl.edu.mimuw.forum.ui.controllers.DetailsPaneController;
 
 public class SuggestionViewModel extends NodeViewModel {
@@ -40,13 +43,26 @@ public class SuggestionViewModel extends NodeViewModel {
 		return isResponseAccepted;
 	}
 	
+	@Override
+	public Map<ForumJournal.Field, ObservableValue<?>> getFields() {
+		Map<ForumJournal.Field, ObservableValue<?>> fields = super.getFields();
+		fields.put(ForumJournal.Field.RESPONSE, responseProperty);
+		fields.put(ForumJournal.Field.RESPONSE_ACCEPTED, isResponseAccepted);
+		return fields;
+	}
+
 	@Override
 	protected Node createDocument() {
-		Suggestion s = new Suggestion(getContent().get(), getAuthor().get(), responseProperty.get());
+		Suggestion s = new Suggestion(getContent().get(), getAuthorName(), responseProperty.get());
 		s.setIsResponseAccepted(isResponseAccepted.get());
 		return s;
 	}
 	
+	@Override
+	public Class<? extends Node> getNodeType() {
+		return Suggestion.class;
+	}
+
 	@Override
 	public String getName() {
 		return NAME;
@@ -1,17 +1,34 @@
 package pl.edu.mimuw.forum.ui.models;
 
-import javafx.beans.property.IntegerProperty;
-import javafx.beans.property.SimpleIntegerProperty;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javafx.beans.property.ReadOnlyIntegerProperty;
+import javafx.beans.property.ReadOnlyIntegerWrapper;
+import javafx.beans.value.ObservableValue;
 import pl.edu.mimuw.forum.data.Survey;
+import pl.edu.mimuw.forum.data.VoteCounter;
 import pl.edu.mimuw.forum.data.Node;
+import pl.edu.mimuw.forum.io.ForumJournal;
 import pl.edu.mimuw.forum.ui.controllers.DetailsPaneController;
 
+/**
+ * Model ankiety. Glosy przechowywane sa w licznikach ankiety ({@link VoteCounter}), a wlasciwosci
+ * modelu pokazuja ich stan z ostatniej klatki (zob. {@link #vote(int, int)}).
+ */
 public class SurveyViewModel extends NodeViewModel {
 	
 	public static final String NAME = "Survey";
 
-	private final IntegerProperty likesProperty;
-	private final IntegerProperty dislikesProperty;
+	private final VoteCounter votes;
+
+	private final ReadOnlyIntegerWrapper likesProperty;
+	private final ReadOnlyIntegerWrapper dislikesProperty;
+
+	/**
+	 * Czy model czeka na publikacje glosow (zob. {@link VotePublisher}).
+	 */
+	private final AtomicBoolean votesPending = new AtomicBoolean();
 	
 	public SurveyViewModel(String content, String author) {
 		this(new Survey(content, author));
@@ -20,24 +37,72 @@ public class SurveyViewModel extends NodeViewModel {
 	public SurveyViewModel(Survey survey) {
 		super(survey);
 		
-		likesProperty = new SimpleIntegerProperty(survey.getLikes());
+		votes = survey.getVotes();
+
+		likesProperty = new ReadOnlyIntegerWrapper(votes.getLikes());
 		
-		dislikesProperty = new SimpleIntegerProperty(survey.getDislikes());
+		dislikesProperty = new ReadOnlyIntegerWrapper(votes.getDislikes());
 	}
 	
-	public IntegerProperty getLikes() {
-		return likesProperty;
+	public ReadOnlyIntegerProperty getLikes() {
+		return likesProperty.getReadOnlyProperty();
 	}
 	
-	public IntegerProperty getDislikes() {
-		return dislikesProperty;
+	public ReadOnlyIntegerProperty getDislikes() {
+		return dislikesProperty.getReadOnlyProperty();
+	}
+
+	/**
+	 * Aktualne liczniki glosow (wlasciwosci {@link #getLikes()} i {@link #getDislikes()} moga
+	 * byc o klatke opoznione).
+	 */
+	public VoteCounter getVotes() {
+		return votes;
+	}
+
+	/**
+	 * Dodaje paczke glosow. Mozna wywolywac z dowolnego watku i dowolnie czesto - wlasciwosci
+	 * modelu uaktualniane sa w watku JavaFX, najwyzej raz na klatke.
+	 */
+	public void vote(int likes, int dislikes) {
+		votes.add(likes, dislikes);
+		scheduleVotes();
+	}
+
+	private void scheduleVotes() {
+		if (votesPending.compareAndSet(false, true)) {
+			VotePublisher.schedule(this);
+		}
+	}
+
+	/**
+	 * Przepisuje stan licznikow do wlasciwosci modelu (w watku JavaFX).
+	 */
+	void publishVotes() {
+		// Glosy dodane od tego miejsca zglaszaja model ponownie
+		votesPending.set(false);
+		likesProperty.set(votes.getLikes());
+		dislikesProperty.set(votes.getDislikes());
 	}
 	
+	@Override
+	public Map<ForumJournal.Field, ObservableValue<?>> getFields() {
+		Map<ForumJournal.Field, ObservableValue<?>> fields = super.getFields();
+		fields.put(ForumJournal.Field.LIKES, getLikes());
+		fields.put(ForumJournal.Field.DISLIKES, getDislikes());
+		return fields;
+	}
+
 	@Override
 	protected Node createDocument() {
-		return new Survey(getContent().get(), getAuthor().get(), likesProperty.get(), dislikesProperty.get());
+		return new Survey(getContent().get(), getAuthorName(), votes.getLikes(), votes.getDislikes());
 	}
 	
+	@Override
+	public Class<? extends Node> getNodeType() {
+		return Survey.class;
+	}
+
 	@Override
 	public String getName() {
 		return NAME;
@@ -1,10 +1,13 @@
 package pl.edu.mimuw.forum.ui.models;
 
 import java.util.Date;
+import java.util.Map;
 
 import javafx.beans.property.SimpleObjectProperty;
+import javafx.beans.value.ObservableValue;
 import pl.edu.mimuw.forum.data.Node;
 import pl.edu.mimuw.forum.data.Task;
+import pl.edu.mimuw.forum.io.ForumJournal;
 import pl.edu.mimuw.forum.ui.controllers.DetailsPaneController;
 
 public class TaskViewModel extends NodeViewModel {
@@ -27,9 +30,21 @@ public class TaskViewModel extends NodeViewModel {
 		return dateProperty;
 	}
 
+	@Override
+	public Map<ForumJournal.Field, ObservableValue<?>> getFields() {
+		Map<ForumJournal.Field, ObservableValue<?>> fields = super.getFields();
+		fields.put(ForumJournal.Field.DUE_DATE, dateProperty);
+		return fields;
+	}
+
 	@Override
 	protected Node createDocument() {
-		return new Task(dateProperty.get(), getContent().get(), getAuthor().get());
+		return new Task(dateProperty.get(), getContent().get(), getAuthorName());
+	}
+
+	@Override
+	public Class<? extends Node> getNodeType() {
+		return Task.class;
 	}
 
 	@Override
@@ -0,0 +1,81 @@
+package pl.edu.mimuw.forum.ui.models;
+
+import java.util.Date;
+import java.util.List;
+
+import pl.edu.mimuw.forum.data.Node;
+import pl.edu.mimuw.forum.io.DataNodes;
+import pl.edu.mimuw.forum.io.NodeAccessor;
+
+/**
+ * Dostep do pol drzewa modeli widoku - pozwala zapisac forum bez tworzenia kopii
+ * (zob. {@link NodeViewModel#toNode()}). Modeli nie wolno modyfikowac w trakcie zapisu.
+ *
+ * Modele dzieci tworzone sa dopiero przy dostepie (zob. {@link NodeViewModel#peekChildren()}), wiec
+ * drzewo sklada sie z modeli i - ponizej modeli, ktorych dzieci nie zostaly jeszcze utworzone -
+ * wezlow forum. Zapis nie tworzy brakujacych modeli.
+ */
+public final class ViewModelNodes implements NodeAccessor<Object> {
+
+	public static final ViewModelNodes INSTANCE = new ViewModelNodes();
+
+	private static final DataNodes DATA = DataNodes.INSTANCE;
+
+	private ViewModelNodes() {
+	}
+
+	@Override
+	public Class<? extends Node> type(Object node) {
+		return node instanceof NodeViewModel ? ((NodeViewModel) node).getNodeType() : DATA.type((Node) node);
+	}
+
+	@Override
+	public long id(Object node) {
+		return node instanceof NodeViewModel ? ((NodeViewModel) node).getId() : DATA.id((Node) node);
+	}
+
+	@Override
+	public String content(Object node) {
+		return node instanceof NodeViewModel ? ((NodeViewModel) node).getContent().get() : DATA.content((Node) node);
+	}
+
+	@Override
+	public String author(Object node) {
+		return node instanceof NodeViewModel ? ((NodeViewModel) node).getAuthorName() : DATA.author((Node) node);
+	}
+
+	@Override
+	public List<?> children(Object node) {
+		return node instanceof NodeViewModel ? ((NodeViewModel) node).peekChildren() : DATA.children((Node) node);
+	}
+
+	@Override
+	public Date dueDate(Object node) {
+		return node instanceof TaskViewModel ? ((TaskViewModel) node).getDueDate().get() : DATA.dueDate((Node) node);
+	}
+
+	@Override
+	public int likes(Object node) {
+		return node instanceof SurveyViewModel ? ((SurveyViewModel) node).getVotes().getLikes() : DATA.likes((Node) node);
+	}
+
+	@Override
+	public int dislikes(Object node) {
+		return node instanceof SurveyViewModel ? ((SurveyViewModel) node).getVotes().getDislikes()
+				: DATA.dislikes((Node) node);
+	}
+
+	@Override
+	public String response(Object node) {
+		return node instanceof SuggestionViewModel ? ((SuggestionViewModel) node).getResponse().get()
+				: DATA.response((Node) node);
+	}
+
+	@Override
+	public Boolean isResponseAccepted(Object node) {
+		if (node instanceof SuggestionViewModel) {
+			return ((SuggestionViewModel) node).getIsResponseAccepted().get();
+		}
+		return DATA.isResponseAccepted((Node) node); // null nie moze trafic do wyrazenia warunkowego z boolean
+	}
+}
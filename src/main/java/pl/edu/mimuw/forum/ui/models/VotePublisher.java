@@ -0,0 +1,53 @@
+package pl.edu.mimuw.forum.ui.models;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+
+/**
+ * Przepisuje liczby glosow z licznikow ankiet do wlasciwosci ich modeli widoku - w watku JavaFX,
+ * najwyzej raz na klatke. Glosy naplywajace szybciej niz klatki sa laczone: w klatce publikowany
+ * jest jedynie ostatni stan licznikow.
+ */
+final class VotePublisher {
+
+	/**
+	 * Modele, ktorych glosy zmienily sie od ostatniej publikacji (kazdy najwyzej raz,
+	 * zob. {@link SurveyViewModel#scheduleVotes()}).
+	 */
+	private static final Queue<SurveyViewModel> pending = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Czy zlecono juz uruchomienie zegara.
+	 */
+	private static final AtomicBoolean scheduled = new AtomicBoolean();
+
+	private static final AnimationTimer timer = new AnimationTimer() {
+		@Override
+		public void handle(long now) {
+			// Kolejne zgloszenie po tym miejscu ponownie uruchomi zegar - przed nastepna klatka
+			scheduled.set(false);
+			SurveyViewModel model;
+			while ((model = pending.poll()) != null) {
+				model.publishVotes();
+			}
+			stop();
+		}
+	};
+
+	private VotePublisher() {
+	}
+
+	/**
+	 * Zglasza zmiane glosow modelu. Mozna wywolywac z dowolnego watku.
+	 */
+	static void schedule(SurveyViewModel model) {
+		pending.add(model);
+		if (scheduled.compareAndSet(false, true)) {
+			Platform.runLater(timer::start);
+		}
+	}
+}
@@ -0,0 +1,174 @@
+package pl.edu.mimuw.forum.ui.tree;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import javafx.scene.control.TreeItem;
+
+/**
+ * Okresla, ktore wezly drzewa forum sa rozwijane po otwarciu forum. Elementy drzewa tworzone sa
+ * dopiero przy rozwinieciu (zob. {@link ForumTreeItem}), wiec polityka decyduje tez o tym,
+ * ile elementow powstaje przed pokazaniem forum.
+ *
+ * Polityke mozna wybrac parametrem aplikacji {@code --expand=}, np. {@code --expand=all},
+ * {@code --expand=depth:2} lub {@code --expand=recent:20} (zob. {@link #parse(String)}).
+ */
+public abstract class ExpansionPolicy {
+
+	private static ExpansionPolicy defaultPolicy = toDepth(2);
+
+	/**
+	 * Rozwija cale drzewo.
+	 */
+	public static ExpansionPolicy all() {
+		return new ExpansionPolicy() {
+			@Override
+			public void expandThread(TreeItem<?> thread) {
+				expandAll(thread);
+			}
+		};
+	}
+
+	/**
+	 * Rozwija wezly na glebokosci mniejszej niz {@code depth} (korzen ma glebokosc 0, watki - 1).
+	 */
+	public static ExpansionPolicy toDepth(int depth) {
+		if (depth < 1) {
+			throw new IllegalArgumentException("Expansion depth must be positive: " + depth);
+		}
+		return new ExpansionPolicy() {
+			@Override
+			public void expandThread(TreeItem<?> thread) {
+				expandTo(thread, depth - 1);
+			}
+		};
+	}
+
+	/**
+	 * Rozwija w calosci jedynie {@code count} ostatnich watkow - nowe watki dodawane sa na koncu
+	 * listy dzieci korzenia, wiec ostatnie watki sa najnowsze.
+	 */
+	public static ExpansionPolicy recentThreads(int count) {
+		if (count < 0) {
+			throw new IllegalArgumentException("Thread count must not be negative: " + count);
+		}
+		return new ExpansionPolicy() {
+			@Override
+			public void expand(TreeItem<?> root) {
+				root.setExpanded(true);
+				List<? extends TreeItem<?>> threads = root.getChildren();
+				for (int i = Math.max(0, threads.size() - count); i < threads.size(); i++) {
+					expandAll(threads.get(i));
+				}
+			}
+
+			@Override
+			public void expandThread(TreeItem<?> thread) {
+				// watek dodany zostal na koncu - watek sprzed count ostatnich przestaje byc nowy
+				List<? extends TreeItem<?>> threads = thread.getParent().getChildren();
+				int older = threads.size() - 1 - count;
+				if (older >= 0) {
+					collapseAll(threads.get(older));
+				}
+				if (count > 0) {
+					expandAll(thread);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Polityka zapisana jako {@code all}, {@code depth:N} lub {@code recent:N}.
+	 */
+	public static ExpansionPolicy parse(String value) {
+		String[] parts = value.trim().split(":", 2);
+		try {
+			switch (parts[0]) {
+			case "all":
+				if (parts.length == 1) {
+					return all();
+				}
+				break;
+			case "depth":
+				if (parts.length == 2) {
+					return toDepth(Integer.parseInt(parts[1]));
+				}
+				break;
+			case "recent":
+				if (parts.length == 2) {
+					return recentThreads(Integer.parseInt(parts[1]));
+				}
+				break;
+			default:
+				break;
+			}
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid expansion policy: " + value, e);
+		}
+		throw new IllegalArgumentException("Invalid expansion policy: " + value);
+	}
+
+	/**
+	 * Polityka stosowana przy otwieraniu forow (domyslnie rozwijane sa watki, ale nie odpowiedzi).
+	 */
+	public static ExpansionPolicy getDefault() {
+		return defaultPolicy;
+	}
+
+	public static void setDefault(ExpansionPolicy policy) {
+		defaultPolicy = policy;
+	}
+
+	/**
+	 * Rozwija korzen drzewa i - zgodnie z polityka - jego watki.
+	 */
+	public void expand(TreeItem<?> root) {
+		root.setExpanded(true);
+		for (TreeItem<?> thread : root.getChildren()) {
+			expandThread(thread);
+		}
+	}
+
+	/**
+	 * Rozwija watek (dziecko korzenia) dodany na koncu drzewa w trakcie wczytywania pliku.
+	 */
+	public abstract void expandThread(TreeItem<?> thread);
+
+	private static void expandAll(TreeItem<?> item) {
+		Deque<TreeItem<?>> pending = new ArrayDeque<>();
+		pending.push(item);
+		while (!pending.isEmpty()) {
+			TreeItem<?> next = pending.pop();
+			next.setExpanded(true);
+			next.getChildren().forEach(pending::push);
+		}
+	}
+
+	private static void expandTo(TreeItem<?> item, int depth) {
+		// kolejne poziomy drzewa - kazdy o jeden glebiej od poprzedniego
+		List<TreeItem<?>> level = new ArrayList<>();
+		level.add(item);
+		for (int remaining = depth; remaining > 0 && !level.isEmpty(); remaining--) {
+			List<TreeItem<?>> next = new ArrayList<>();
+			for (TreeItem<?> levelItem : level) {
+				levelItem.setExpanded(true);
+				next.addAll(levelItem.getChildren());
+			}
+			level = next;
+		}
+	}
+
+	private static void collapseAll(TreeItem<?> item) {
+		Deque<TreeItem<?>> pending = new ArrayDeque<>();
+		pending.push(item);
+		while (!pending.isEmpty()) {
+			TreeItem<?> next = pending.pop();
+			if (next.isExpanded()) {
+				next.setExpanded(false);
+				next.getChildren().forEach(pending::push);
+			}
+		}
+	}
+}
@@ -1,27 +1,314 @@
 package pl.edu.mimuw.forum.ui.tree;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import javafx.beans.value.ChangeListener;
+import javafx.collections.FXCollections;
 import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
 import javafx.scene.control.TreeItem;
+import pl.edu.mimuw.forum.io.ForumJournal;
 import pl.edu.mimuw.forum.ui.models.NodeViewModel;
 
+/**
+ * Element drzewa widoku forum. Elementy dzieci tworzone sa dopiero przy pierwszym rozwinieciu
+ * elementu (zob. {@link #loadChildren()}) - do tego czasu nie sa tez tworzone modele dzieci wezla
+ * ani rejestrowany obserwator listy dzieci.
+ *
+ * Elementy wszystkich dzieci, w kolejnosci dzieci wezla, przechowuje lista {@link #getItems()} -
+ * to ja nalezy zmieniac. {@link #getChildren()} zawiera jedynie elementy widoczne przy aktualnym
+ * filtrze (zob. {@link #applyFilter}), a bez filtra - wszystkie.
+ */
 public class ForumTreeItem extends TreeItem<NodeViewModel> {
 
+	/**
+	 * Obserwator zmian pol wezla.
+	 */
+	@FunctionalInterface
+	public interface FieldListener {
+		void changed(ForumJournal.Field field, Object oldValue, Object newValue);
+	}
+
 	private ListChangeListener<NodeViewModel> listener;
-	
-	public ForumTreeItem(NodeViewModel node) {
+
+	private Map<ForumJournal.Field, ChangeListener<Object>> fieldListeners;
+
+	/**
+	 * Tworzy elementy dla modeli dzieci.
+	 */
+	private final Function<NodeViewModel, ForumTreeItem> childFactory;
+
+	private boolean childrenLoaded;
+
+	/**
+	 * Elementy wszystkich dzieci (zob. {@link #getItems()}).
+	 */
+	private final ObservableList<TreeItem<NodeViewModel>> items = FXCollections.observableArrayList();
+
+	/**
+	 * Element, na ktorego liscie {@link #getItems()} znajduje sie ten element ({@code null} dla
+	 * korzenia i elementow usunietych, zob. {@link #getParentItem()}).
+	 */
+	private ForumTreeItem parentItem;
+
+	/**
+	 * Czy element jest widoczny, tzn. znajduje sie na liscie {@link #getChildren()} rodzica.
+	 */
+	private boolean shown = true;
+
+	/**
+	 * Filtr drzewa ({@code null}, gdy widoczne sa wszystkie elementy).
+	 */
+	private TreeFilter filter;
+
+	/**
+	 * Najwieksza liczba ciagow elementow pokazywanych lub ukrywanych osobnymi operacjami na liscie
+	 * dzieci - przy wiekszej zmianie lista ustawiana jest od nowa.
+	 */
+	private static final int MAX_RUNS = 16;
+
+	/**
+	 * @param childFactory funkcja tworzaca elementy dla dzieci wezla (przy pierwszym rozwinieciu)
+	 */
+	public ForumTreeItem(NodeViewModel node, Function<NodeViewModel, ForumTreeItem> childFactory) {
 		super(node);
+		this.childFactory = childFactory;
+		// Wezel bez dzieci nie ma czego tworzyc - zmiany jego listy dzieci obserwowane sa od razu
+		childrenLoaded = node.peekChildren().isEmpty();
+		items.addListener(this::itemsChanged);
+		expandedProperty().addListener((observable, wasExpanded, expanded) -> {
+			if (expanded) {
+				loadChildren();
+			}
+		});
+	}
+
+	@Override
+	public boolean isLeaf() {
+		if (childrenLoaded) {
+			return getChildren().isEmpty();
+		}
+		return filter != null ? !filter.hasVisibleChildren(getValue().getId()) : getValue().peekChildren().isEmpty();
+	}
+
+	/**
+	 * Elementy wszystkich dzieci wezla (takze ukrytych przez filtr), w kolejnosci dzieci wezla.
+	 */
+	public ObservableList<TreeItem<NodeViewModel>> getItems() {
+		return items;
+	}
+
+	/**
+	 * Element rodzica - w odroznieniu od {@link #getParent()} takze dla elementu ukrytego przez filtr
+	 * ({@code null} dla korzenia i elementu usunietego z drzewa).
+	 */
+	public ForumTreeItem getParentItem() {
+		return parentItem;
+	}
+
+	/**
+	 * Czy elementy dzieci zostaly juz utworzone.
+	 */
+	public boolean isChildrenLoaded() {
+		return childrenLoaded;
 	}
 
+	/**
+	 * Tworzy elementy dzieci (jesli nie zostaly jeszcze utworzone) i zaczyna obserwowac liste dzieci
+	 * wezla. Nalezy wywolac przed zmiana listy dzieci nierozwinietego wezla.
+	 */
+	public void loadChildren() {
+		if (childrenLoaded) {
+			return;
+		}
+		childrenLoaded = true;
+
+		ObservableList<NodeViewModel> children = getValue().getChildren();
+		List<ForumTreeItem> created = new ArrayList<>(children.size());
+		for (NodeViewModel child : children) {
+			ForumTreeItem item = childFactory.apply(child);
+			item.filter = filter;
+			item.shown = filter == null || filter.isVisible(child.getId());
+			created.add(item);
+		}
+		items.setAll(created);
+
+		if (listener != null) {
+			children.addListener(listener);
+		}
+	}
+
+	/**
+	 * Przejmuje elementy dzieci innego elementu tego samego wezla (np. przy zastapieniu
+	 * tymczasowego korzenia). Elementy dzieci uznawane sa za utworzone.
+	 */
+	public void adoptChildren(ForumTreeItem other) {
+		items.setAll(other.items);
+		if (!childrenLoaded) {
+			childrenLoaded = true;
+			if (listener != null) {
+				getValue().getChildren().addListener(listener);
+			}
+		}
+	}
+
+	/**
+	 * Ustawia obserwatora listy dzieci wezla - jest on rejestrowany dopiero po utworzeniu elementow
+	 * dzieci, wczesniej zmiany nie maja czego uaktualniac.
+	 */
 	public void setChildListener(ListChangeListener<NodeViewModel> childListener) {
 		removeChildListener();
 		listener = childListener;
-		getValue().getChildren().addListener(childListener);
+		if (childrenLoaded) {
+			getValue().getChildren().addListener(childListener);
+		}
 	}
 	
 	public void removeChildListener() {
-		if (listener != null) {
+		if (listener != null && childrenLoaded) {
 			getValue().getChildren().removeListener(listener);
 		}
+		listener = null;
+	}
+
+	/**
+	 * Ustawia obserwatora zmian pol wezla (zob. {@link NodeViewModel#getFields()}).
+	 */
+	public void setFieldListener(FieldListener fieldListener) {
+		removeFieldListener();
+		fieldListeners = new EnumMap<>(ForumJournal.Field.class);
+		getValue().getFields().forEach((field, value) -> {
+			ChangeListener<Object> changeListener = (observable, oldValue, newValue) -> fieldListener.changed(field, oldValue, newValue);
+			fieldListeners.put(field, changeListener);
+			value.addListener(changeListener);
+		});
+	}
+
+	/**
+	 * Pokazuje lub ukrywa elementy dzieci utworzone w poddrzewie tego elementu zgodnie z filtrem
+	 * ({@code null} pokazuje wszystkie). Listy dzieci zmieniane sa jedynie tam, gdzie zmienia sie
+	 * widocznosc elementow, a kolejne elementy o zmienionej widocznosci pokazywane lub ukrywane
+	 * sa jedna operacja. Elementy utworzone pozniej otrzymuja filtr rodzica.
+	 */
+	public void applyFilter(TreeFilter filter) {
+		Deque<ForumTreeItem> pending = new ArrayDeque<>();
+		pending.push(this);
+		while (!pending.isEmpty()) {
+			ForumTreeItem item = pending.pop();
+			item.filter = filter;
+			item.updateShownChildren();
+			for (TreeItem<NodeViewModel> child : item.items) {
+				pending.push((ForumTreeItem) child);
+			}
+		}
+	}
+
+	/**
+	 * Uzgadnia {@link #getChildren()} z filtrem.
+	 */
+	private void updateShownChildren() {
+		int runs = 0;
+		boolean changing = false;
+		for (TreeItem<NodeViewModel> child : items) {
+			boolean changed = ((ForumTreeItem) child).shown != isShown(child);
+			runs += changed && !changing ? 1 : 0;
+			changing = changed;
+		}
+		if (runs == 0) {
+			return;
+		}
+		if (runs > MAX_RUNS) {
+			List<TreeItem<NodeViewModel>> visible = new ArrayList<>();
+			for (TreeItem<NodeViewModel> child : items) {
+				((ForumTreeItem) child).shown = isShown(child);
+				if (((ForumTreeItem) child).shown) {
+					visible.add(child);
+				}
+			}
+			getChildren().setAll(visible);
+			return;
+		}
+
+		ObservableList<TreeItem<NodeViewModel>> children = getChildren();
+		int position = 0; // pozycja na liscie widocznych elementow
+		for (int i = 0; i < items.size();) {
+			ForumTreeItem child = (ForumTreeItem) items.get(i);
+			boolean show = isShown(child);
+			if (show == child.shown) {
+				position += show ? 1 : 0;
+				i++;
+				continue;
+			}
+			// ciag kolejnych elementow, ktore nalezy pokazac (lub ukryc)
+			int end = i;
+			while (end < items.size() && ((ForumTreeItem) items.get(end)).shown != show
+					&& isShown(items.get(end)) == show) {
+				((ForumTreeItem) items.get(end)).shown = show;
+				end++;
+			}
+			if (show) {
+				children.addAll(position, items.subList(i, end));
+				position += end - i;
+			} else {
+				children.remove(position, position + end - i);
+			}
+			i = end;
+		}
+	}
+
+	private boolean isShown(TreeItem<NodeViewModel> child) {
+		return filter == null || filter.isVisible(child.getValue().getId());
+	}
+
+	/**
+	 * Przenosi zmiane listy wszystkich elementow dzieci na liste widocznych. Nowe elementy sa
+	 * widoczne (np. post dodany przy wlaczonym filtrze), chyba ze ukryto je przed dodaniem.
+	 */
+	private void itemsChanged(ListChangeListener.Change<? extends TreeItem<NodeViewModel>> change) {
+		ObservableList<TreeItem<NodeViewModel>> children = getChildren();
+		while (change.next()) {
+			int position = change.getFrom();
+			if (filter != null) {
+				position = 0;
+				for (TreeItem<NodeViewModel> item : items.subList(0, change.getFrom())) {
+					position += ((ForumTreeItem) item).shown ? 1 : 0;
+				}
+			}
+			if (change.wasRemoved()) {
+				int removed = 0;
+				for (TreeItem<NodeViewModel> item : change.getRemoved()) {
+					removed += ((ForumTreeItem) item).shown ? 1 : 0;
+					if (((ForumTreeItem) item).parentItem == this) {
+						((ForumTreeItem) item).parentItem = null;
+					}
+				}
+				children.remove(position, position + removed);
+			}
+			if (change.wasAdded()) {
+				List<TreeItem<NodeViewModel>> added = new ArrayList<>(change.getAddedSize());
+				for (TreeItem<NodeViewModel> item : change.getAddedSubList()) {
+					((ForumTreeItem) item).parentItem = this;
+					((ForumTreeItem) item).filter = filter;
+					if (((ForumTreeItem) item).shown) {
+						added.add(item);
+					}
+				}
+				children.addAll(position, added);
+			}
+		}
+	}
+
+	public void removeFieldListener() {
+		if (fieldListeners != null) {
+			getValue().getFields().forEach((field, value) -> value.removeListener(fieldListeners.get(field)));
+			fieldListeners = null;
+		}
 	}
 	
 }
@@ -0,0 +1,139 @@
+package pl.edu.mimuw.forum.ui.tree;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+
+import pl.edu.mimuw.forum.data.LongMap;
+import pl.edu.mimuw.forum.data.PersistentNode;
+
+/**
+ * Wynik filtrowania drzewa forum: wezly spelniajace warunek oraz ich przodkowie (zob.
+ * {@link ForumTreeItem#applyFilter}). Wyznaczany w tle na niezmiennej wersji forum
+ * ({@link #compute}), a pozniej jedynie czytany przez watek JavaFX.
+ */
+public final class TreeFilter {
+
+	/**
+	 * Co ile wezlow sprawdzane jest, czy filtrowanie nie zostalo anulowane.
+	 */
+	private static final int CANCEL_CHECK_INTERVAL = 4096;
+
+	/**
+	 * Widoczne wezly - wartoscia jest informacja, czy wezel ma widoczne dzieci.
+	 */
+	private final LongMap<Boolean> visible;
+
+	private final List<long[]> firstMatches;
+
+	private TreeFilter(LongMap<Boolean> visible, List<long[]> firstMatches) {
+		this.visible = visible;
+		this.firstMatches = firstMatches;
+	}
+
+	/**
+	 * Wyznacza wezly poddrzewa {@code root} spelniajace {@code condition} i ich przodkow. Korzen
+	 * jest zawsze widoczny.
+	 *
+	 * @param matchesToKeep liczba pierwszych (w kolejnosci dokumentu) pasujacych wezlow, ktore
+	 * nalezy zapamietac (zob. {@link #getFirstMatches()})
+	 * @param cancelled sprawdzane co pewien czas - gdy zwroci {@code true}, filtrowanie jest przerywane
+	 * @throws CancellationException gdy filtrowanie zostalo przerwane
+	 */
+	public static TreeFilter compute(PersistentNode root, Predicate<PersistentNode> condition, int matchesToKeep,
+			BooleanSupplier cancelled) {
+		LongMap<Boolean> visible = new LongMap<>();
+		List<long[]> firstMatches = new ArrayList<>();
+
+		// Przejscie bez rekurencji - wezel jest widoczny, jesli pasuje lub ma widoczne dziecko,
+		// co wiadomo dopiero po odwiedzeniu jego poddrzewa
+		Deque<Frame> path = new ArrayDeque<>();
+		path.push(new Frame(root, condition.test(root)));
+		int untilCheck = CANCEL_CHECK_INTERVAL;
+		while (!path.isEmpty()) {
+			Frame frame = path.peek();
+			if (frame.children.hasNext()) {
+				PersistentNode child = frame.children.next();
+				boolean matches = condition.test(child);
+				if (matches && firstMatches.size() < matchesToKeep) {
+					firstMatches.add(pathTo(path, child));
+				}
+				path.push(new Frame(child, matches));
+				if (--untilCheck == 0) {
+					untilCheck = CANCEL_CHECK_INTERVAL;
+					if (cancelled.getAsBoolean()) {
+						throw new CancellationException("Filtering cancelled.");
+					}
+				}
+				continue;
+			}
+			path.pop();
+			if (frame.matches || frame.visibleChildren || path.isEmpty()) {
+				visible.put(frame.node.getId(), frame.visibleChildren);
+				if (!path.isEmpty()) {
+					path.peek().visibleChildren = true;
+				}
+			}
+		}
+		return new TreeFilter(visible, Collections.unmodifiableList(firstMatches));
+	}
+
+	/**
+	 * Identyfikatory wezlow od korzenia do {@code node}, ktorego przodkowie leza na stosie {@code path}.
+	 */
+	private static long[] pathTo(Deque<Frame> path, PersistentNode node) {
+		long[] ids = new long[path.size() + 1];
+		int i = 0;
+		for (Iterator<Frame> frames = path.descendingIterator(); frames.hasNext();) {
+			ids[i++] = frames.next().node.getId();
+		}
+		ids[i] = node.getId();
+		return ids;
+	}
+
+	private static final class Frame {
+		final PersistentNode node;
+		final Iterator<PersistentNode> children;
+		final boolean matches;
+		boolean visibleChildren;
+
+		Frame(PersistentNode node, boolean matches) {
+			this.node = node;
+			this.children = node.getChildren().iterator();
+			this.matches = matches;
+		}
+	}
+
+	public boolean isVisible(long id) {
+		return visible.containsKey(id);
+	}
+
+	/**
+	 * Czy wezel ma dzieci widoczne przy tym filtrze.
+	 */
+	public boolean hasVisibleChildren(long id) {
+		Boolean children = visible.get(id);
+		return children != null && children;
+	}
+
+	/**
+	 * Liczba widocznych wezlow.
+	 */
+	public int size() {
+		return visible.size();
+	}
+
+	/**
+	 * Sciezki do pierwszych pasujacych wezlow w kolejnosci dokumentu - identyfikatory wezlow od korzenia
+	 * do pasujacego wezla (np. do rozwiniecia jego przodkow).
+	 */
+	public List<long[]> getFirstMatches() {
+		return firstMatches;
+	}
+}
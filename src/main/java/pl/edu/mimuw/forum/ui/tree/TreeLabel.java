@@ -8,13 +8,15 @@ import javafx.fxml.FXMLLoader;
 import javafx.scene.Node;
 import javafx.scene.control.ContentDisplay;
 import javafx.scene.control.Label;
+import javafx.scene.control.Tooltip;
 import javafx.scene.control.TreeCell;
+import pl.edu.mimuw.forum.data.SubtreeStats;
 import pl.edu.mimuw.forum.exceptions.ApplicationException;
 import pl.edu.mimuw.forum.ui.models.NodeViewModel;
 
 /**
- * Reprezentuje wezel w drzewie-widoku forum. Sklada sie z 2 etykiet
- * zawierajacych: tresc komentarza oraz autora.
+ * Reprezentuje wezel w drzewie-widoku forum. Sklada sie z 3 etykiet
+ * zawierajacych: tresc komentarza, autora oraz podsumowanie poddrzewa wezla.
  * 
  * @author konraddurnoga
  *
@@ -29,6 +31,18 @@ public class TreeLabel extends TreeCell<NodeViewModel> {
 	@FXML
 	private Label author;
 
+	/**
+	 * Podsumowanie poddrzewa (zob. {@link NodeViewModel#getStats()}) - liczone przy zmianach forum,
+	 * a nie przy rysowaniu.
+	 */
+	@FXML
+	private Label stats;
+
+	/**
+	 * Identyfikator wezla (zob. "Go to node") - jeden obiekt na komorke, bo komorki sa wielokrotnie uzywane.
+	 */
+	private final Tooltip idTooltip = new Tooltip();
+
 	public TreeLabel() throws ApplicationException {
 		FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/tree_label.fxml"));
 		loader.setRoot(this);
@@ -54,14 +68,36 @@ public class TreeLabel extends TreeCell<NodeViewModel> {
 		super.updateItem(item, empty);
 		if (empty) {
 			setGraphic(null);
+			setTooltip(null);
 		} else {
 			setGraphic(pane);
+			idTooltip.setText("Node id: " + item.getId());
+			setTooltip(idTooltip);
 			type.textProperty().bind(Bindings.createStringBinding(() -> {
 				String text = item.getContent().get();
 				return text.substring(0, Math.min(text.length(), 100));
 			}, item.getContent()));
 			author.textProperty().bind(item.getAuthor());
+			stats.textProperty().bind(Bindings.createStringBinding(() -> describe(item.getStats().get()),
+					item.getStats()));
+		}
+	}
+
+	private static String describe(SubtreeStats stats) {
+		if (stats == null) {
+			return "";
+		}
+		StringBuilder text = new StringBuilder();
+		text.append(stats.getPosts()).append(stats.getPosts() == 1 ? " post" : " posts");
+		if (stats.getSuggestions() > 0) {
+			text.append(" | suggestions: ").append(stats.getAcceptedSuggestions()).append(" accepted, ")
+					.append(stats.getRejectedSuggestions()).append(" rejected, ")
+					.append(stats.getPendingSuggestions()).append(" pending");
+		}
+		if (stats.getLikes() > 0 || stats.getDislikes() > 0) {
+			text.append(" | votes: +").append(stats.getLikes()).append(" / -").append(stats.getDislikes());
 		}
+		return text.toString();
 	}
 
 }